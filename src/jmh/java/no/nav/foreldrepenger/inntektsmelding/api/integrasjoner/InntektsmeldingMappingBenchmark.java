@@ -0,0 +1,93 @@
+package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.nav.foreldrepenger.inntektsmelding.api.inntektsmelding.Inntektsmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.inntektsmelding.InntektsmeldingDto;
+import no.nav.foreldrepenger.inntektsmelding.api.inntektsmelding.InntektsmeldingMapper;
+import no.nav.foreldrepenger.inntektsmelding.felles.AvsenderSystemDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.BortfaltNaturalytelseDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.EndringsårsakDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.EndringsårsakerDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.FødselsnummerDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.InnsendingstypeDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.InntektsmeldingStatusDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.KontaktpersonDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.NaturalytelsetypeDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.OrganisasjonsnummerDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.SøktRefusjonDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.YtelseTypeDto;
+import no.nav.foreldrepenger.inntektsmelding.imapi.inntektsmelding.HentInntektsmeldingResponse;
+
+/**
+ * Mapping av en inntektsmelding fra fpinntektsmelding til domeneobjekt, og videre til DTO-en som returneres fra API-et.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InntektsmeldingMappingBenchmark {
+
+    private static final LocalDate STARTDATO = LocalDate.of(2025, 6, 1);
+
+    private FpinntektsmeldingTjeneste tjeneste;
+    private HentInntektsmeldingResponse response;
+    private Inntektsmelding inntektsmelding;
+
+    @Setup
+    public void setup() {
+        tjeneste = new FpinntektsmeldingTjeneste(null);
+        response = new HentInntektsmeldingResponse(
+            1L,
+            UUID.randomUUID(),
+            UUID.randomUUID(),
+            new FødselsnummerDto("12345678901"),
+            YtelseTypeDto.FORELDREPENGER,
+            new OrganisasjonsnummerDto("999999999"),
+            new KontaktpersonDto("Ola Nordmann", "12345678"),
+            STARTDATO,
+            BigDecimal.valueOf(50000),
+            LocalDateTime.of(2025, 6, 2, 10, 0),
+            BigDecimal.valueOf(30000),
+            STARTDATO.plusMonths(6),
+            new AvsenderSystemDto("TestSystem", "1.0"),
+            List.of(new SøktRefusjonDto(STARTDATO.plusMonths(1), BigDecimal.valueOf(20000)),
+                new SøktRefusjonDto(STARTDATO.plusMonths(3), BigDecimal.valueOf(10000))),
+            List.of(new BortfaltNaturalytelseDto(STARTDATO.plusMonths(1), STARTDATO.plusMonths(2), NaturalytelsetypeDto.BIL, BigDecimal.valueOf(1000)),
+                new BortfaltNaturalytelseDto(STARTDATO.plusMonths(2), STARTDATO.plusMonths(4), NaturalytelsetypeDto.LOSJI, BigDecimal.valueOf(2000))),
+            List.of(new EndringsårsakerDto(EndringsårsakDto.FERIE, STARTDATO.minusMonths(2), STARTDATO.minusMonths(1), null),
+                new EndringsårsakerDto(EndringsårsakDto.BONUS, null, null, null)),
+            InntektsmeldingStatusDto.GODKJENT,
+            InnsendingstypeDto.FORESPURT_EKSTERN,
+            STARTDATO);
+        inntektsmelding = tjeneste.mapInntektsmeldingResponseTilDomeneobjekt(response);
+    }
+
+    @Benchmark
+    public Inntektsmelding responsTilDomeneobjekt() {
+        return tjeneste.mapInntektsmeldingResponseTilDomeneobjekt(response);
+    }
+
+    @Benchmark
+    public InntektsmeldingDto domeneobjektTilDto() {
+        return InntektsmeldingMapper.mapTilDto(inntektsmelding);
+    }
+}
@@ -0,0 +1,73 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cache-nøkkel for et token, som beregnes for hvert kall mot Altinn og for hver introspeksjon. Sammenligner
+ * {@link TokenFingeravtrykk} med de tidligere hex-nøklene. Kjør med -prof gc for å se allokeringene per operasjon.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenFingeravtrykkBenchmark {
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        // Omtrent like langt som et signert Maskinporten-token
+        var bytes = new byte[900];
+        new Random(42).nextBytes(bytes);
+        token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public TokenFingeravtrykk fingeravtrykk() {
+        return TokenFingeravtrykk.av(token);
+    }
+
+    /**
+     * Slik nøkkelen til Altinn-token ble laget før: ny MessageDigest, hex via Integer.toHexString og StringBuilder.
+     */
+    @Benchmark
+    public String hexMedStringBuilder() throws NoSuchAlgorithmException {
+        var hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes());
+        var hex = new StringBuilder();
+        for (byte b : hash) {
+            var siffer = Integer.toHexString(0xff & b);
+            if (siffer.length() == 1) {
+                hex.append('0');
+            }
+            hex.append(siffer);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Slik nøkkelen til introspeksjonen ble laget før: ny MessageDigest og HexFormat.
+     */
+    @Benchmark
+    public String hexMedHexFormat() throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
+}
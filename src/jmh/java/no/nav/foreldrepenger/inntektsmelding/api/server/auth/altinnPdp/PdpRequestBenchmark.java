@@ -0,0 +1,49 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinnPdp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.nav.vedtak.mapper.json.DefaultJsonMapper;
+
+/**
+ * Bygging av PDP-requesten til Altinn, alene og sammen med serialiseringen til JSON som sendes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PdpRequestBenchmark {
+
+    private PdpKlient.System system;
+    private String orgnr;
+    private String ressurs;
+
+    @Setup
+    public void setup() {
+        system = new PdpKlient.System("5a3c9c4e-6d0b-4d9e-9f3a-2b1c0d8e7f6a", "urn:altinn:systemuser:uuid");
+        orgnr = "999999999";
+        ressurs = "nav_foreldrepenger_inntektsmelding";
+    }
+
+    @Benchmark
+    public PdpRequest lagPdpRequest() {
+        return PdpRequestUtil.lagPdpRequest(system, orgnr, ressurs);
+    }
+
+    @Benchmark
+    public String lagPdpRequestSomJson() {
+        return DefaultJsonMapper.toJson(PdpRequestUtil.lagPdpRequest(system, orgnr, ressurs));
+    }
+}
@@ -0,0 +1,72 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.ForespørselStatus;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.YtelseType;
+
+/**
+ * Validering av en gyldig inntektsmelding med endringer i både inntekt, refusjon og naturalytelser, slik at alle
+ * reglene kjøres helt igjennom.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InntektsmeldingValideringBenchmark {
+
+    private static final LocalDate STARTDATO = LocalDate.of(2025, 6, 1);
+
+    private InntektsmeldingRequest request;
+    private Forespørsel forespørsel;
+
+    @Setup
+    public void setup() {
+        var uuid = UUID.randomUUID();
+        var fnr = "12345678901";
+        request = new InntektsmeldingRequest(uuid, fnr, STARTDATO, YtelseType.FORELDREPENGER,
+            new InntektsmeldingRequest.InntektInfo(new BigDecimal("50000.00"), List.of(
+                new InntektsmeldingRequest.InntektInfo.Endringsaarsak(InntektsmeldingRequest.InntektInfo.Endringsaarsak.EndringsaarsakType.Ferie,
+                    STARTDATO.minusMonths(2), STARTDATO.minusMonths(1), null),
+                new InntektsmeldingRequest.InntektInfo.Endringsaarsak(InntektsmeldingRequest.InntektInfo.Endringsaarsak.EndringsaarsakType.Bonus,
+                    null, null, null))),
+            new InntektsmeldingRequest.Refusjon(new BigDecimal("30000.00"), List.of(
+                new InntektsmeldingRequest.Refusjon.RefusjonEndring(new BigDecimal("20000.00"), STARTDATO.plusMonths(1)),
+                new InntektsmeldingRequest.Refusjon.RefusjonEndring(new BigDecimal("10000.00"), STARTDATO.plusMonths(3)))),
+            List.of(new InntektsmeldingRequest.Naturalytelse(InntektsmeldingRequest.Naturalytelse.Naturalytelsetype.Bil,
+                    new BigDecimal("1000.00"), STARTDATO.plusMonths(1), STARTDATO.plusMonths(2)),
+                new InntektsmeldingRequest.Naturalytelse(InntektsmeldingRequest.Naturalytelse.Naturalytelsetype.Losji,
+                    new BigDecimal("2000.00"), STARTDATO.plusMonths(2), null)),
+            new InntektsmeldingRequest.Kontaktinformasjon("Test Person", "99887766"),
+            new InntektsmeldingRequest.Avsender("TestSystem", "1.0"));
+        forespørsel = new Forespørsel(1L, uuid, new Organisasjonsnummer("999999999"), fnr, STARTDATO, LocalDate.of(2025, 5, 1),
+            ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER, LocalDateTime.of(2025, 5, 15, 8, 0));
+    }
+
+    @Benchmark
+    public Optional<EksponertFeilmelding> validerInntektsmelding() {
+        return InntektsmeldingValidererUtil.validerInntektsmelding(request, forespørsel);
+    }
+}
@@ -0,0 +1,44 @@
+package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
+import no.nav.foreldrepenger.inntektsmelding.api.server.cache.TidsbegrensetCache;
+import no.nav.foreldrepenger.konfig.Environment;
+
+/**
+ * Kortlevd cache av forespørsler fra fpinntektsmelding. Leverandører henter gjerne en forespørsel og sender inn mot den
+ * rett etterpå, så levetiden trenger bare dekke noen sekunder. Forespørsler som ikke finnes caches kortere.
+ */
+@ApplicationScoped
+public class ForespørselCache {
+    private static final Environment ENV = Environment.current();
+
+    private final TidsbegrensetCache<UUID, Optional<Forespørsel>> forespørsler = new TidsbegrensetCache<>("fpinntektsmelding-forespoersel",
+        ENV.getProperty("fpinntektsmelding.forespoersel.cache.maks.antall", Integer.class, 10_000));
+    private final Duration levetid = Duration.ofSeconds(ENV.getProperty("fpinntektsmelding.forespoersel.cache.sekunder", Integer.class, 30));
+    private final Duration levetidIkkeFunnet = Duration.ofSeconds(ENV.getProperty("fpinntektsmelding.forespoersel.cache.ikke.funnet.sekunder", Integer.class, 10));
+
+    /**
+     * @return forespørselen, tom dersom fpinntektsmelding svarte at den ikke finnes, eller null dersom den ikke er i cache.
+     */
+    public Optional<Forespørsel> get(UUID forespørselUuid) {
+        return forespørsler.get(forespørselUuid);
+    }
+
+    public void put(UUID forespørselUuid, Forespørsel forespørsel) {
+        if (forespørsel == null) {
+            forespørsler.put(forespørselUuid, Optional.empty(), levetidIkkeFunnet);
+        } else {
+            forespørsler.put(forespørselUuid, Optional.of(forespørsel), levetid);
+        }
+    }
+
+    public void remove(UUID forespørselUuid) {
+        forespørsler.remove(forespørselUuid);
+    }
+}
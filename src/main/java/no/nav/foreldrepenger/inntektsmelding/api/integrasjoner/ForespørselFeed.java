@@ -0,0 +1,174 @@
+package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
+import no.nav.foreldrepenger.inntektsmelding.api.server.cache.TidsbegrensetCache;
+import no.nav.foreldrepenger.konfig.Environment;
+import no.nav.vedtak.log.mdc.MDCOperations;
+
+/**
+ * Lar konsumenter vente på nye forespørsler for en organisasjon i stedet for å søke med jevne mellomrom.
+ * Et kall som ligger bak høyeste kjente løpenummer for organisasjonen får først ett eget oppslag fra sin cursor. Bare kall som
+ * er à jour venter, og alle som venter på samme organisasjon deler ett oppslag mot fpinntektsmelding per polleintervall,
+ * fra laveste cursor blant dem. Oppslagene gir dermed bare nye forespørsler, og de stopper når ingen venter lenger.
+ * Høyeste kjente løpenummer huskes for et begrenset antall organisasjoner og en begrenset tid. Er det glemt, gjør neste kall
+ * bare et eget oppslag først.
+ */
+@ApplicationScoped
+public class ForespørselFeed {
+    private static final Logger LOG = LoggerFactory.getLogger(ForespørselFeed.class);
+    private static final Environment ENV = Environment.current();
+
+    private final Duration polleintervall = Duration.ofMillis(ENV.getProperty("api.feed.polleintervall.millis", Integer.class, 5000));
+    private final ConcurrentMap<String, Abonnement> abonnementer = new ConcurrentHashMap<>();
+    private final Duration levetidLoepenr = Duration.ofMinutes(ENV.getProperty("api.feed.loepenr.levetid.minutter", Integer.class, 60));
+    private final TidsbegrensetCache<String, Long> høyesteLoepenr;
+    private final ScheduledExecutorService planlegger = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("forespoersel-feed").daemon().factory());
+    private final ExecutorService oppslag = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("forespoersel-feed-", 0).factory());
+    private FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste;
+
+    ForespørselFeed() {
+        // for CDI proxy
+        this.høyesteLoepenr = null;
+    }
+
+    @Inject
+    public ForespørselFeed(FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste) {
+        this(fpinntektsmeldingTjeneste, ENV.getProperty("api.feed.maks.organisasjoner", Integer.class, 10_000));
+    }
+
+    ForespørselFeed(FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste, int maksOrganisasjoner) {
+        this.fpinntektsmeldingTjeneste = fpinntektsmeldingTjeneste;
+        this.høyesteLoepenr = new TidsbegrensetCache<>("feed-hoeyeste-loepenr", maksOrganisasjoner);
+    }
+
+    /**
+     * @return forespørsler med høyere løpenummer enn etterLoepenr, sortert på løpenummer. Fullføres så snart det finnes
+     * nye forespørsler, eller med tom liste når maksVentetid er passert. Er maksVentetid 0, ventes det ikke i det hele tatt.
+     */
+    public CompletableFuture<List<Forespørsel>> ventPåNye(String orgnr, long etterLoepenr, Duration maksVentetid) {
+        var høyeste = høyesteLoepenr.get(orgnr);
+        if (høyeste != null && etterLoepenr >= høyeste) {
+            return vent(orgnr, etterLoepenr, maksVentetid);
+        }
+        return CompletableFuture.supplyAsync(() -> hentNye(orgnr, etterLoepenr), oppslag)
+            .thenCompose(nye -> nye.isEmpty() ? vent(orgnr, etterLoepenr, maksVentetid) : CompletableFuture.completedFuture(nye));
+    }
+
+    private CompletableFuture<List<Forespørsel>> vent(String orgnr, long etterLoepenr, Duration maksVentetid) {
+        if (!maksVentetid.isPositive()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        var venter = new Venter(etterLoepenr, new CompletableFuture<>());
+        // Hver venter får sin egen frist, uavhengig av polleintervallet
+        venter.resultat().completeOnTimeout(List.of(), maksVentetid.toMillis(), TimeUnit.MILLISECONDS);
+        while (!abonnementer.computeIfAbsent(orgnr, Abonnement::new).leggTil(venter)) {
+            // Abonnementet ble avsluttet mellom oppslag og registrering, prøver med et nytt
+        }
+        return venter.resultat();
+    }
+
+    private List<Forespørsel> hentNye(String orgnr, long etterLoepenr) {
+        MDCOperations.putCallId(MDCOperations.generateCallId());
+        try {
+            var nye = fpinntektsmeldingTjeneste.hentForespørsler(orgnr, null, null, null, null, null, etterLoepenr).stream()
+                .filter(f -> f.loepenr() > etterLoepenr)
+                .toList();
+            if (!nye.isEmpty()) {
+                oppdaterHøyesteLoepenr(orgnr, nye.getLast().loepenr());
+            }
+            return nye;
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private void oppdaterHøyesteLoepenr(String orgnr, long loepenr) {
+        synchronized (høyesteLoepenr) {
+            var høyeste = høyesteLoepenr.get(orgnr);
+            if (høyeste == null || loepenr > høyeste) {
+                høyesteLoepenr.put(orgnr, loepenr, levetidLoepenr);
+            }
+        }
+    }
+
+    int antallAbonnementer() {
+        return abonnementer.size();
+    }
+
+    private final class Abonnement {
+        private final String orgnr;
+        private final List<Venter> ventende = new ArrayList<>();
+        private boolean aktiv;
+        private boolean avsluttet;
+
+        private Abonnement(String orgnr) {
+            this.orgnr = orgnr;
+        }
+
+        synchronized boolean leggTil(Venter venter) {
+            if (avsluttet) {
+                return false;
+            }
+            ventende.add(venter);
+            if (!aktiv) {
+                aktiv = true;
+                planlegg();
+            }
+            return true;
+        }
+
+        private void planlegg() {
+            planlegger.schedule(() -> oppslag.execute(this::slåOpp), polleintervall.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private void slåOpp() {
+            List<Venter> aktuelle;
+            synchronized (this) {
+                ventende.removeIf(v -> v.resultat().isDone());
+                if (ventende.isEmpty()) {
+                    avsluttet = true;
+                    abonnementer.remove(orgnr, this);
+                    return;
+                }
+                aktuelle = List.copyOf(ventende);
+            }
+            // Alle som venter var à jour da de begynte å vente, så oppslaget gir bare forespørsler som har kommet siden
+            var fraLoepenr = aktuelle.stream().mapToLong(Venter::etterLoepenr).min().orElseThrow();
+            try {
+                var forespørsler = hentNye(orgnr, fraLoepenr);
+                for (var venter : aktuelle) {
+                    var nye = forespørsler.stream().filter(f -> f.loepenr() > venter.etterLoepenr()).toList();
+                    if (!nye.isEmpty()) {
+                        venter.resultat().complete(nye);
+                    }
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Oppslag av nye forespørsler feilet for {} ventende kall", aktuelle.size(), e);
+                aktuelle.forEach(v -> v.resultat().completeExceptionally(e));
+            }
+            planlegg();
+        }
+    }
+
+    private record Venter(long etterLoepenr, CompletableFuture<List<Forespørsel>> resultat) {
+    }
+}
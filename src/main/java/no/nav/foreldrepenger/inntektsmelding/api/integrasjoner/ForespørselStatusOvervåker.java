@@ -0,0 +1,165 @@
+package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.ForespørselStatus;
+import no.nav.foreldrepenger.konfig.Environment;
+import no.nav.vedtak.log.mdc.MDCOperations;
+
+/**
+ * Følger med på status for forespørslene til en organisasjon så lenge noen lytter på den. Alle lyttere på samme
+ * organisasjon deler ett oppslag mot fpinntektsmelding per polleintervall. Første oppslag gir bare utgangspunktet,
+ * deretter meldes nye forespørsler og forespørsler som har byttet status. Løpenummeret settes når forespørselen opprettes
+ * og endres ikke ved statusbytte, så hvert oppslag må hente alle forespørslene til organisasjonen.
+ */
+@ApplicationScoped
+public class ForespørselStatusOvervåker {
+    private static final Logger LOG = LoggerFactory.getLogger(ForespørselStatusOvervåker.class);
+    private static final Environment ENV = Environment.current();
+
+    private final ConcurrentMap<String, Overvåkning> overvåkninger = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService planlegger = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("forespoersel-status").daemon().factory());
+    private final ExecutorService oppslag = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("forespoersel-status-", 0).factory());
+    private FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste;
+    private Duration polleintervall;
+
+    ForespørselStatusOvervåker() {
+        // for CDI proxy
+    }
+
+    @Inject
+    public ForespørselStatusOvervåker(FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste) {
+        this(fpinntektsmeldingTjeneste, Duration.ofMillis(ENV.getProperty("api.hendelser.polleintervall.millis", Integer.class, 30_000)));
+    }
+
+    ForespørselStatusOvervåker(FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste, Duration polleintervall) {
+        this.fpinntektsmeldingTjeneste = fpinntektsmeldingTjeneste;
+        this.polleintervall = polleintervall;
+    }
+
+    /**
+     * @return avmelding som må kjøres når lytteren ikke lenger skal ha endringer
+     */
+    public Runnable abonner(String orgnr, Consumer<List<StatusEndring>> lytter) {
+        var registrering = new Lytter(lytter);
+        Overvåkning overvåkning;
+        do {
+            overvåkning = overvåkninger.computeIfAbsent(orgnr, Overvåkning::new);
+        } while (!overvåkning.leggTil(registrering));
+        var aktuell = overvåkning;
+        return () -> aktuell.fjern(registrering);
+    }
+
+    int antallOvervåkedeOrganisasjoner() {
+        return overvåkninger.size();
+    }
+
+    public record StatusEndring(UUID forespørselUuid, Long loepenr, ForespørselStatus status) {
+    }
+
+    // Egen klasse slik at samme lambda kan registreres flere ganger og fjernes hver for seg
+    private record Lytter(Consumer<List<StatusEndring>> mottaker) {
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    private final class Overvåkning {
+        private final String orgnr;
+        private final Set<Lytter> lyttere = new CopyOnWriteArraySet<>();
+        private final AtomicBoolean oppslagPågår = new AtomicBoolean();
+        private Map<UUID, ForespørselStatus> kjenteStatuser;
+        private ScheduledFuture<?> planlagt;
+        private boolean avsluttet;
+
+        private Overvåkning(String orgnr) {
+            this.orgnr = orgnr;
+        }
+
+        synchronized boolean leggTil(Lytter lytter) {
+            if (avsluttet) {
+                return false;
+            }
+            lyttere.add(lytter);
+            if (planlagt == null) {
+                planlagt = planlegger.scheduleWithFixedDelay(() -> oppslag.execute(this::slåOpp), 0, polleintervall.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        synchronized void fjern(Lytter lytter) {
+            lyttere.remove(lytter);
+            if (lyttere.isEmpty() && !avsluttet) {
+                avsluttet = true;
+                planlagt.cancel(false);
+                overvåkninger.remove(orgnr, this);
+            }
+        }
+
+        private void slåOpp() {
+            // Et tregt oppslag skal ikke føre til at flere oppslag for samme organisasjon går samtidig
+            if (!oppslagPågår.compareAndSet(false, true)) {
+                return;
+            }
+            MDCOperations.putCallId(MDCOperations.generateCallId());
+            try {
+                var forespørsler = fpinntektsmeldingTjeneste.hentForespørsler(orgnr, null, null, null, null, null, null);
+                var endringer = finnEndringer(forespørsler);
+                if (!endringer.isEmpty()) {
+                    lyttere.forEach(l -> l.mottaker().accept(endringer));
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Oppslag av forespørselstatus feilet, prøver igjen om {} ms", polleintervall.toMillis(), e);
+            } finally {
+                MDC.clear();
+                oppslagPågår.set(false);
+            }
+        }
+
+        private List<StatusEndring> finnEndringer(List<Forespørsel> forespørsler) {
+            var utgangspunkt = kjenteStatuser == null;
+            if (utgangspunkt) {
+                kjenteStatuser = new HashMap<>();
+            }
+            var endringer = new ArrayList<StatusEndring>();
+            for (var forespørsel : forespørsler) {
+                var forrige = kjenteStatuser.put(forespørsel.forespørselUuid(), forespørsel.status());
+                if (!utgangspunkt && forespørsel.status() != forrige) {
+                    endringer.add(new StatusEndring(forespørsel.forespørselUuid(), forespørsel.loepenr(), forespørsel.status()));
+                }
+            }
+            return endringer;
+        }
+    }
+}
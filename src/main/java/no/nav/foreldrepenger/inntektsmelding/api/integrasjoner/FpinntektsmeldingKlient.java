@@ -1,8 +1,19 @@
 package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.util.List;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import jakarta.enterprise.context.Dependent;
 import jakarta.ws.rs.core.Response;
@@ -23,6 +34,13 @@ import org.slf4j.LoggerFactory;
 
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.AvhengighetMetrikker;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.Kalltid;
+import no.nav.foreldrepenger.inntektsmelding.api.server.resiliens.Gardering;
+import no.nav.foreldrepenger.inntektsmelding.api.server.resiliens.Kretsbryter;
+import no.nav.foreldrepenger.inntektsmelding.api.server.resiliens.Skott;
+import no.nav.foreldrepenger.inntektsmelding.api.server.resiliens.UventetStatusException;
+import no.nav.foreldrepenger.konfig.Environment;
 import no.nav.vedtak.exception.TekniskException;
 import no.nav.vedtak.felles.integrasjon.rest.FpApplication;
 import no.nav.vedtak.felles.integrasjon.rest.RestClient;
@@ -36,6 +54,28 @@ import no.nav.vedtak.felles.integrasjon.rest.TokenFlow;
 public class FpinntektsmeldingKlient {
     private static final Logger LOG = LoggerFactory.getLogger(FpinntektsmeldingKlient.class);
     private static final Logger SECURE_LOG = LoggerFactory.getLogger("secureLogger");
+    private static final Environment ENV = Environment.current();
+
+    // Delt av alle instanser, siden klienten er @Dependent og opprettes per bruk
+    private static final Duration SKOTT_VENTETID = Duration.ofMillis(ENV.getProperty("fpinntektsmelding.skott.ventetid.millis", Integer.class, 250));
+    private static final Skott INNSENDING = new Skott("fpinntektsmelding-innsending",
+        ENV.getProperty("fpinntektsmelding.skott.innsending.maks.samtidige", Integer.class, 20), SKOTT_VENTETID);
+    private static final Skott SØK = new Skott("fpinntektsmelding-sok",
+        ENV.getProperty("fpinntektsmelding.skott.sok.maks.samtidige", Integer.class, 40), SKOTT_VENTETID);
+    private static final Kretsbryter.Innstillinger KRETSBRYTER = Kretsbryter.Innstillinger.fraKonfig("fpinntektsmelding.kretsbryter");
+    private static final Kretsbryter HENT_FORESPØRSEL = new Kretsbryter("fpinntektsmelding-hent-forespoersel", KRETSBRYTER);
+    private static final Kretsbryter HENT_FORESPØRSLER = new Kretsbryter("fpinntektsmelding-hent-forespoersler", KRETSBRYTER);
+    private static final Kretsbryter SEND_INNTEKTSMELDING = new Kretsbryter("fpinntektsmelding-send-inntektsmelding", KRETSBRYTER);
+    private static final Kretsbryter HENT_INNTEKTSMELDING = new Kretsbryter("fpinntektsmelding-hent-inntektsmelding", KRETSBRYTER);
+    private static final Kretsbryter HENT_INNTEKTSMELDINGER = new Kretsbryter("fpinntektsmelding-hent-inntektsmeldinger", KRETSBRYTER);
+    // Bare oppslag på id garderes, de er idempotente og har jevne svartider når alt er i orden
+    private static final Gardering.Innstillinger GARDERING = Gardering.Innstillinger.fraKonfig("fpinntektsmelding.gardering");
+    private static final Gardering GARDERING_FORESPØRSEL = new Gardering("fpinntektsmelding-hent-forespoersel", GARDERING);
+    private static final Gardering GARDERING_INNTEKTSMELDING = new Gardering("fpinntektsmelding-hent-inntektsmelding", GARDERING);
+    private static final AvhengighetMetrikker METRIKKER = new AvhengighetMetrikker("fpinntektsmelding");
+    // Listesøk leses som strøm rett fra socketen, siden RestClient bare gir hele body som String.
+    // Requesten lages fortsatt med RestRequest, som legger på Azure CC-tokenet.
+    private static final HttpClient STRØMKLIENT = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
 
     private final RestClient restClient;
     private final RestConfig restConfig;
@@ -56,10 +96,22 @@ public class FpinntektsmeldingKlient {
     }
 
     ForespørselResponse hentForespørsel(UUID forespørselUuid) {
+        return beskytt(SØK, HENT_FORESPØRSEL, () -> GARDERING_FORESPØRSEL.kjør(() -> hentForespørselFraFpinntektsmelding(forespørselUuid)));
+    }
+
+    /**
+     * Oppslaget som innsending gjør før den sender inn går i skottet for innsending, slik at mye søketrafikk ikke kan
+     * stoppe innsendinger før de når fpinntektsmelding.
+     */
+    ForespørselResponse hentForespørselForInnsending(UUID forespørselUuid) {
+        return beskytt(INNSENDING, HENT_FORESPØRSEL, () -> GARDERING_FORESPØRSEL.kjør(() -> hentForespørselFraFpinntektsmelding(forespørselUuid)));
+    }
+
+    ForespørselResponse hentForespørselFraFpinntektsmelding(UUID forespørselUuid) {
         try {
             LOG.info("Sender request til fpinntektsmelding for forespørselUuid {} ", forespørselUuid);
             var request = RestRequest.newGET(toUri(uriHentForespørsel, "/" + forespørselUuid), restConfig);
-            var response = restClient.sendReturnUnhandled(request);
+            var response = METRIKKER.mål("hent-forespoersel", () -> restClient.sendReturnUnhandled(request));
             if (response.statusCode() == 404) {
                 LOG.info("Forespørsel ikke funnet i fpinntektsmelding for uuid: {}", forespørselUuid);
                 return null;
@@ -67,7 +119,7 @@ public class FpinntektsmeldingKlient {
             if (response.statusCode() >= 400) {
                 LOG.warn("FP-97215: Uventet respons {} ved henting av forespørsel fra fpinntektsmelding for uuid: {}",
                     response.statusCode(), forespørselUuid);
-                throw feilVedKallTilFpinntektsmelding();
+                throw feilVedKallTilFpinntektsmelding(new UventetStatusException(response.statusCode(), "fpinntektsmelding"));
             }
             return DefaultJsonMapper.fromJson(response.body(), ForespørselResponse.class);
         } catch (InntektsmeldingAPIException e) {
@@ -76,76 +128,160 @@ public class FpinntektsmeldingKlient {
             LOG.warn("FP-97215: Feil ved henting av forespørsel fra fpinntektsmelding for uuid: {}. Feilmelding var {}",
                 forespørselUuid,
                 e.getMessage());
-            throw feilVedKallTilFpinntektsmelding();
+            throw feilVedKallTilFpinntektsmelding(e);
         }
     }
 
-    List<ForespørselResponse> hentForespørsler(ForespørselFilterRequest filter) {
-        try {
-            LOG.info("Sender request til fpinntektsmelding for å hente forespørsler gitt søkefilter");
-            var request = RestRequest.newPOSTJson(filter, uriHentForespørsler, restConfig);
-            var response = restClient.send(request, ForespørselResponse[].class);
-            return List.of(response);
-        } catch (Exception e) {
-            LOG.warn("FP-97215: Feil ved henting av forespørsler fra fpinntektsmelding for orgnr: {}. Feilmelding var {}",
-                filter.orgnr(),
-                e.getMessage());
-            throw feilVedKallTilFpinntektsmelding();
-        }
+    /**
+     * Gir forespørslene som en strøm som leses ett og ett element rett fra responsen mens {@code behandling} kjører.
+     * Strømmen er bare åpen inne i {@code behandling}, og stopper den tidlig, for eksempel med limit, leses ikke resten
+     * av svaret.
+     */
+    <R> R hentForespørsler(ForespørselFilterRequest filter, Function<Stream<ForespørselResponse>, R> behandling) {
+        return beskytt(SØK, HENT_FORESPØRSLER, () -> {
+            try {
+                LOG.info("Sender request til fpinntektsmelding for å hente forespørsler gitt søkefilter");
+                var request = RestRequest.newPOSTJson(filter, uriHentForespørsler, restConfig);
+                return hentListe("hent-forespoersler", request, ForespørselResponse.class, behandling);
+            } catch (Exception e) {
+                LOG.warn("FP-97215: Feil ved henting av forespørsler fra fpinntektsmelding for orgnr: {}. Feilmelding var {}",
+                    filter.orgnr(),
+                    e.getMessage());
+                throw feilVedKallTilFpinntektsmelding(e);
+            }
+        });
     }
 
     SendInntektsmeldingResponse sendInntektsmelding(SendInntektsmeldingRequest inntektsmeldingRequest) {
-        try {
-            LOG.info("Sender inntektsmelding til fpinntektsmelding for forespørselUuid {} ", inntektsmeldingRequest.foresporselUuid());
-            var request = RestRequest.newPOSTJson(inntektsmeldingRequest, uriSendInntektsmelding, restConfig);
-            return restClient.send(request, SendInntektsmeldingResponse.class);
-        } catch (Exception e) {
-            LOG.warn("FP-97215: Feil ved sending av inntektsmelding-api til fpinntektsmelding for uuid: {}. Feilmelding var {}", inntektsmeldingRequest.foresporselUuid(), e.getMessage());
-            SECURE_LOG.info("FP-97215: Feil ved sending av inntektsmelding-api til fpinntektsmelding. InntektsmeldingRequestDto er {}", inntektsmeldingRequest);
-            throw feilVedKallTilFpinntektsmelding();
-        }
+        return beskytt(INNSENDING, SEND_INNTEKTSMELDING, () -> {
+            try {
+                LOG.info("Sender inntektsmelding til fpinntektsmelding for forespørselUuid {} ", inntektsmeldingRequest.foresporselUuid());
+                var request = RestRequest.newPOSTJson(inntektsmeldingRequest, uriSendInntektsmelding, restConfig);
+                var response = METRIKKER.mål("send-inntektsmelding", () -> restClient.sendReturnUnhandled(request));
+                if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                    // Kretsbryteren skiller på statuskoden, slik at avviste innsendinger ikke åpner den for alle
+                    throw new UventetStatusException(response.statusCode(), "fpinntektsmelding");
+                }
+                return DefaultJsonMapper.fromJson(response.body(), SendInntektsmeldingResponse.class);
+            } catch (Exception e) {
+                LOG.warn("FP-97215: Feil ved sending av inntektsmelding-api til fpinntektsmelding for uuid: {}. Feilmelding var {}", inntektsmeldingRequest.foresporselUuid(), e.getMessage());
+                SECURE_LOG.info("FP-97215: Feil ved sending av inntektsmelding-api til fpinntektsmelding. InntektsmeldingRequestDto er {}", inntektsmeldingRequest);
+                throw feilVedKallTilFpinntektsmelding(e);
+            }
+        });
     }
 
 
     HentInntektsmeldingResponse hentInntektsmelding(UUID innsendingId) {
-        try {
-            LOG.info("Henter inntektsmelding fra fpinntektsmelding for uuid {} ", innsendingId);
-            var fullUri = uriHentInntektsmelding.toString() + "/" + innsendingId;
-            var request = RestRequest.newGET(URI.create(fullUri), restConfig);
-            var response = restClient.sendReturnUnhandled(request);
-            if (response.statusCode() == 404) {
-                LOG.info("Inntektsmelding ikke funnet i fpinntektsmelding for uuid: {}", innsendingId);
-                return null;
+        return beskytt(SØK, HENT_INNTEKTSMELDING, () -> GARDERING_INNTEKTSMELDING.kjør(() -> {
+            try {
+                LOG.info("Henter inntektsmelding fra fpinntektsmelding for uuid {} ", innsendingId);
+                var fullUri = uriHentInntektsmelding.toString() + "/" + innsendingId;
+                var request = RestRequest.newGET(URI.create(fullUri), restConfig);
+                var response = METRIKKER.mål("hent-inntektsmelding", () -> restClient.sendReturnUnhandled(request));
+                if (response.statusCode() == 404) {
+                    LOG.info("Inntektsmelding ikke funnet i fpinntektsmelding for uuid: {}", innsendingId);
+                    return null;
+                }
+                if (response.statusCode() >= 400) {
+                    LOG.warn("FP-97215: Uventet respons {} ved henting av inntektsmelding fra fpinntektsmelding for uuid: {}",
+                        response.statusCode(), innsendingId);
+                    throw feilVedKallTilFpinntektsmelding(new UventetStatusException(response.statusCode(), "fpinntektsmelding"));
+                }
+                return DefaultJsonMapper.fromJson(response.body(), HentInntektsmeldingResponse.class);
+            } catch (InntektsmeldingAPIException e) {
+                throw e;
+            } catch (Exception e) {
+                LOG.warn("FP-97215: Feil ved henting av inntektsmelding fra fpinntektsmelding for uuid: {}. Feilmelding var {}", innsendingId, e.getMessage());
+                throw feilVedKallTilFpinntektsmelding(e);
             }
-            if (response.statusCode() >= 400) {
-                LOG.warn("FP-97215: Uventet respons {} ved henting av inntektsmelding fra fpinntektsmelding for uuid: {}",
-                    response.statusCode(), innsendingId);
-                throw feilVedKallTilFpinntektsmelding();
+        }));
+    }
+
+    /**
+     * Som {@link #hentForespørsler(ForespørselFilterRequest, Function)}.
+     */
+    <R> R hentInntektsmeldinger(InntektsmeldingFilterRequest filter, Function<Stream<HentInntektsmeldingResponse>, R> behandling) {
+        return beskytt(SØK, HENT_INNTEKTSMELDINGER, () -> {
+            try {
+                var request = RestRequest.newPOSTJson(filter, uriHentInntektsmeldinger, restConfig);
+                return hentListe("hent-inntektsmeldinger", request, HentInntektsmeldingResponse.class, behandling);
+            } catch (Exception e) {
+                LOG.warn("FP-97215: Feil ved henting av inntektsmeldinger fra fpinntektsmelding for orgnr: {}. Feilmelding var {}",
+                    filter.orgnr(),
+                    e.getMessage());
+                throw feilVedKallTilFpinntektsmelding(e);
+            }
+        });
+    }
+
+    /**
+     * Svaret leses etter at headerne er kommet, så kallet måles til listen er lest og ikke bare til send returnerer.
+     * Ved uventet status brukes statusklassen som utfall, som for de andre kallene.
+     */
+    private static <T, R> R hentListe(String operasjon, RestRequest request, Class<T> elementType, Function<Stream<T>, R> behandling) {
+        var start = System.nanoTime();
+        HttpResponse<InputStream> response = null;
+        try {
+            response = sendOgStrøm(request);
+            var resultat = lesListe(response, elementType, behandling);
+            METRIKKER.registrer(operasjon, start, response, null);
+            return resultat;
+        } catch (RuntimeException e) {
+            if (e instanceof UventetStatusException && response != null) {
+                METRIKKER.registrer(operasjon, start, response, null);
+            } else {
+                METRIKKER.registrer(operasjon, start, null, e);
             }
-            return DefaultJsonMapper.fromJson(response.body(), HentInntektsmeldingResponse.class);
-        } catch (InntektsmeldingAPIException e) {
             throw e;
-        } catch (Exception e) {
-            LOG.warn("FP-97215: Feil ved henting av inntektsmelding fra fpinntektsmelding for uuid: {}. Feilmelding var {}", innsendingId, e.getMessage());
-            throw feilVedKallTilFpinntektsmelding();
         }
     }
 
-     List<HentInntektsmeldingResponse> hentInntektsmeldinger(InntektsmeldingFilterRequest filter) {
-         try {
-             var request = RestRequest.newPOSTJson(filter, uriHentInntektsmeldinger, restConfig);
-             var response = restClient.send(request, HentInntektsmeldingResponse[].class);
-             return List.of(response);
-         } catch (Exception e) {
-             LOG.warn("FP-97215: Feil ved henting av inntektsmeldinger fra fpinntektsmelding for orgnr: {}. Feilmelding var {}",
-                 filter.orgnr(),
-                 e.getMessage());
-             throw feilVedKallTilFpinntektsmelding();
-         }
+    private static HttpResponse<InputStream> sendOgStrøm(RestRequest request) {
+        try {
+            return STRØMKLIENT.send(request.request(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Avbrutt ved kall til fpinntektsmelding", e);
+        }
+    }
+
+    /**
+     * Parser listen element for element mens body leses fra socketen. Strømmen lukkes alltid, også ved feil og når
+     * behandlingen ikke leser hele listen, slik at tilkoblingen frigis.
+     */
+    static <T, R> R lesListe(HttpResponse<InputStream> response, Class<T> elementType, Function<Stream<T>, R> behandling) {
+        try (var body = response.body()) {
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                throw new UventetStatusException(response.statusCode(), "fpinntektsmelding");
+            }
+            if (body == null) {
+                return behandling.apply(Stream.empty());
+            }
+            try (var elementer = DefaultJsonMapper.getJsonMapper().readerFor(elementType).<T>readValues(body)) {
+                return behandling.apply(StreamSupport.stream(Spliterators.spliteratorUnknownSize(elementer, Spliterator.ORDERED), false));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Skottet holder søk og innsending fra å konkurrere om samme kapasitet. Kretsbryteren ligger innenfor, slik at kall
+     * som avvises fordi skottet er fullt ikke telles som feil mot fpinntektsmelding. Garderte kall ligger innenfor
+     * kretsbryteren og telles der som ett kall. Ventetid i skottet regnes med i backend-tiden til kallet.
+     */
+    private static <T> T beskytt(Skott skott, Kretsbryter kretsbryter, Supplier<T> kall) {
+        return Kalltid.mål(Kalltid.Steg.BACKEND, () -> skott.kjør(() -> kretsbryter.kjør(kall)));
     }
 
-    private static TekniskException feilVedKallTilFpinntektsmelding() {
-        throw new InntektsmeldingAPIException(EksponertFeilmelding.STANDARD_FEIL, Response.Status.INTERNAL_SERVER_ERROR);
+    /**
+     * Årsaken tas med, slik at kretsbryteren kan se om feilen lå hos fpinntektsmelding.
+     */
+    private static TekniskException feilVedKallTilFpinntektsmelding(Throwable årsak) {
+        throw new InntektsmeldingAPIException(EksponertFeilmelding.STANDARD_FEIL, Response.Status.INTERNAL_SERVER_ERROR, årsak);
     }
 
     private URI toUri(URI endpointURI, String path) {
@@ -2,15 +2,20 @@ package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Function;
 
 import jakarta.enterprise.context.Dependent;
 import jakarta.inject.Inject;
 
 import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
 import no.nav.foreldrepenger.inntektsmelding.api.inntektsmelding.Inntektsmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.Kalltid;
+import no.nav.foreldrepenger.inntektsmelding.api.server.parallell.BegrensetParallellitet;
 import no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne.InntektsmeldingRequest;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.InntektsmeldingStatusDto;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.KodeverkMapper;
@@ -39,19 +44,55 @@ import no.nav.vedtak.konfig.Tid;
 @Dependent
 public class FpinntektsmeldingTjeneste {
     private FpinntektsmeldingKlient fpinntektsmeldingKlient;
+    private ForespørselCache forespørselCache;
 
     FpinntektsmeldingTjeneste() {
         // for CDI proxy
     }
 
-    @Inject
     public FpinntektsmeldingTjeneste(FpinntektsmeldingKlient fpinntektsmeldingKlient) {
+        this(fpinntektsmeldingKlient, new ForespørselCache());
+    }
+
+    @Inject
+    public FpinntektsmeldingTjeneste(FpinntektsmeldingKlient fpinntektsmeldingKlient, ForespørselCache forespørselCache) {
         this.fpinntektsmeldingKlient = fpinntektsmeldingKlient;
+        this.forespørselCache = forespørselCache;
     }
 
     public Forespørsel hentForespørsel(UUID forespørselUuid) {
-        var response = fpinntektsmeldingKlient.hentForespørsel(forespørselUuid);
-        return response != null ? mapResponseTilDomeneobjekt(response) : null;
+        return hentForespørsel(forespørselUuid, fpinntektsmeldingKlient::hentForespørsel);
+    }
+
+    /**
+     * Som {@link #hentForespørsel(UUID)}, men et oppslag som ikke ligger i cachen går i samme skott som innsendingen.
+     */
+    public Forespørsel hentForespørselForInnsending(UUID forespørselUuid) {
+        return hentForespørsel(forespørselUuid, fpinntektsmeldingKlient::hentForespørselForInnsending);
+    }
+
+    private Forespørsel hentForespørsel(UUID forespørselUuid, Function<UUID, ForespørselResponse> oppslag) {
+        var cachet = forespørselCache.get(forespørselUuid);
+        if (cachet != null) {
+            return cachet.orElse(null);
+        }
+        var response = oppslag.apply(forespørselUuid);
+        var forespørsel = response != null ? tilForespørsel(response) : null;
+        forespørselCache.put(forespørselUuid, forespørsel);
+        return forespørsel;
+    }
+
+    /**
+     * fpinntektsmelding har ikke oppslag på flere forespørsel-id-er samtidig. De som ikke ligger i cachen hentes derfor
+     * med ett kall per id, men maks {@code maksSamtidige} om gangen.
+     *
+     * @return forespørslene som finnes, i samme rekkefølge som id-ene og uten duplikater
+     */
+    public List<Forespørsel> hentForespørslerMedId(Collection<UUID> forespørselUuider, int maksSamtidige) {
+        var unike = forespørselUuider.stream().distinct().toList();
+        return BegrensetParallellitet.kjør(unike, maksSamtidige, this::hentForespørsel).stream()
+            .filter(Objects::nonNull)
+            .toList();
     }
 
     public List<Forespørsel> hentForespørsler(String orgnr,
@@ -61,24 +102,51 @@ public class FpinntektsmeldingTjeneste {
                                               LocalDate fom,
                                               LocalDate tom,
                                               Long fraLoepenr) {
-        var filter = new ForespørselFilterRequest(new OrganisasjonsnummerDto(orgnr), fnr == null ? null : new FødselsnummerDto(fnr),
+        return fpinntektsmeldingKlient.hentForespørsler(lagFilter(orgnr, fnr, status, ytelseType, fom, tom, fraLoepenr),
+            forespørsler -> forespørsler.map(this::tilForespørsel).sorted(Comparator.comparingLong(Forespørsel::loepenr)).toList());
+    }
+
+    /**
+     * Som {@link #hentForespørsler(String, String, StatusDto, YtelseType, LocalDate, LocalDate, Long)}, men leser bare de
+     * første {@code maksAntall} forespørslene fra svaret. fpinntektsmelding sorterer på løpenummer, så resten av svaret
+     * leses ikke og minnebruken følger maksAntall og ikke hvor mange treff organisasjonen har.
+     */
+    public List<Forespørsel> hentForespørsler(String orgnr,
+                                              String fnr,
+                                              StatusDto status,
+                                              YtelseType ytelseType,
+                                              LocalDate fom,
+                                              LocalDate tom,
+                                              Long fraLoepenr,
+                                              int maksAntall) {
+        return fpinntektsmeldingKlient.hentForespørsler(lagFilter(orgnr, fnr, status, ytelseType, fom, tom, fraLoepenr),
+            forespørsler -> forespørsler.limit(maksAntall).map(this::tilForespørsel).toList());
+    }
+
+    private ForespørselFilterRequest lagFilter(String orgnr,
+                                               String fnr,
+                                               StatusDto status,
+                                               YtelseType ytelseType,
+                                               LocalDate fom,
+                                               LocalDate tom,
+                                               Long fraLoepenr) {
+        return new ForespørselFilterRequest(new OrganisasjonsnummerDto(orgnr), fnr == null ? null : new FødselsnummerDto(fnr),
             status == null ? null : KodeverkMapper.mapApiStatusTilForespørselStatus(status),
             ytelseType == null ? null : mapYtelseType(ytelseType),
             fom,
             tom,
             fraLoepenr);
-        var response = fpinntektsmeldingKlient.hentForespørsler(filter);
-        return response.stream()
-            .map(this::mapResponseTilDomeneobjekt)
-            .sorted(Comparator.comparingLong(Forespørsel::loepenr))
-            .toList();
     }
 
     public Inntektsmelding hentInntektsmelding(UUID innsendingId) {
         var response = fpinntektsmeldingKlient.hentInntektsmelding(innsendingId);
-        return response == null ? null : mapInntektsmeldingResponseTilDomeneobjekt(response);
+        return response == null ? null : tilInntektsmelding(response);
     }
 
+    /**
+     * Leser bare de første {@code maksAntall} inntektsmeldingene fra svaret, som fpinntektsmelding sorterer på
+     * løpenummer. Resten av svaret leses ikke.
+     */
     public List<Inntektsmelding> hentInntektsmeldinger(String orgnr,
                                                        String fnr,
                                                        UUID uuid,
@@ -86,7 +154,8 @@ public class FpinntektsmeldingTjeneste {
                                                        LocalDate fom,
                                                        LocalDate tom,
                                                        Long fraLoepenr,
-                                                       InntektsmeldingStatusDto status) {
+                                                       InntektsmeldingStatusDto status,
+                                                       int maksAntall) {
         var request = new InntektsmeldingFilterRequest(new OrganisasjonsnummerDto(orgnr),
             fnr == null ? null : new FødselsnummerDto(fnr),
             ytelseType == null ? null : mapYtelseType(ytelseType),
@@ -95,11 +164,8 @@ public class FpinntektsmeldingTjeneste {
             tom,
             fraLoepenr,
             status == null ? null : mapStatusDto(status));
-        var response = fpinntektsmeldingKlient.hentInntektsmeldinger(request);
-        return response.stream()
-            .map(this::mapInntektsmeldingResponseTilDomeneobjekt)
-            .sorted(Comparator.comparingLong(Inntektsmelding::loepenr))
-            .toList();
+        return fpinntektsmeldingKlient.hentInntektsmeldinger(request,
+            inntektsmeldinger -> inntektsmeldinger.limit(maksAntall).map(this::tilInntektsmelding).toList());
     }
 
     private InntektsmeldingApiStatusDto mapStatusDto(InntektsmeldingStatusDto status) {
@@ -110,7 +176,15 @@ public class FpinntektsmeldingTjeneste {
         };
     }
 
-    private Inntektsmelding mapInntektsmeldingResponseTilDomeneobjekt(HentInntektsmeldingResponse response) {
+    private Forespørsel tilForespørsel(ForespørselResponse response) {
+        return Kalltid.mål(Kalltid.Steg.MAPPING, () -> mapResponseTilDomeneobjekt(response));
+    }
+
+    private Inntektsmelding tilInntektsmelding(HentInntektsmeldingResponse response) {
+        return Kalltid.mål(Kalltid.Steg.MAPPING, () -> mapInntektsmeldingResponseTilDomeneobjekt(response));
+    }
+
+    Inntektsmelding mapInntektsmeldingResponseTilDomeneobjekt(HentInntektsmeldingResponse response) {
         return new Inntektsmelding(
             response.loepenr(),
             response.inntektsmeldingUuid(),
@@ -195,7 +269,7 @@ public class FpinntektsmeldingTjeneste {
 
 
     public SendInntektsmeldingResponse sendInntektsmelding(InntektsmeldingRequest inntektsmeldingRequest, Forespørsel forespørsel) {
-        var inntektsmeldingRequestDto = new SendInntektsmeldingRequest(
+        var inntektsmeldingRequestDto = Kalltid.mål(Kalltid.Steg.MAPPING, () -> new SendInntektsmeldingRequest(
             forespørsel.forespørselUuid(),
             new FødselsnummerDto(forespørsel.fødselsnummer()),
             new OrganisasjonsnummerDto(forespørsel.orgnummer().orgnr()),
@@ -208,9 +282,14 @@ public class FpinntektsmeldingTjeneste {
             mapEndringsårsakerDto(inntektsmeldingRequest.inntekt().endringAarsaker()),
             new AvsenderSystemDto(inntektsmeldingRequest.avsender().systemNavn(),
                 inntektsmeldingRequest.avsender().systemVersjon())
-        );
+        ));
 
-        return fpinntektsmeldingKlient.sendInntektsmelding(inntektsmeldingRequestDto);
+        var response = fpinntektsmeldingKlient.sendInntektsmelding(inntektsmeldingRequestDto);
+        if (response != null && response.success()) {
+            // Innsendingen endrer status på forespørselen
+            forespørselCache.remove(forespørsel.forespørselUuid());
+        }
+        return response;
     }
 
     private List<EndringsårsakerDto> mapEndringsårsakerDto(List<InntektsmeldingRequest.InntektInfo.Endringsaarsak> endringsaarsak) {
@@ -4,6 +4,7 @@ import static no.nav.vedtak.mapper.json.DefaultJsonMapper.toJson;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
 
 import org.eclipse.jetty.ee11.cdi.CdiDecoratingListener;
 import org.eclipse.jetty.ee11.cdi.CdiServletContainerInitializer;
@@ -18,8 +19,10 @@ import org.eclipse.jetty.security.Constraint;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,7 +68,7 @@ public class JettyServer {
     }
 
     private void start() throws Exception {
-            var server = new Server(getServerPort());
+            var server = lagServer(ENV.getProperty("server.virtuelle.traader", Boolean.class, false));
             LOG.info("Starter server");
             var context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
 
@@ -98,6 +101,26 @@ public class JettyServer {
             server.join();
     }
 
+    /**
+     * Med server.virtuelle.traader=true håndteres hver request på sin egen virtuelle tråd. Kall mot Texas, Altinn og
+     * fpinntektsmelding gjøres synkront på request-tråden, så de blokkerer da kun en virtuell tråd.
+     * KontekstHolder og MDC er knyttet til request-tråden og virker likt i begge modusene. Modusene sammenlignes med
+     * lasttesten, se README.
+     */
+    Server lagServer(boolean virtuelleTråder) {
+        var threadPool = new QueuedThreadPool();
+        threadPool.setName("jetty");
+        if (virtuelleTråder) {
+            threadPool.setVirtualThreadsExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jetty-vt-", 0).factory()));
+            LOG.info("Requester håndteres på virtuelle tråder");
+        }
+        var server = new Server(threadPool);
+        var connector = new ServerConnector(server);
+        connector.setPort(getServerPort());
+        server.addConnector(connector);
+        return server;
+    }
+
     private static void registerDefaultServlet(ServletContextHandler context) {
         var defaultServlet = new ServletHolder(new ResourceServlet());
         context.addServlet(defaultServlet, "/*");
@@ -107,6 +130,8 @@ public class JettyServer {
         var servlet = new ServletHolder(new ServletContainer());
         servlet.setName(appClass.getName());
         servlet.setInitOrder(prioritet);
+        // Endepunkter som venter på nye data returnerer CompletionStage og slipper tråden mens de venter
+        servlet.setAsyncSupported(true);
         servlet.setInitParameter(APPLICATION, appClass.getName());
         context.addServlet(servlet, path + "/*");
     }
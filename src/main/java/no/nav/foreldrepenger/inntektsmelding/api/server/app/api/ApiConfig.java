@@ -23,8 +23,11 @@ import io.swagger.v3.oas.models.security.SecurityScheme;
 import io.swagger.v3.oas.models.servers.Server;
 import io.swagger.v3.oas.models.tags.Tag;
 import no.nav.foreldrepenger.inntektsmelding.api.server.auth.AutentiseringFilter;
+import no.nav.foreldrepenger.inntektsmelding.api.server.begrensning.KvoteFilter;
+import no.nav.foreldrepenger.inntektsmelding.api.server.begrensning.SamtidighetsFilter;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ConstraintViolationMapper;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.LokalRestExceptionMapper;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.KalltidFilter;
 import no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne.ForespørselRest;
 import no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne.InntektsmeldingRest;
 import no.nav.vedtak.exception.TekniskException;
@@ -46,8 +49,13 @@ public class ApiConfig extends ResourceConfig {
         // Lokal rest-variant
         register(JacksonExceptionMapper.class);
         registerExceptionMappers();
+        // Måling av hele kallet, før adgangskontroll og autentisering
+        register(KalltidFilter.class);
+        // Adgangskontroll, før autentisering
+        register(SamtidighetsFilter.class);
         // Sikkerhet
         register(AutentiseringFilter.class);
+        register(KvoteFilter.class);
 
         registerOpenApi();
         // REST
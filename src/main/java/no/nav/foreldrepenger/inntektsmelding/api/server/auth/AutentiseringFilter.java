@@ -22,6 +22,7 @@ import org.slf4j.MDC;
 import no.nav.foreldrepenger.inntektsmelding.api.server.app.api.OpenApiRest;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.Kalltid;
 import no.nav.foreldrepenger.konfig.Environment;
 import no.nav.vedtak.sikkerhet.jaxrs.AuthenticationFilterDelegate;
 import no.nav.vedtak.sikkerhet.kontekst.KontekstHolder;
@@ -78,7 +79,7 @@ public class AutentiseringFilter implements ContainerRequestFilter, ContainerRes
 
         LOG.trace("{} i klasse {}", method.getName(), method.getDeclaringClass());
         fjernKontekstHvisFinnes();
-        authTjeneste.validerOgSettKontekst(tokenFromHeader.get());
+        Kalltid.mål(Kalltid.Steg.AUTENTISERING, () -> authTjeneste.validerOgSettKontekst(tokenFromHeader.get()));
     }
 
     private void fjernKontekstHvisFinnes() {
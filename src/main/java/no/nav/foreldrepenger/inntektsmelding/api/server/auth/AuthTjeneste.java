@@ -1,5 +1,7 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 import jakarta.ws.rs.core.Response;
@@ -7,8 +9,10 @@ import jakarta.ws.rs.core.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import no.nav.foreldrepenger.inntektsmelding.api.server.cache.TidsbegrensetCache;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.AvhengighetMetrikker;
 import no.nav.foreldrepenger.konfig.Environment;
 import no.nav.vedtak.sikkerhet.kontekst.KontekstHolder;
 import no.nav.vedtak.sikkerhet.oidc.token.TokenString;
@@ -19,8 +23,11 @@ import no.nav.vedtak.sikkerhet.oidc.token.texas.TexasTokenKlient;
 public class AuthTjeneste {
     private static final Environment ENV = Environment.current();
     private static final Logger LOG = LoggerFactory.getLogger(AuthTjeneste.class);
+    private static final AvhengighetMetrikker TEXAS = new AvhengighetMetrikker("texas");
 
     private final TexasTokenKlient tokenKlient;
+    private final TidsbegrensetCache<TokenFingeravtrykk, TokenKontekst> introspeksjoner;
+    private final Duration maksLevetid;
 
     public AuthTjeneste() {
         this(TexasTokenKlient.instance());
@@ -28,11 +35,21 @@ public class AuthTjeneste {
 
     protected AuthTjeneste(TexasTokenKlient tokenKlient) {
         this.tokenKlient = tokenKlient;
+        this.introspeksjoner = new TidsbegrensetCache<>("maskinporten-introspeksjon",
+            ENV.getProperty("maskinporten.introspeksjon.cache.maks.antall", Integer.class, 10_000));
+        this.maksLevetid = Duration.ofSeconds(ENV.getProperty("maskinporten.introspeksjon.cache.maks.sekunder", Integer.class, 60));
     }
 
     public void validerOgSettKontekst(TokenString tokenString) {
+        var nøkkel = TokenFingeravtrykk.av(tokenString.token());
+        var cachetKontekst = introspeksjoner.get(nøkkel);
+        if (cachetKontekst != null) {
+            KontekstHolder.setKontekst(cachetKontekst);
+            return;
+        }
 
-        var response = tokenKlient.introspectToken(new IntrospectTokenRequest(IdProvider.MASKINPORTEN, tokenString.token()));
+        var response = TEXAS.mål("introspeksjon",
+            () -> tokenKlient.introspectToken(new IntrospectTokenRequest(IdProvider.MASKINPORTEN, tokenString.token())));
 
         if (!response.active()) {
             LOG.info("Token er inaktivt. Token introspect respons: {}", response.error());
@@ -55,7 +72,8 @@ public class AuthTjeneste {
             response.consumer().id(),
             response.consumer().id(),
             response.authorization_details().getFirst().systemuser_org().id(),
-            response.authorization_details().getFirst().systemuser_id().getFirst());
+            response.authorization_details().getFirst().systemuser_id().getFirst(),
+            response.exp() == null ? null : Instant.ofEpochSecond(response.exp()));
 
         if (!ENV.isProd()) {
             var consumerId = response.consumer().id();
@@ -67,6 +85,19 @@ public class AuthTjeneste {
                 systemuserId.substring(Math.max(0, systemuserId.length() - 3)));
         }
 
+        introspeksjoner.put(nøkkel, tokenKontekst, utløpForCache(response.exp()));
         KontekstHolder.setKontekst(tokenKontekst);
     }
+
+    /**
+     * Gyldig introspeksjon gjenbrukes til tokenet utløper, men aldri lenger enn konfigurert maks levetid.
+     */
+    private Instant utløpForCache(Long exp) {
+        var maksUtløp = Instant.now().plus(maksLevetid);
+        if (exp == null) {
+            return maksUtløp;
+        }
+        var tokenUtløp = Instant.ofEpochSecond(exp);
+        return tokenUtløp.isBefore(maksUtløp) ? tokenUtløp : maksUtløp;
+    }
 }
@@ -1,9 +1,37 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth;
 
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
 
 public interface Tilgang {
 
     void sjekkAtSystemHarTilgangTilOrganisasjon(Organisasjonsnummer orgnummerFraForespørsel);
 
+    /**
+     * Som {@link #sjekkAtSystemHarTilgangTilOrganisasjon(Organisasjonsnummer)}, men uten å vente på Altinn. Må kalles fra
+     * request-tråden, siden token-konteksten leses før kallet startes. Fremtiden feiler med samme unntak som den synkrone sjekken.
+     */
+    CompletableFuture<Void> sjekkAtSystemHarTilgangTilOrganisasjonAsync(Organisasjonsnummer orgnummerFraForespørsel);
+
+    /**
+     * Brukes når ett API-kall trenger tilgangssjekk for flere organisasjoner. Organisasjoner som ikke allerede er vurdert
+     * slås opp samlet i Altinn, i stedet for ett PDP-kall per organisasjon.
+     *
+     * @return organisasjonene systemet har tilgang til
+     */
+    Set<Organisasjonsnummer> organisasjonerSystemetHarTilgangTil(Collection<Organisasjonsnummer> orgnumre);
+
+    /**
+     * @return organisasjonen i tokenet til innlogget system, for endepunkter der konsumenten ikke oppgir orgnr selv
+     */
+    Organisasjonsnummer organisasjonFraToken();
+
+    /**
+     * @return systembrukeren i tokenet til innlogget system
+     */
+    String systembrukerFraToken();
+
 }
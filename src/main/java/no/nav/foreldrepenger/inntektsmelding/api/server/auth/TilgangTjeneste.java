@@ -1,5 +1,22 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth;
 
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
 import jakarta.enterprise.context.ApplicationScoped;
 
 import jakarta.ws.rs.core.Response;
@@ -12,7 +29,10 @@ import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.Counter;
 import no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinnPdp.PdpKlient;
+import no.nav.foreldrepenger.inntektsmelding.api.server.cache.TidsbegrensetCache;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.Kalltid;
 import no.nav.foreldrepenger.konfig.Environment;
 import no.nav.vedtak.exception.ManglerTilgangException;
 import no.nav.vedtak.sikkerhet.kontekst.KontekstHolder;
@@ -23,8 +43,48 @@ public class TilgangTjeneste implements Tilgang {
     private static final Logger SECURE_LOG = LoggerFactory.getLogger("secureLogger");
     private static final Environment ENV = Environment.current();
 
+    private final TidsbegrensetCache<PdpBeslutningNøkkel, Boolean> beslutninger = new TidsbegrensetCache<>("altinn-pdp-beslutning",
+        ENV.getProperty("altinn.tre.pdp.cache.maks.antall", Integer.class, 10_000));
+    private final Duration levetidTilgang;
+    private final Duration levetidIkkeTilgang = Duration.ofSeconds(ENV.getProperty("altinn.tre.pdp.cache.ikke.tilgang.sekunder", Integer.class, 30));
+
+    // Reserve for når Altinn er nede: tidspunktet for siste Permit, slik at den kan brukes en begrenset tid etterpå
+    private final boolean reserveAktiv;
+    private final Duration reserveLevetid = Duration.ofMinutes(ENV.getProperty("altinn.tre.pdp.reserve.minutter", Integer.class, 60));
+    private final TidsbegrensetCache<PdpBeslutningNøkkel, Instant> sistePermit = new TidsbegrensetCache<>("altinn-pdp-reserve",
+        ENV.getProperty("altinn.tre.pdp.cache.maks.antall", Integer.class, 10_000));
+    private final Counter reserveBrukt = Counter.builder("altinn.pdp.reserve.brukt").register(REGISTRY);
+
+    public TilgangTjeneste() {
+        this(ENV.getProperty("altinn.tre.pdp.reserve.aktiv", Boolean.class, false),
+            Duration.ofSeconds(ENV.getProperty("altinn.tre.pdp.cache.tilgang.sekunder", Integer.class, 300)));
+    }
+
+    TilgangTjeneste(boolean reserveAktiv, Duration levetidTilgang) {
+        this.reserveAktiv = reserveAktiv;
+        this.levetidTilgang = levetidTilgang;
+    }
+
     @Override
     public void sjekkAtSystemHarTilgangTilOrganisasjon(Organisasjonsnummer orgnummerFraForespørsel) {
+        var nøkkel = lagBeslutningNøkkel(orgnummerFraForespørsel);
+
+        if (!Kalltid.mål(Kalltid.Steg.TILGANG, () -> harTilgang(nøkkel))) {
+            throw new InntektsmeldingAPIException(EksponertFeilmelding.IKKE_TILGANG_ALTINN, Response.Status.UNAUTHORIZED);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> sjekkAtSystemHarTilgangTilOrganisasjonAsync(Organisasjonsnummer orgnummerFraForespørsel) {
+        var nøkkel = lagBeslutningNøkkel(orgnummerFraForespørsel);
+        return harTilgangAsync(nøkkel).thenAccept(harTilgang -> {
+            if (!harTilgang) {
+                throw new InntektsmeldingAPIException(EksponertFeilmelding.IKKE_TILGANG_ALTINN, Response.Status.UNAUTHORIZED);
+            }
+        });
+    }
+
+    private PdpBeslutningNøkkel lagBeslutningNøkkel(Organisasjonsnummer orgnummerFraForespørsel) {
         var orgnummerFraKontekst = hentOrgnrFraKontekst();
         var systemId = hentSystemIdFraKontekst();
         if (!orgnummerFraKontekst.equals(orgnummerFraForespørsel)) {
@@ -32,17 +92,154 @@ public class TilgangTjeneste implements Tilgang {
                 + "Orgnummer fra kontekst var {} og orgnummer fra forespørsel var {}", orgnummerFraKontekst, orgnummerFraForespørsel);
         }
         var ressurs = ENV.getRequiredProperty("altinn.tre.inntektsmelding.ressurs");
+        return new PdpBeslutningNøkkel(systemId, orgnummerFraForespørsel.orgnr(), ressurs);
+    }
+
+    @Override
+    public Set<Organisasjonsnummer> organisasjonerSystemetHarTilgangTil(Collection<Organisasjonsnummer> orgnumre) {
+        var systemId = hentSystemIdFraKontekst();
+        var ressurs = ENV.getRequiredProperty("altinn.tre.inntektsmelding.ressurs");
+
+        var medTilgang = new HashSet<Organisasjonsnummer>();
+        var ikkeVurdert = new ArrayList<String>();
+        for (var orgnummer : new LinkedHashSet<>(orgnumre)) {
+            var cachetBeslutning = beslutninger.get(new PdpBeslutningNøkkel(systemId, orgnummer.orgnr(), ressurs));
+            if (cachetBeslutning == null) {
+                ikkeVurdert.add(orgnummer.orgnr());
+            } else if (cachetBeslutning) {
+                medTilgang.add(orgnummer);
+            }
+        }
+        if (ikkeVurdert.isEmpty()) {
+            return medTilgang;
+        }
+
+        Map<String, Boolean> nyeBeslutninger;
+        try {
+            nyeBeslutninger = Kalltid.mål(Kalltid.Steg.TILGANG,
+                () -> PdpKlient.instance().systemHarRettighetForOrganisasjonerAsync(systemId, ikkeVurdert, ressurs).join());
+        } catch (Exception e) {
+            LOG.warn(e.toString());
+            // Reserven brukes bare dersom alle organisasjonene kan avgjøres med den, ellers feiler hele oppslaget som før
+            if (!reserveAktiv || !erAltinnUtilgjengelig(e)) {
+                throw feilVedOppslag(e);
+            }
+            var reserve = new HashMap<PdpBeslutningNøkkel, Instant>();
+            for (var orgnr : ikkeVurdert) {
+                var nøkkel = new PdpBeslutningNøkkel(systemId, orgnr, ressurs);
+                var permit = sistePermit.getUtenTelling(nøkkel);
+                if (permit == null) {
+                    throw feilVedOppslag(e);
+                }
+                reserve.put(nøkkel, permit);
+            }
+            reserve.forEach((nøkkel, permit) -> brukReserve(nøkkel, permit, e));
+            ikkeVurdert.forEach(orgnr -> medTilgang.add(new Organisasjonsnummer(orgnr)));
+            return medTilgang;
+        }
+        nyeBeslutninger.forEach((orgnr, harTilgang) -> {
+            lagreBeslutning(new PdpBeslutningNøkkel(systemId, orgnr, ressurs), harTilgang);
+            if (harTilgang) {
+                medTilgang.add(new Organisasjonsnummer(orgnr));
+            }
+        });
+        return medTilgang;
+    }
 
+    private boolean harTilgang(PdpBeslutningNøkkel nøkkel) {
+        var cachetBeslutning = beslutninger.get(nøkkel);
+        if (cachetBeslutning != null) {
+            return cachetBeslutning;
+        }
         boolean harTilgang;
         try {
-            harTilgang = PdpKlient.instance().systemHarRettighetForOrganisasjon(systemId, orgnummerFraForespørsel.orgnr(), ressurs);
+            harTilgang = PdpKlient.instance().systemHarRettighetForOrganisasjon(nøkkel.systemId(), nøkkel.orgnr(), nøkkel.ressurs());
         } catch (Exception e) {
             LOG.warn(e.toString());
-            throw new InntektsmeldingAPIException(EksponertFeilmelding.FEIL_OPPSLAG_ALTINN, Response.Status.INTERNAL_SERVER_ERROR, e);
+            return reserveEllerFeil(nøkkel, e);
         }
-        if (!harTilgang) {
-            throw new InntektsmeldingAPIException(EksponertFeilmelding.IKKE_TILGANG_ALTINN, Response.Status.UNAUTHORIZED);
+        lagreBeslutning(nøkkel, harTilgang);
+        return harTilgang;
+    }
+
+    private CompletableFuture<Boolean> harTilgangAsync(PdpBeslutningNøkkel nøkkel) {
+        var cachetBeslutning = beslutninger.get(nøkkel);
+        if (cachetBeslutning != null) {
+            return CompletableFuture.completedFuture(cachetBeslutning);
+        }
+        return PdpKlient.instance().systemHarRettighetForOrganisasjonAsync(nøkkel.systemId(), nøkkel.orgnr(), nøkkel.ressurs())
+            .handle((harTilgang, feil) -> {
+                if (feil != null) {
+                    LOG.warn(feil.toString());
+                    return reserveEllerFeil(nøkkel, feil);
+                }
+                lagreBeslutning(nøkkel, harTilgang);
+                return harTilgang;
+            });
+    }
+
+    private void lagreBeslutning(PdpBeslutningNøkkel nøkkel, boolean harTilgang) {
+        // Avslag caches kortere enn tilgang, slik at nylig delegerte rettigheter i Altinn slår raskt igjennom
+        beslutninger.put(nøkkel, harTilgang, harTilgang ? levetidTilgang : levetidIkkeTilgang);
+        if (harTilgang) {
+            sistePermit.put(nøkkel, Instant.now(), reserveLevetid);
+        } else {
+            sistePermit.remove(nøkkel);
+        }
+    }
+
+    /**
+     * Når Altinn ikke svarer kan en Permit fra den siste tiden brukes videre, dersom reserven er slått på. Hver bruk logges
+     * i secure log slik at tilganger gitt uten ferskt svar fra Altinn kan etterprøves.
+     */
+    private boolean reserveEllerFeil(PdpBeslutningNøkkel nøkkel, Throwable feil) {
+        var permit = reserveAktiv && erAltinnUtilgjengelig(feil) ? sistePermit.getUtenTelling(nøkkel) : null;
+        if (permit != null) {
+            brukReserve(nøkkel, permit, feil);
+            return true;
+        }
+        throw feilVedOppslag(feil);
+    }
+
+    private void brukReserve(PdpBeslutningNøkkel nøkkel, Instant permit, Throwable feil) {
+        reserveBrukt.increment();
+        SECURE_LOG.warn("Altinn PDP utilgjengelig ({}). Gir tilgang for system {} til organisasjon {} og ressurs {} basert på Permit fra {}",
+            feil.toString(), nøkkel.systemId(), nøkkel.orgnr(), nøkkel.ressurs(), permit);
+    }
+
+    /**
+     * Reserven er bare for når Altinn ikke kan nås: kretsbryteren er åpen, kallet fikk tidsavbrudd eller tilkoblingen feilet.
+     * Feil som avvisning av requesten, feil i svaret eller svar som ikke passer med requesten gir ikke tilgang.
+     */
+    static boolean erAltinnUtilgjengelig(Throwable feil) {
+        for (var årsak = feil; årsak != null; årsak = årsak.getCause() == årsak ? null : årsak.getCause()) {
+            if (årsak instanceof InntektsmeldingAPIException apiFeil) {
+                return apiFeil.getStatus() == Response.Status.SERVICE_UNAVAILABLE;
+            }
+            if (årsak instanceof IOException || årsak instanceof UncheckedIOException || årsak instanceof TimeoutException) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    private static InntektsmeldingAPIException feilVedOppslag(Throwable feil) {
+        var årsak = feil instanceof CompletionException && feil.getCause() != null ? feil.getCause() : feil;
+        if (årsak instanceof InntektsmeldingAPIException apiFeil && apiFeil.getStatus() == Response.Status.SERVICE_UNAVAILABLE) {
+            // Kretsbryteren mot Altinn er åpen
+            return apiFeil;
+        }
+        return new InntektsmeldingAPIException(EksponertFeilmelding.FEIL_OPPSLAG_ALTINN, Response.Status.INTERNAL_SERVER_ERROR, feil);
+    }
+
+    @Override
+    public Organisasjonsnummer organisasjonFraToken() {
+        return hentOrgnrFraKontekst();
+    }
+
+    @Override
+    public String systembrukerFraToken() {
+        return hentSystemIdFraKontekst();
     }
 
     private Organisasjonsnummer hentOrgnrFraKontekst() {
@@ -64,4 +261,7 @@ public class TilgangTjeneste implements Tilgang {
         throw new InntektsmeldingAPIException(EksponertFeilmelding.STANDARD_FEIL, Response.Status.INTERNAL_SERVER_ERROR);
     }
 
+    private record PdpBeslutningNøkkel(String systemId, String orgnr, String ressurs) {
+    }
+
 }
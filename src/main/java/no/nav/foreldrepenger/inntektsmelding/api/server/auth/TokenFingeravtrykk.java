@@ -0,0 +1,93 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import no.nav.vedtak.exception.TekniskException;
+
+/**
+ * SHA-256 av et token som cache-nøkkel, slik at selve tokenet ikke ligger i minnet lenger enn nødvendig. Hashen holdes
+ * som fire long i stedet for en hex-streng, og beregnes med gjenbrukte MessageDigest og buffere, så et oppslag ikke
+ * allokerer mer enn selve nøkkelen. Plattformtråder har hver sin tilstand, mens virtuelle tråder, som sjelden lever
+ * lenger enn ett kall, låner fra et lite felles lager.
+ */
+public record TokenFingeravtrykk(long del1, long del2, long del3, long del4) {
+
+    private static final int LENGDE = 32;
+    private static final ThreadLocal<Tilstand> PER_TRÅD = ThreadLocal.withInitial(Tilstand::new);
+    private static final ArrayBlockingQueue<Tilstand> LAGER = new ArrayBlockingQueue<>(64);
+
+    public static TokenFingeravtrykk av(String token) {
+        if (!Thread.currentThread().isVirtual()) {
+            return PER_TRÅD.get().beregn(token);
+        }
+        var tilstand = LAGER.poll();
+        if (tilstand == null) {
+            tilstand = new Tilstand();
+        }
+        try {
+            return tilstand.beregn(token);
+        } finally {
+            LAGER.offer(tilstand);
+        }
+    }
+
+    @Override
+    public String toString() {
+        var hex = HexFormat.of();
+        return hex.toHexDigits(del1) + hex.toHexDigits(del2) + hex.toHexDigits(del3) + hex.toHexDigits(del4);
+    }
+
+    private static final class Tilstand {
+        private final MessageDigest digest;
+        private final byte[] hash = new byte[LENGDE];
+        private byte[] buffer = new byte[2048];
+
+        Tilstand() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new TekniskException("PKI-845346", "SHA-256 algoritme finnes ikke", e);
+            }
+        }
+
+        TokenFingeravtrykk beregn(String token) {
+            oppdater(token);
+            try {
+                digest.digest(hash, 0, LENGDE);
+            } catch (DigestException e) {
+                throw new IllegalStateException("Kunne ikke beregne SHA-256 av token", e);
+            }
+            return new TokenFingeravtrykk(lesLong(0), lesLong(8), lesLong(16), lesLong(24));
+        }
+
+        private void oppdater(String token) {
+            var lengde = token.length();
+            if (buffer.length < lengde) {
+                buffer = new byte[Math.max(lengde, buffer.length * 2)];
+            }
+            // Tokens er base64url og dermed ASCII, der ett tegn er én byte i UTF-8
+            for (int i = 0; i < lengde; i++) {
+                var tegn = token.charAt(i);
+                if (tegn >= 0x80) {
+                    digest.update(token.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                buffer[i] = (byte) tegn;
+            }
+            digest.update(buffer, 0, lengde);
+        }
+
+        private long lesLong(int fra) {
+            long verdi = 0;
+            for (int i = fra; i < fra + 8; i++) {
+                verdi = (verdi << 8) | (hash[i] & 0xff);
+            }
+            return verdi;
+        }
+    }
+}
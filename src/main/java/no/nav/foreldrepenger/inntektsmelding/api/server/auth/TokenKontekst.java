@@ -1,5 +1,7 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth;
 
+import java.time.Instant;
+
 import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
 import no.nav.vedtak.sikkerhet.kontekst.IdentType;
 import no.nav.vedtak.sikkerhet.kontekst.Kontekst;
@@ -10,12 +12,18 @@ public class TokenKontekst implements Kontekst {
     private String konsumentId; // lps sitt orgnummer
     private String organisasjonNummer; // arbeidsgivers orgnummer (knyttet til forespørsel)
     private String systemUserId; // Id på avsendersystemet, registrert i Altinn
+    private Instant utløper; // exp fra Maskinporten-tokenet, null hvis ukjent
 
     public TokenKontekst(String uuid, String konsumentId, String organisasjonNummer, String systemUserId) {
+        this(uuid, konsumentId, organisasjonNummer, systemUserId, null);
+    }
+
+    public TokenKontekst(String uuid, String konsumentId, String organisasjonNummer, String systemUserId, Instant utløper) {
         this.uuid = uuid;
         this.konsumentId = konsumentId;
         this.organisasjonNummer = organisasjonNummer;
         this.systemUserId = systemUserId;
+        this.utløper = utløper;
     }
 
     @Override
@@ -55,4 +63,8 @@ public class TokenKontekst implements Kontekst {
     public String getSystemUserId() {
         return systemUserId;
     }
+
+    public Instant getUtløper() {
+        return utløper;
+    }
 }
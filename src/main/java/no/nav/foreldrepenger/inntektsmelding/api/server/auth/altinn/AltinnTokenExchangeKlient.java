@@ -1,16 +1,27 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinn;
 
 import java.net.http.HttpResponse;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import no.nav.vedtak.mapper.json.DefaultJsonMapper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import no.nav.foreldrepenger.inntektsmelding.api.server.cache.TidsbegrensetCache;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.AvhengighetMetrikker;
 import no.nav.vedtak.exception.TekniskException;
 import no.nav.vedtak.felles.integrasjon.rest.RestClient;
 import no.nav.vedtak.felles.integrasjon.rest.RestClientConfig;
@@ -20,49 +31,125 @@ import no.nav.vedtak.felles.integrasjon.rest.TokenFlow;
 import no.nav.vedtak.sikkerhet.oidc.token.texas.HentTokenRequest;
 import no.nav.vedtak.sikkerhet.oidc.token.texas.IdProvider;
 import no.nav.vedtak.sikkerhet.oidc.token.texas.TexasTokenKlient;
-import no.nav.vedtak.util.LRUCache;
 
 @RestClientConfig(tokenConfig = TokenFlow.NO_AUTH_NEEDED, endpointProperty = "altinn.tre.token.exchange.path", endpointDefault = "https://platform.tt02.altinn.no/authentication/api/v1/exchange/maskinporten")
 public class AltinnTokenExchangeKlient {
     private static final Logger LOG = LoggerFactory.getLogger(AltinnTokenExchangeKlient.class);
 
     private static final RestClient restClient = RestClient.client();
-    private final RestConfig restConfig;
-    private final LRUCache<String, String> altinnCache;
+    private static final Duration LEVETID = Duration.ofMinutes(29);
+    // Tokenet fornyes i bakgrunnen når det er så lenge igjen av levetiden, slik at ingen kall må vente på token exchange
+    private static final Duration FORNY_FØR_UTLØP = Duration.ofMinutes(5);
+    private static final Duration MAKS_VENTETID = Duration.ofSeconds(15);
+    private static final String SCOPE = "altinn:authorization/authorize";
+    private static final AvhengighetMetrikker METRIKKER = new AvhengighetMetrikker("altinn-token-exchange");
+    private static final AvhengighetMetrikker TEXAS = new AvhengighetMetrikker("texas");
+
+    // Altinn-tokenet gjelder scopet og ikke det enkelte Maskinporten-tokenet, så det caches på scope. Da gir ikke
+    // rotering av Maskinporten-tokenet i Texas cache-bom, og Maskinporten-token hentes bare når det skal byttes.
+    private final TidsbegrensetCache<String, CachetToken> altinnCache = new TidsbegrensetCache<>("altinn-token", 2);
+    private final ConcurrentMap<String, CompletableFuture<String>> pågåendeExchanges = new ConcurrentHashMap<>();
+    private final ExecutorService fornyer = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("altinn-token-fornyer-", 0).factory());
+    private final Supplier<String> maskinportenToken;
+    private final UnaryOperator<String> tokenExchange;
+    private final Clock klokke;
 
     private static AltinnTokenExchangeKlient instance;
 
-    private AltinnTokenExchangeKlient() {
-        this.altinnCache = new LRUCache<>(2, TimeUnit.MILLISECONDS.convert(29, TimeUnit.MINUTES));
-        this.restConfig = RestConfig.forClient(AltinnTokenExchangeKlient.class);
+    /**
+     * @param maskinportenToken henter Maskinporten-token for scopet
+     * @param tokenExchange bytter et Maskinporten-token mot et Altinn-token
+     */
+    AltinnTokenExchangeKlient(Supplier<String> maskinportenToken, UnaryOperator<String> tokenExchange, Clock klokke) {
+        this.maskinportenToken = maskinportenToken;
+        this.tokenExchange = tokenExchange;
+        this.klokke = klokke;
     }
 
     public static synchronized AltinnTokenExchangeKlient instance() {
         var inst = instance;
         if (inst == null) {
-            inst = new AltinnTokenExchangeKlient();
+            var restConfig = RestConfig.forClient(AltinnTokenExchangeKlient.class);
+            inst = new AltinnTokenExchangeKlient(AltinnTokenExchangeKlient::hentMaskinportenToken,
+                token -> hentTokenRetryable(lagExchangeRequest(restConfig, token), 3), Clock.systemUTC());
             instance = inst;
         }
         return inst;
     }
 
     public String hentAltinn3Token() {
-        String maskinportenToken = hentMaskinportenToken();
-        var altinnTokenCacheKey = cacheKey(maskinportenToken);
-        var altinnTokenFromCache = getCachedAltinnToken(altinnTokenCacheKey);
+        var altinnTokenFromCache = altinnCache.get(SCOPE);
         if (altinnTokenFromCache != null) {
             LOG.debug("Fant altinn token i cache.");
-            return altinnTokenFromCache;
-        } else {
-            LOG.debug("Fant ingen gyldig Altinn token i cache.");
-            var exchangeRequest = RestRequest.newGET(restConfig.endpoint(), restConfig)
-                .header("Cache-Control", "no-cache")
-                .header("Authorization", "Bearer " + maskinportenToken)
-                .timeout(Duration.ofSeconds(3));
-
-            var token = hentTokenRetryable(exchangeRequest, 3);
-            putTokenToCache(altinnTokenCacheKey, token);
-            return token;
+            if (altinnTokenFromCache.børFornyes(klokke.instant())) {
+                fornyIBakgrunnen();
+            }
+            return altinnTokenFromCache.token();
+        }
+        LOG.debug("Fant ingen gyldig Altinn token i cache.");
+        return ventPå(exchangeEnGang());
+    }
+
+    private void fornyIBakgrunnen() {
+        if (pågåendeExchanges.containsKey(SCOPE)) {
+            return;
+        }
+        fornyer.execute(() -> {
+            try {
+                exchangeEnGang().join();
+                LOG.debug("Fornyet Altinn token i bakgrunnen.");
+            } catch (RuntimeException e) {
+                LOG.info("Fornying av Altinn token i bakgrunnen feilet. Gjeldende token brukes til det utløper.", e);
+            }
+        });
+    }
+
+    /**
+     * Samtidige kall deler én token exchange mot Altinn.
+     * Første kall gjør selve exchangen på tråden til kalleren, øvrige kall venter på resultatet. Fremtiden fullføres uansett
+     * hvordan exchangen ender, slik at ventende kall ikke blir hengende til de går ut på tid. En feilet exchange caches ikke.
+     */
+    private CompletableFuture<String> exchangeEnGang() {
+        var exchange = new CompletableFuture<String>();
+        var pågående = pågåendeExchanges.putIfAbsent(SCOPE, exchange);
+        if (pågående != null) {
+            return pågående;
+        }
+        try {
+            var token = tokenExchange.apply(maskinportenToken.get());
+            altinnCache.put(SCOPE, new CachetToken(token, klokke.instant().plus(LEVETID).minus(FORNY_FØR_UTLØP)), LEVETID);
+            exchange.complete(token);
+        } catch (Throwable e) {
+            exchange.completeExceptionally(e);
+            if (e instanceof Error error) {
+                throw error;
+            }
+        } finally {
+            pågåendeExchanges.remove(SCOPE, exchange);
+        }
+        return exchange;
+    }
+
+    private static RestRequest lagExchangeRequest(RestConfig restConfig, String maskinportenToken) {
+        return RestRequest.newGET(restConfig.endpoint(), restConfig)
+            .header("Cache-Control", "no-cache")
+            .header("Authorization", "Bearer " + maskinportenToken)
+            .timeout(Duration.ofSeconds(3));
+    }
+
+    private static String ventPå(CompletableFuture<String> exchange) {
+        try {
+            return exchange.get(MAKS_VENTETID.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new TekniskException("F-157385", "Kunne ikke hente token", e.getCause());
+        } catch (TimeoutException e) {
+            throw new TekniskException("F-157385", "Tidsavbrudd ved venting på token exchange", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TekniskException("F-157385", "Avbrutt ved venting på token exchange", e);
         }
     }
 
@@ -73,13 +160,14 @@ public class AltinnTokenExchangeKlient {
                 return hentToken(request);
             } catch (TekniskException e) {
                 LOG.info("Feilet {}. gang ved henting av token. Prøver på nytt", retries - i, e);
+                METRIKKER.nyttForsøk("exchange");
             }
         }
         return hentToken(request);
     }
 
     private static String hentToken(RestRequest request) {
-        var response = restClient.sendReturnUnhandled(request);
+        var response = METRIKKER.mål("exchange", () -> restClient.sendReturnUnhandled(request));
         if (response == null || response.body() == null || !responskode2xx(response)) {
             LOG.warn("Feil ved henting av token. Response: body: {}", response != null ? response.body() : null);
             throw new TekniskException("F-157385", "Kunne ikke hente token");
@@ -93,35 +181,15 @@ public class AltinnTokenExchangeKlient {
         return status >= 200 && status < 300;
     }
 
-    private String hentMaskinportenToken() {
-        return TexasTokenKlient.instance().token(new HentTokenRequest(IdProvider.MASKINPORTEN, "altinn:authorization/authorize")).access_token();
+    private static String hentMaskinportenToken() {
+        // TexasTokenKlient cacher tokenet selv, så målingen omfatter også oppslag som ikke går til Texas
+        return TEXAS.mål("token-med-lokal-cache", () -> TexasTokenKlient.instance()
+            .token(new HentTokenRequest(IdProvider.MASKINPORTEN, SCOPE))).access_token();
     }
 
-    private String getCachedAltinnToken(String key) {
-        return altinnCache.get(key);
-    }
-
-    private void putTokenToCache(String key, String exchangedToken) {
-        altinnCache.put(key, exchangedToken);
-    }
-
-    private String cacheKey(String maskinportenToken) {
-        try {
-            var md = MessageDigest.getInstance("SHA-256");
-            byte[] keyBytes = maskinportenToken.getBytes();
-            byte[] hash = md.digest(keyBytes);
-            var hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            md.reset();
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new TekniskException("PKI-845346", "SHA-256 algoritme finnes ikke", e);
+    private record CachetToken(String token, Instant fornyEtter) {
+        boolean børFornyes(Instant nå) {
+            return nå.isAfter(fornyEtter);
         }
     }
 
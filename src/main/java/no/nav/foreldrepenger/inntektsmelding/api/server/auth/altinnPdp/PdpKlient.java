@@ -1,102 +1,281 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinnPdp;
 
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinn.AltinnTokenExchangeKlient;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.AvhengighetMetrikker;
+import no.nav.foreldrepenger.inntektsmelding.api.server.resiliens.Kretsbryter;
+import no.nav.foreldrepenger.inntektsmelding.api.server.resiliens.UventetStatusException;
 import no.nav.foreldrepenger.konfig.Environment;
-import no.nav.vedtak.felles.integrasjon.rest.RestClient;
 import no.nav.vedtak.felles.integrasjon.rest.RestClientConfig;
-import no.nav.vedtak.felles.integrasjon.rest.RestConfig;
-import no.nav.vedtak.felles.integrasjon.rest.RestRequest;
 import no.nav.vedtak.felles.integrasjon.rest.TokenFlow;
+import no.nav.vedtak.mapper.json.DefaultJsonMapper;
 
+/**
+ * Klient mot Altinn 3 PDP. Kallene går asynkront over JDK {@link HttpClient}, slik at ingen tråd holdes mens Altinn svarer.
+ * Antall samtidige kall er begrenset, og kall som ikke får plass innen køtimeouten feiler raskt i stedet for å hope seg opp.
+ */
 @RestClientConfig(tokenConfig = TokenFlow.NO_AUTH_NEEDED, endpointProperty = "altinn.tre.base.url", endpointDefault = "https://platform.altinn.no")
 public class PdpKlient {
     private static final Environment ENV = Environment.current();
     private static final Logger logger = LoggerFactory.getLogger(PdpKlient.class);
     private static final Logger secureLogger = LoggerFactory.getLogger("secureLogger");
+    private static final String SYSTEMBRUKER_ATTRIBUTT = "urn:altinn:systemuser:uuid";
+    private static final int MAKS_ORGANISASJONER_PER_KALL = 100;
+    private static final AvhengighetMetrikker METRIKKER = new AvhengighetMetrikker("altinn-pdp");
 
-    private final String baseUrl;
+    private final URI authorizeUri;
     private final String subscriptionKey;
-    private static PdpKlient instance;
-    private final RestClient restClient;
-    private final AltinnTokenExchangeKlient altinnTokenExchangeKlient;
-
+    private final HttpClient httpClient;
+    private final Supplier<String> altinnToken;
+    private final Semaphore samtidigeKall;
+    private final Duration køTimeout;
+    private final Duration kallTimeout;
+    private final ExecutorService kø;
+    private final Kretsbryter kretsbryter;
 
     private PdpKlient() {
-        this.restClient = RestClient.client();
-        this.baseUrl = ENV.getRequiredProperty("altinn.tre.base.url");
-        this.subscriptionKey = ENV.getRequiredProperty("ALTINN_TRE_SUBSCRIPTION_KEY");
-        this.altinnTokenExchangeKlient = AltinnTokenExchangeKlient.instance();
+        this(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("altinn-pdp-", 0).factory()));
     }
 
-    public static synchronized PdpKlient instance() {
-        var inst = instance;
-        if (inst == null) {
-            inst = new PdpKlient();
-            instance = inst;
-        }
-        return inst;
+    private PdpKlient(ExecutorService kø) {
+        this(URI.create(ENV.getRequiredProperty("altinn.tre.base.url") + "/authorization/api/v1/authorize"),
+            ENV.getRequiredProperty("ALTINN_TRE_SUBSCRIPTION_KEY"),
+            AltinnTokenExchangeKlient.instance()::hentAltinn3Token,
+            ENV.getProperty("altinn.tre.pdp.maks.samtidige.kall", Integer.class, 50),
+            Duration.ofMillis(ENV.getProperty("altinn.tre.pdp.koe.timeout.millis", Integer.class, 1000)),
+            Duration.ofMillis(ENV.getProperty("altinn.tre.pdp.timeout.millis", Integer.class, 5000)),
+            kø,
+            HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(3)).executor(kø).build());
+    }
+
+    PdpKlient(URI authorizeUri,
+              String subscriptionKey,
+              Supplier<String> altinnToken,
+              int maksSamtidigeKall,
+              Duration køTimeout,
+              Duration kallTimeout,
+              ExecutorService kø,
+              HttpClient httpClient) {
+        this.authorizeUri = authorizeUri;
+        this.subscriptionKey = subscriptionKey;
+        this.altinnToken = altinnToken;
+        this.samtidigeKall = new Semaphore(maksSamtidigeKall);
+        this.køTimeout = køTimeout;
+        this.kallTimeout = kallTimeout;
+        this.kø = kø;
+        this.kretsbryter = new Kretsbryter("altinn-pdp", Kretsbryter.Innstillinger.fraKonfig("altinn.tre.pdp.kretsbryter"));
+        this.httpClient = httpClient;
+    }
+
+    public static PdpKlient instance() {
+        return Holder.INSTANCE;
     }
 
     public boolean systemHarRettighetForOrganisasjon(String systembrukerId, String orgnummer, String ressurs) throws PdpClientException {
-        return pdpKall(new System(systembrukerId, "urn:altinn:systemuser:uuid"), orgnummer, ressurs).harTilgang();
+        try {
+            return systemHarRettighetForOrganisasjonAsync(systembrukerId, orgnummer, ressurs).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PdpClientException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof PdpClientException pce) {
+                throw pce;
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new PdpClientException(e.getCause());
+        }
+    }
+
+    public CompletableFuture<Boolean> systemHarRettighetForOrganisasjonAsync(String systembrukerId, String orgnummer, String ressurs) {
+        var ugyldig = validerInput(orgnummer == null ? null : List.of(orgnummer), ressurs);
+        if (ugyldig != null) {
+            return CompletableFuture.failedFuture(ugyldig);
+        }
+        var pdpRequest = PdpRequestUtil.lagPdpRequest(new System(systembrukerId, SYSTEMBRUKER_ATTRIBUTT), orgnummer, ressurs);
+        secureLogger.debug("PDP kall for {}: {}", ressurs, pdpRequest);
+        return pdpKall(pdpRequest).thenApply(PdpResponse::harTilgang);
+    }
+
+    /**
+     * Vurderer systemets rettighet for flere organisasjoner med multi-request, høyst {@value MAKS_ORGANISASJONER_PER_KALL} per kall.
+     *
+     * @return beslutning per organisasjonsnummer
+     */
+    public CompletableFuture<Map<String, Boolean>> systemHarRettighetForOrganisasjonerAsync(String systembrukerId,
+                                                                                           Collection<String> orgnumre,
+                                                                                           String ressurs) {
+        var ugyldig = validerInput(orgnumre, ressurs);
+        if (ugyldig != null) {
+            return CompletableFuture.failedFuture(ugyldig);
+        }
+        var unike = List.copyOf(new LinkedHashSet<>(orgnumre));
+        var system = new System(systembrukerId, SYSTEMBRUKER_ATTRIBUTT);
+        var delkall = new ArrayList<CompletableFuture<Map<String, Boolean>>>();
+        for (int fra = 0; fra < unike.size(); fra += MAKS_ORGANISASJONER_PER_KALL) {
+            var bolk = unike.subList(fra, Math.min(fra + MAKS_ORGANISASJONER_PER_KALL, unike.size()));
+            var pdpRequest = PdpRequestUtil.lagPdpMultiRequest(system, bolk, ressurs);
+            secureLogger.debug("PDP multi-kall for {}: {}", ressurs, pdpRequest);
+            delkall.add(pdpKall(pdpRequest).thenApply(response -> tilBeslutningPerOrganisasjon(bolk, response)));
+        }
+        return CompletableFuture.allOf(delkall.toArray(CompletableFuture[]::new))
+            .thenApply(v -> {
+                var beslutninger = new HashMap<String, Boolean>();
+                delkall.forEach(kall -> beslutninger.putAll(kall.join()));
+                return beslutninger;
+            });
+    }
+
+    /**
+     * Knytter beslutningene til organisasjonene med organisasjonsnummeret som kommer tilbake i hver beslutning, siden PDP
+     * ikke garanterer samme rekkefølge som i requesten. Mangler beslutning for en organisasjon feiler hele kallet.
+     */
+    static Map<String, Boolean> tilBeslutningPerOrganisasjon(List<String> orgnumre, PdpResponse response) {
+        var beslutninger = new HashMap<String, Boolean>();
+        if (response.response() != null) {
+            for (var resultat : response.response()) {
+                var orgnr = resultat.organisasjonsnummer();
+                if (orgnr != null && orgnumre.contains(orgnr)) {
+                    // Kommer samme organisasjon tilbake flere ganger kreves Permit i alle
+                    beslutninger.merge(orgnr, resultat.decision() == PdpResponse.Decision.Permit, Boolean::logicalAnd);
+                }
+            }
+        }
+        if (beslutninger.size() != orgnumre.size()) {
+            throw new IllegalStateException("PDP svarte med beslutning for " + beslutninger.size()
+                + " av " + orgnumre.size() + " organisasjoner i en multi-request");
+        }
+        return beslutninger;
     }
 
-    private PdpResponse pdpKall(System system, String orgnummer, String ressurs) throws PdpClientException {
-        if (orgnummer == null) {
+    private static IllegalArgumentException validerInput(Collection<String> orgnumre, String ressurs) {
+        if (orgnumre == null || orgnumre.isEmpty() || orgnumre.stream().anyMatch(Objects::isNull)) {
             String message = "Ingen organisasjonsnumre gitt for pdp-kall";
             logger.warn(message);
             secureLogger.warn(message);
-            throw new IllegalArgumentException(message);
+            return new IllegalArgumentException(message);
         }
 
         if (ressurs == null) {
             String message = "Ingen ressurser gitt for pdp-kall";
             logger.warn(message);
             secureLogger.warn(message);
-            throw new IllegalArgumentException(message);
+            return new IllegalArgumentException(message);
         }
+        return null;
+    }
 
-        PdpRequest pdpRequest = PdpRequestUtil.lagPdpRequest(system, orgnummer, ressurs);
-        secureLogger.debug("PDP kall for {}: {}", ressurs, pdpRequest);
+    private CompletableFuture<PdpResponse> pdpKall(PdpRequest pdpRequest) {
+        // Venting på ledig plass og henting av Altinn-token skjer på en virtuell tråd, selve kallet er asynkront.
+        // Når kretsbryteren er åpen feiler kallet med en gang i stedet for å vente på timeout mot Altinn.
+        return kretsbryter.kjørAsync(() -> CompletableFuture.supplyAsync(() -> reserverPlassOgLagRequest(pdpRequest), kø)
+            .thenCompose(this::sendOgFrigiPlass)
+            .thenApply(this::tilPdpResponse)
+            .exceptionallyCompose(PdpKlient::tilPdpClientException));
+    }
 
+    private HttpRequest reserverPlassOgLagRequest(PdpRequest pdpRequest) {
         try {
-            RestRequest request = RestRequest.newPOSTJson(pdpRequest,
-                    URI.create(baseUrl + "/authorization/api/v1/authorize"),
-                    RestConfig.forClient(PdpKlient.class))
+            if (!samtidigeKall.tryAcquire(køTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Fikk ikke ledig plass til pdp-kall innen " + køTimeout.toMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Avbrutt ved venting på ledig plass til pdp-kall", e);
+        }
+        try {
+            return HttpRequest.newBuilder(authorizeUri)
+                .timeout(kallTimeout)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
                 .header("Ocp-Apim-Subscription-Key", subscriptionKey)
-                .otherAuthorizationSupplier(altinnTokenExchangeKlient::hentAltinn3Token);
+                .header("Authorization", "Bearer " + altinnToken.get())
+                .POST(HttpRequest.BodyPublishers.ofString(DefaultJsonMapper.toJson(pdpRequest)))
+                .build();
+        } catch (RuntimeException e) {
+            samtidigeKall.release();
+            throw e;
+        }
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendOgFrigiPlass(HttpRequest request) {
+        // Svartiden måles fra kallet sendes, uten ventetiden på ledig plass og Altinn-token
+        var start = java.lang.System.nanoTime();
+        try {
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, feil) -> {
+                    samtidigeKall.release();
+                    METRIKKER.registrer("authorize", start, response, feil);
+                });
+        } catch (RuntimeException e) {
+            samtidigeKall.release();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-            var pdpResponse = restClient.send(request, PdpResponse.class);
+    private PdpResponse tilPdpResponse(HttpResponse<String> response) {
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new UventetStatusException(response.statusCode(), "pdp endepunkt");
+        }
+        var pdpResponse = DefaultJsonMapper.fromJson(response.body(), PdpResponse.class);
+        if (ENV.isProd()) {
+            secureLogger.debug("PDP respons: {}", pdpResponse);
+        } else {
+            logger.info("PDP respons: {}", pdpResponse);
+        }
+        return pdpResponse;
+    }
 
-            if (ENV.isProd()) {
-                secureLogger.debug("PDP respons: {}", pdpResponse);
-            } else {
-                logger.info("PDP respons: {}", pdpResponse);
-            }
-            return pdpResponse;
-        } catch (Exception e) {
-            String message = "Feil ved kall til pdp endepunkt";
-            if (ENV.isProd()) {
-                logger.error(message);
-                secureLogger.error(message, e);
-            } else {
-                logger.error(message, e);
-            }
-            throw new PdpClientException();
+    private static CompletableFuture<PdpResponse> tilPdpClientException(Throwable feil) {
+        var årsak = feil instanceof CompletionException && feil.getCause() != null ? feil.getCause() : feil;
+        String message = "Feil ved kall til pdp endepunkt";
+        if (ENV.isProd()) {
+            logger.error(message);
+            secureLogger.error(message, årsak);
+        } else {
+            logger.error(message, årsak);
         }
+        return CompletableFuture.failedFuture(new PdpClientException(årsak));
     }
 
     public record System(String id, String attributeId) {
     }
 
+    private static final class Holder {
+        private static final PdpKlient INSTANCE = new PdpKlient();
+    }
+
     static class PdpClientException extends Exception {
         public PdpClientException() {
             super("Feil ved kall til pdp endepunkt");
         }
+
+        public PdpClientException(Throwable cause) {
+            super("Feil ved kall til pdp endepunkt", cause);
+        }
     }
 }
@@ -1,5 +1,6 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinnPdp;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
@@ -41,7 +42,11 @@ public record PdpRequest(
         String value,
 
         @JsonProperty("dataType")
-        String dataType
+        String dataType,
+
+        @JsonProperty("includeInResult")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Boolean includeInResult
     ) {}
 
     public record MultiRequestsExternal(
@@ -1,59 +1,99 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinnPdp;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class PdpRequestUtil {
 
+    static final String ORGANISASJONSNUMMER = "urn:altinn:organization:identifier-no";
+
     private PdpRequestUtil() {
         // Skjuler default
     }
 
     public static PdpRequest lagPdpRequest(PdpKlient.System system, String orgnr, String ressurs) {
-        // Resource
-        var attributes = List.of(new PdpRequest.XacmlJsonAttributeExternal(
-            "urn:altinn:resource",
-            ressurs,
-            null
-        ), new PdpRequest.XacmlJsonAttributeExternal(
-            "urn:altinn:organization:identifier-no",
-            orgnr,
-            null
-        ));
-        var resource = new PdpRequest.XacmlJsonCategoryExternal("r", attributes);
-
         return new PdpRequest(
             new PdpRequest.XacmlJsonRequestExternal(
                 true,
                 // Access subject
+                lagAccessSubject(system),
+                // Action
+                lagAction(),
+                // Ressource
+                List.of(lagResource("r", orgnr, ressurs)),
+                null
+            )
+        );
+    }
+
+    /**
+     * Lager en multi-request der samme system vurderes mot flere organisasjoner i ett kall.
+     * Rekkefølgen på beslutningene i {@link PdpResponse#response()} er ikke garantert, men organisasjonsnummeret er merket
+     * med includeInResult og kommer tilbake i hver beslutning, se {@link PdpResponse.DecisionResult#organisasjonsnummer()}.
+     */
+    public static PdpRequest lagPdpMultiRequest(PdpKlient.System system, List<String> orgnumre, String ressurs) {
+        var resources = new ArrayList<PdpRequest.XacmlJsonCategoryExternal>(orgnumre.size());
+        var referanser = new ArrayList<PdpRequest.RequestReferenceExternal>(orgnumre.size());
+        for (int i = 0; i < orgnumre.size(); i++) {
+            var resourceId = "r" + (i + 1);
+            resources.add(lagResource(resourceId, orgnumre.get(i), ressurs));
+            referanser.add(new PdpRequest.RequestReferenceExternal(List.of("s1", "a1", resourceId)));
+        }
+        return new PdpRequest(
+            new PdpRequest.XacmlJsonRequestExternal(
+                true,
+                lagAccessSubject(system),
+                lagAction(),
+                resources,
+                new PdpRequest.MultiRequestsExternal(referanser)
+            )
+        );
+    }
+
+    private static List<PdpRequest.XacmlJsonCategoryExternal> lagAccessSubject(PdpKlient.System system) {
+        return List.of(
+            new PdpRequest.XacmlJsonCategoryExternal(
+                "s1",
                 List.of(
-                    new PdpRequest.XacmlJsonCategoryExternal(
-                        "s1",
-                        List.of(
-                            new PdpRequest.XacmlJsonAttributeExternal(
-                                system.attributeId(),
-                                system.id(),
-                                null
-                            )
-                        )
+                    new PdpRequest.XacmlJsonAttributeExternal(
+                        system.attributeId(),
+                        system.id(),
+                        null,
+                        null
                     )
-                ),
-                // Action
+                )
+            )
+        );
+    }
+
+    private static List<PdpRequest.XacmlJsonCategoryExternal> lagAction() {
+        return List.of(
+            new PdpRequest.XacmlJsonCategoryExternal(
+                "a1",
                 List.of(
-                    new PdpRequest.XacmlJsonCategoryExternal(
-                        "a1",
-                        List.of(
-                            new PdpRequest.XacmlJsonAttributeExternal(
-                                "urn:oasis:names:tc:xacml:1.0:action:action-id",
-                                "access",
-                                "http://www.w3.org/2001/XMLSchema#string"
-                            )
-                        )
+                    new PdpRequest.XacmlJsonAttributeExternal(
+                        "urn:oasis:names:tc:xacml:1.0:action:action-id",
+                        "access",
+                        "http://www.w3.org/2001/XMLSchema#string",
+                        null
                     )
-                ),
-                // Ressource
-                List.of(resource),
-                null
+                )
             )
         );
     }
+
+    private static PdpRequest.XacmlJsonCategoryExternal lagResource(String id, String orgnr, String ressurs) {
+        var attributes = List.of(new PdpRequest.XacmlJsonAttributeExternal(
+            "urn:altinn:resource",
+            ressurs,
+            null,
+            null
+        ), new PdpRequest.XacmlJsonAttributeExternal(
+            ORGANISASJONSNUMMER,
+            orgnr,
+            null,
+            true
+        ));
+        return new PdpRequest.XacmlJsonCategoryExternal(id, attributes);
+    }
 }
@@ -16,7 +16,42 @@ public record PdpResponse(
 
     public record DecisionResult(
         @JsonProperty("decision")
-        Decision decision
+        Decision decision,
+
+        @JsonProperty("category")
+        List<Category> category
+    ) {
+        /**
+         * @return organisasjonsnummeret beslutningen gjelder, når det er merket med includeInResult i requesten, ellers null
+         */
+        public String organisasjonsnummer() {
+            if (category == null) {
+                return null;
+            }
+            return category.stream()
+                .filter(c -> c.attribute() != null)
+                .flatMap(c -> c.attribute().stream())
+                .filter(a -> PdpRequestUtil.ORGANISASJONSNUMMER.equals(a.attributeId()))
+                .map(Attribute::value)
+                .findFirst()
+                .orElse(null);
+        }
+    }
+
+    public record Category(
+        @JsonProperty("categoryId")
+        String categoryId,
+
+        @JsonProperty("attribute")
+        List<Attribute> attribute
+    ) {}
+
+    public record Attribute(
+        @JsonProperty("attributeId")
+        String attributeId,
+
+        @JsonProperty("value")
+        String value
     ) {}
 
     public enum Decision {
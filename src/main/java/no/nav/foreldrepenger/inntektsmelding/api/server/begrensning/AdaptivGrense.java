@@ -0,0 +1,113 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.begrensning;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import no.nav.foreldrepenger.konfig.Environment;
+
+/**
+ * Grense for antall samtidige kall som justeres etter målt svartid (AIMD). Så lenge kallene svarer innen målsvartiden
+ * økes grensen med om lag én for hver full runde med kall. Kallene vurderes i vinduer på en runde, altså like mange kall
+ * som grensen. Var flere enn en tidel av kallene i vinduet for trege, eller overbelastet et av dem avhengighetene, krympes
+ * grensen én gang med en fast faktor. Enkeltstående trege kall krymper den altså ikke, og grensen faller ikke mer enn
+ * én gang per runde. Slik tar tjenesten bare inn så mye den faktisk klarer å betjene.
+ */
+public class AdaptivGrense {
+
+    private static final double KRYMPEFAKTOR = 0.9;
+    private static final double GLATTING = 0.1;
+    private static final double TOLERERT_ANDEL_TREGE = 0.1;
+
+    /**
+     * @param startgrense grensen før noe er målt
+     * @param minimumGrense grensen krympes aldri under dette
+     * @param maksGrense grensen økes aldri over dette
+     * @param målsvartid kall som bruker lengre tid enn dette krymper grensen
+     */
+    public record Innstillinger(int startgrense, int minimumGrense, int maksGrense, Duration målsvartid) {
+
+        public static Innstillinger fraKonfig(String prefiks, int startgrense, Duration målsvartid) {
+            var env = Environment.current();
+            return new Innstillinger(env.getProperty(prefiks + ".start", Integer.class, startgrense),
+                env.getProperty(prefiks + ".minimum", Integer.class, 2),
+                env.getProperty(prefiks + ".maks", Integer.class, startgrense * 10),
+                Duration.ofMillis(env.getProperty(prefiks + ".maalsvartid.millis", Integer.class, (int) målsvartid.toMillis())));
+        }
+    }
+
+    private final Innstillinger innstillinger;
+    private final Counter avvist;
+    private double grense;
+    private int iBruk;
+    private double snittSvartidNanos;
+    private int kallIVindu;
+    private int tregeIVindu;
+    private boolean overbelastetIVindu;
+
+    public AdaptivGrense(String navn, Innstillinger innstillinger) {
+        this.innstillinger = innstillinger;
+        this.grense = innstillinger.startgrense();
+        this.snittSvartidNanos = innstillinger.målsvartid().toNanos();
+        this.avvist = Counter.builder("samtidighet.avvist").tag("navn", navn).register(REGISTRY);
+        Gauge.builder("samtidighet.grense", this, AdaptivGrense::grense).tag("navn", navn).register(REGISTRY);
+        Gauge.builder("samtidighet.i.bruk", this, AdaptivGrense::iBruk).tag("navn", navn).register(REGISTRY);
+    }
+
+    /**
+     * @return om kallet slippes inn. Slippes det inn må {@link #registrer(long, boolean)} kalles når det er ferdig.
+     */
+    public synchronized boolean slippInn() {
+        if (iBruk >= (int) grense) {
+            avvist.increment();
+            return false;
+        }
+        iBruk++;
+        return true;
+    }
+
+    /**
+     * @param svartidNanos hvor lang tid kallet brukte
+     * @param overbelastet om kallet feilet på en måte som tyder på overbelastning, for eksempel 503 fra en avhengighet
+     */
+    public synchronized void registrer(long svartidNanos, boolean overbelastet) {
+        var varFull = iBruk >= (int) grense;
+        iBruk--;
+        snittSvartidNanos += GLATTING * (svartidNanos - snittSvartidNanos);
+        var treg = svartidNanos > innstillinger.målsvartid().toNanos();
+        kallIVindu++;
+        if (treg) {
+            tregeIVindu++;
+        }
+        overbelastetIVindu |= overbelastet;
+        if (!treg && !overbelastet && (varFull || iBruk * 2 >= grense)) {
+            // Øker bare når grensen faktisk er i bruk, ellers vokser den ubegrenset i rolige perioder
+            grense = Math.min(innstillinger.maksGrense(), grense + 1 / grense);
+        }
+        if (kallIVindu >= Math.max(1, (int) grense)) {
+            if (overbelastetIVindu || tregeIVindu > TOLERERT_ANDEL_TREGE * kallIVindu) {
+                grense = Math.max(innstillinger.minimumGrense(), grense * KRYMPEFAKTOR);
+            }
+            kallIVindu = 0;
+            tregeIVindu = 0;
+            overbelastetIVindu = false;
+        }
+    }
+
+    /**
+     * Hvor lenge en klient bør vente før den prøver igjen, basert på hvor lang tid kallene bruker nå.
+     */
+    public synchronized Duration prøvIgjenOm() {
+        return Duration.ofSeconds(Math.max(1, (long) Math.ceil(snittSvartidNanos / 1_000_000_000d)));
+    }
+
+    public synchronized int grense() {
+        return (int) grense;
+    }
+
+    public synchronized int iBruk() {
+        return iBruk;
+    }
+}
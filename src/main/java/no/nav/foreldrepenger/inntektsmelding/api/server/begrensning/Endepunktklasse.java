@@ -0,0 +1,42 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.begrensning;
+
+/**
+ * Grupperer endepunktene i /v1 etter hva slags last de gir, slik at begrensninger kan settes per gruppe.
+ */
+public enum Endepunktklasse {
+    INNSENDING,
+    SØK;
+
+    /**
+     * @param sti stien relativt til /v1, med eller uten innledende skråstrek
+     * @return klassen til endepunktet, eller null for endepunkter som ikke begrenses
+     */
+    public static Endepunktklasse fraSti(String sti) {
+        var path = sti.startsWith("/") ? sti : "/" + sti;
+        if (path.startsWith("/openapi.") || path.endsWith("/hendelser")) {
+            // OpenAPI-dokumentet er ikke last, og hendelsesstrømmene er langlevde og ville holdt av plass hele tiden
+            return null;
+        }
+        return path.contains("/send-inn") ? INNSENDING : SØK;
+    }
+
+    /**
+     * Langpolling på nye forespørsler kan holdes åpen i opptil 30 sekunder uten å gi last. Slike kall teller mot kvoten,
+     * men skal ikke holde av plass i samtidighetsgrensen eller få svartiden sin regnet med når grensen justeres.
+     *
+     * @param sti stien relativt til /v1, med eller uten innledende skråstrek
+     */
+    public static boolean erLangpolling(String sti) {
+        return sti.endsWith("/nye");
+    }
+
+    /**
+     * Innsending og oppslag av mange elementer i ett kall tar naturlig lengre tid enn enkeltkall. De får egen
+     * samtidighetsgrense, slik at svartiden deres ikke krymper grensen for enkeltkallene.
+     *
+     * @param sti stien relativt til /v1, med eller uten innledende skråstrek
+     */
+    public static boolean erMasseoperasjon(String sti) {
+        return sti.endsWith("/send-inn/flere") || sti.endsWith("/hent-flere");
+    }
+}
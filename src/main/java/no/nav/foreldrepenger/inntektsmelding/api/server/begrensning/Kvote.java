@@ -0,0 +1,134 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.begrensning;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+import io.micrometer.core.instrument.Counter;
+import no.nav.foreldrepenger.konfig.Environment;
+
+/**
+ * Kvote per klient som token-bøtter: hver klient har en bøtte med plass til kapasitet kall, som fylles opp med
+ * perMinutt kall i minuttet. Bøttene ligger i en tabell med fast størrelse og oppdateres med compare-and-set, slik at
+ * kvoten verken låser eller vokser med antall klienter.
+ * <p>
+ * Hver klient har to mulige plasser i tabellen. En plass tas bare over når bøtta som ligger der har fylt seg helt opp
+ * igjen, og da går ingen informasjon tapt. Er begge plassene i bruk av andre aktive klienter, deler klienten en felles
+ * bøtte med alle andre i samme situasjon. Kollisjoner kan dermed gi for lite kvote, aldri for mye.
+ */
+public class Kvote {
+
+    private static final long NANOS_PER_MINUTT = Duration.ofMinutes(1).toNanos();
+    private static final String DELT = "";
+
+    /**
+     * @param perMinutt hvor mange kall bøtta fylles opp med per minutt
+     * @param kapasitet hvor mange kall bøtta har plass til, altså hvor mange kall som kan komme tett etter hverandre
+     */
+    public record Innstillinger(int perMinutt, int kapasitet) {
+
+        public static Innstillinger fraKonfig(String prefiks, int perMinutt, int kapasitet) {
+            var env = Environment.current();
+            return new Innstillinger(env.getProperty(prefiks + ".per.minutt", Integer.class, perMinutt),
+                env.getProperty(prefiks + ".kapasitet", Integer.class, kapasitet));
+        }
+    }
+
+    /**
+     * @param tillatt om kallet er innenfor kvoten
+     * @param gjenstår hvor mange kall som kan gjøres nå
+     * @param fullOm hvor lenge til bøtta er full igjen, eller til neste kall tillates dersom kallet ble avvist
+     */
+    public record Utfall(boolean tillatt, long gjenstår, Duration fullOm) {
+    }
+
+    private record Bøtte(String nøkkel, double kall, long oppdatert) {
+    }
+
+    private final Innstillinger innstillinger;
+    private final AtomicReferenceArray<Bøtte> bøtter;
+    private final LongSupplier klokke;
+    private final Counter avvist;
+    private final Counter delt;
+    private final int antallPlasser;
+
+    public Kvote(String navn, Innstillinger innstillinger, int antallPlasser) {
+        this(navn, innstillinger, antallPlasser, System::nanoTime);
+    }
+
+    Kvote(String navn, Innstillinger innstillinger, int antallPlasser, LongSupplier klokke) {
+        this.innstillinger = innstillinger;
+        // Siste plass er den felles bøtta
+        this.bøtter = new AtomicReferenceArray<>(antallPlasser + 1);
+        this.antallPlasser = antallPlasser;
+        this.klokke = klokke;
+        this.avvist = Counter.builder("kvote.avvist").tag("navn", navn).register(REGISTRY);
+        this.delt = Counter.builder("kvote.delt").tag("navn", navn).register(REGISTRY);
+    }
+
+    public Innstillinger innstillinger() {
+        return innstillinger;
+    }
+
+    public Utfall forsøk(String nøkkel) {
+        var hash = nøkkel.hashCode();
+        var første = Math.floorMod(hash, antallPlasser);
+        var andre = Math.floorMod(Integer.rotateLeft(hash * 0x9E3779B9, 16), antallPlasser);
+        while (true) {
+            var nå = klokke.getAsLong();
+            var valg = velgPlass(nøkkel, første, andre, nå);
+            var gammel = valg.gammel();
+            var kall = gammel == null || !gammel.nøkkel().equals(valg.nøkkel()) ? innstillinger.kapasitet() : fyllOpp(gammel, nå);
+            var tillatt = kall >= 1;
+            var ny = new Bøtte(valg.nøkkel(), tillatt ? kall - 1 : kall, nå);
+            if (bøtter.compareAndSet(valg.plass(), gammel, ny)) {
+                if (valg.plass() == antallPlasser) {
+                    delt.increment();
+                }
+                if (!tillatt) {
+                    avvist.increment();
+                }
+                var mangler = tillatt ? innstillinger.kapasitet() - ny.kall() : 1 - ny.kall();
+                return new Utfall(tillatt, (long) ny.kall(), Duration.ofNanos((long) Math.ceil(mangler * NANOS_PER_MINUTT / innstillinger.perMinutt())));
+            }
+        }
+    }
+
+    private record Valg(int plass, String nøkkel, Bøtte gammel) {
+    }
+
+    /**
+     * Bruker klientens egen bøtte om den finnes på en av plassene, ellers en plass som er ledig eller har full bøtte.
+     * Kommer to kall for en ny klient samtidig kan den få bøtte på begge plassene. Den ene blir da liggende ubrukt til
+     * den er full og kan tas over.
+     */
+    private Valg velgPlass(String nøkkel, int første, int andre, long nå) {
+        var iFørste = bøtter.get(første);
+        var iAndre = bøtter.get(andre);
+        if (iFørste != null && iFørste.nøkkel().equals(nøkkel)) {
+            return new Valg(første, nøkkel, iFørste);
+        }
+        if (iAndre != null && iAndre.nøkkel().equals(nøkkel)) {
+            return new Valg(andre, nøkkel, iAndre);
+        }
+        if (kanTasOver(iFørste, nå)) {
+            return new Valg(første, nøkkel, iFørste);
+        }
+        if (kanTasOver(iAndre, nå)) {
+            return new Valg(andre, nøkkel, iAndre);
+        }
+        return new Valg(antallPlasser, DELT, bøtter.get(antallPlasser));
+    }
+
+    private boolean kanTasOver(Bøtte bøtte, long nå) {
+        return bøtte == null || fyllOpp(bøtte, nå) >= innstillinger.kapasitet();
+    }
+
+    private double fyllOpp(Bøtte bøtte, long nå) {
+        // En annen tråd kan ha oppdatert bøtta etter at vi leste klokka
+        var påfyll = (double) Math.max(0, nå - bøtte.oppdatert()) * innstillinger.perMinutt() / NANOS_PER_MINUTT;
+        return Math.min(innstillinger.kapasitet(), bøtte.kall() + påfyll);
+    }
+}
@@ -0,0 +1,99 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.begrensning;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.auth.TokenKontekst;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse;
+import no.nav.foreldrepenger.konfig.Environment;
+import no.nav.vedtak.sikkerhet.kontekst.KontekstHolder;
+
+/**
+ * Kvote per konsument og systembruker, slik at ett leverandørsystem ikke kan bruke opp kapasiteten til alle. Kjøres rett
+ * etter {@link no.nav.foreldrepenger.inntektsmelding.api.server.auth.AutentiseringFilter}, når token-konteksten er satt.
+ * Gjenstående kvote returneres i RateLimit-headerne, og kall over kvoten avvises med 429.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION + 100)
+public class KvoteFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    static final String RATELIMIT_LIMIT = "RateLimit-Limit";
+    static final String RATELIMIT_REMAINING = "RateLimit-Remaining";
+    static final String RATELIMIT_RESET = "RateLimit-Reset";
+    static final String RATELIMIT_POLICY = "RateLimit-Policy";
+
+    private static final String UTFALL = KvoteFilter.class.getName() + ".utfall";
+    private static final String KVOTE = KvoteFilter.class.getName() + ".kvote";
+
+    // Delt av alle instanser, Jersey kan opprette filteret flere ganger
+    private static final int ANTALL_PLASSER = Environment.current().getProperty("api.kvote.plasser", Integer.class, 4096);
+    private static final Kvote INNSENDING = new Kvote("innsending", Kvote.Innstillinger.fraKonfig("api.kvote.innsending", 120, 30), ANTALL_PLASSER);
+    private static final Kvote SØK = new Kvote("sok", Kvote.Innstillinger.fraKonfig("api.kvote.sok", 600, 100), ANTALL_PLASSER);
+
+    private final Kvote innsending;
+    private final Kvote søk;
+
+    public KvoteFilter() {
+        this(INNSENDING, SØK);
+    }
+
+    KvoteFilter(Kvote innsending, Kvote søk) {
+        this.innsending = innsending;
+        this.søk = søk;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext req) {
+        var klasse = Endepunktklasse.fraSti(req.getUriInfo().getPath());
+        if (klasse == null || !KontekstHolder.harKontekst() || !(KontekstHolder.getKontekst() instanceof TokenKontekst tk)) {
+            return;
+        }
+        var kvote = switch (klasse) {
+            case INNSENDING -> innsending;
+            case SØK -> søk;
+        };
+        var utfall = kvote.forsøk(tk.getKonsumentId() + "/" + tk.getSystemUserId());
+        if (!utfall.tillatt()) {
+            var respons = Response.status(Response.Status.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, sekunder(utfall))
+                .entity(new ErrorResponse(EksponertFeilmelding.FOR_MANGE_KALL.name(), EksponertFeilmelding.FOR_MANGE_KALL.getTekst()))
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+            leggTilHeadere(respons.getHeaders(), kvote, utfall);
+            req.abortWith(respons);
+            return;
+        }
+        req.setProperty(KVOTE, kvote);
+        req.setProperty(UTFALL, utfall);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext req, ContainerResponseContext res) {
+        if (req.getProperty(KVOTE) instanceof Kvote kvote && req.getProperty(UTFALL) instanceof Kvote.Utfall utfall) {
+            leggTilHeadere(res.getHeaders(), kvote, utfall);
+        }
+    }
+
+    private static void leggTilHeadere(MultivaluedMap<String, Object> headere, Kvote kvote, Kvote.Utfall utfall) {
+        var innstillinger = kvote.innstillinger();
+        headere.putSingle(RATELIMIT_LIMIT, innstillinger.kapasitet());
+        headere.putSingle(RATELIMIT_REMAINING, utfall.gjenstår());
+        headere.putSingle(RATELIMIT_RESET, sekunder(utfall));
+        headere.putSingle(RATELIMIT_POLICY, innstillinger.kapasitet() + ";w=" + Math.max(1, 60L * innstillinger.kapasitet() / innstillinger.perMinutt()));
+    }
+
+    private static long sekunder(Kvote.Utfall utfall) {
+        // Rundes opp, slik at klienten ikke prøver igjen før kvoten faktisk er fylt opp
+        return (utfall.fullOm().toMillis() + 999) / 1000;
+    }
+}
@@ -0,0 +1,93 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.begrensning;
+
+import java.time.Duration;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse;
+
+/**
+ * Adgangskontroll foran resten av API-et. Innsending og søk har hver sin {@link AdaptivGrense}, slik at et rush av søk
+ * ikke stenger ute innsending og omvendt. Masseoperasjonene har en egen grense med lengre målsvartid. Kall over grensen avvises med 503 og Retry-After før token valideres, så
+ * overlast ikke også koster oppslag mot Maskinporten og Altinn.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public class SamtidighetsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String GRENSE = SamtidighetsFilter.class.getName() + ".grense";
+    private static final String START = SamtidighetsFilter.class.getName() + ".start";
+
+    // Delt av alle instanser, Jersey kan opprette filteret flere ganger
+    private static final AdaptivGrense INNSENDING = new AdaptivGrense("innsending",
+        AdaptivGrense.Innstillinger.fraKonfig("api.samtidighet.innsending", 20, Duration.ofSeconds(3)));
+    private static final AdaptivGrense SØK = new AdaptivGrense("sok",
+        AdaptivGrense.Innstillinger.fraKonfig("api.samtidighet.sok", 40, Duration.ofSeconds(1)));
+    private static final AdaptivGrense MASSE = new AdaptivGrense("masse",
+        AdaptivGrense.Innstillinger.fraKonfig("api.samtidighet.masse", 10, Duration.ofSeconds(15)));
+
+    private final AdaptivGrense innsending;
+    private final AdaptivGrense søk;
+    private final AdaptivGrense masse;
+
+    public SamtidighetsFilter() {
+        this(INNSENDING, SØK, MASSE);
+    }
+
+    SamtidighetsFilter(AdaptivGrense innsending, AdaptivGrense søk, AdaptivGrense masse) {
+        this.innsending = innsending;
+        this.søk = søk;
+        this.masse = masse;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext req) {
+        var grense = grenseFor(req.getUriInfo().getPath());
+        if (grense == null) {
+            return;
+        }
+        if (!grense.slippInn()) {
+            req.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, grense.prøvIgjenOm().toSeconds())
+                .entity(new ErrorResponse(EksponertFeilmelding.MIDLERTIDIG_UTILGJENGELIG.name(),
+                    EksponertFeilmelding.MIDLERTIDIG_UTILGJENGELIG.getTekst()))
+                .type(MediaType.APPLICATION_JSON)
+                .build());
+            return;
+        }
+        req.setProperty(GRENSE, grense);
+        req.setProperty(START, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext req, ContainerResponseContext res) {
+        if (req.getProperty(GRENSE) instanceof AdaptivGrense grense && req.getProperty(START) instanceof Long start) {
+            req.removeProperty(GRENSE);
+            grense.registrer(System.nanoTime() - start, res.getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        }
+    }
+
+    private AdaptivGrense grenseFor(String sti) {
+        var klasse = Endepunktklasse.fraSti(sti);
+        if (klasse == null || Endepunktklasse.erLangpolling(sti)) {
+            return null;
+        }
+        if (Endepunktklasse.erMasseoperasjon(sti)) {
+            return masse;
+        }
+        return switch (klasse) {
+            case INNSENDING -> innsending;
+            case SØK -> søk;
+        };
+    }
+}
@@ -0,0 +1,159 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.cache;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+
+/**
+ * Størrelsesbegrenset LRU-cache der hvert element har sin egen levetid.
+ * Treff, bom og utkastelser registreres i Prometheus-registeret under navnet som oppgis.
+ */
+public class TidsbegrensetCache<K, V> {
+
+    private final int maksAntall;
+    private final Clock klokke;
+    private final Map<K, Element<V>> elementer;
+    private final Counter treff;
+    private final Counter bom;
+    private final Counter utkastet;
+    private final Counter utløpt;
+
+    public TidsbegrensetCache(String navn, int maksAntall) {
+        this(navn, maksAntall, Clock.systemUTC());
+    }
+
+    TidsbegrensetCache(String navn, int maksAntall, Clock klokke) {
+        if (maksAntall < 1) {
+            throw new IllegalArgumentException("Cache må ha plass til minst ett element, fikk " + maksAntall);
+        }
+        this.maksAntall = maksAntall;
+        this.klokke = klokke;
+        this.elementer = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Element<V>> eldste) {
+                if (size() > TidsbegrensetCache.this.maksAntall) {
+                    TidsbegrensetCache.this.utkastet.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.treff = Counter.builder("cache.gets").tag("cache", navn).tag("result", "hit").register(REGISTRY);
+        this.bom = Counter.builder("cache.gets").tag("cache", navn).tag("result", "miss").register(REGISTRY);
+        this.utkastet = Counter.builder("cache.evictions").tag("cache", navn).tag("cause", "size").register(REGISTRY);
+        this.utløpt = Counter.builder("cache.evictions").tag("cache", navn).tag("cause", "expired").register(REGISTRY);
+        Gauge.builder("cache.size", this, TidsbegrensetCache::størrelse).tag("cache", navn).register(REGISTRY);
+    }
+
+    /**
+     * @return verdien for nøkkelen, eller null dersom den ikke finnes eller er utløpt.
+     */
+    public V get(K nøkkel) {
+        return hent(nøkkel, true);
+    }
+
+    /**
+     * Som {@link #get(Object)}, men uten å telle treff eller bom. Brukes for oppslag som ikke er vanlig bruk av cachen,
+     * slik at de ikke forskyver treffraten.
+     */
+    public V getUtenTelling(K nøkkel) {
+        return hent(nøkkel, false);
+    }
+
+    private V hent(K nøkkel, boolean medTelling) {
+        var nå = klokke.instant();
+        synchronized (elementer) {
+            var element = elementer.get(nøkkel);
+            if (element == null) {
+                tell(bom, medTelling);
+                return null;
+            }
+            if (element.erUtløpt(nå)) {
+                elementer.remove(nøkkel);
+                utløpt.increment();
+                tell(bom, medTelling);
+                return null;
+            }
+            tell(treff, medTelling);
+            return element.verdi();
+        }
+    }
+
+    private static void tell(Counter teller, boolean medTelling) {
+        if (medTelling) {
+            teller.increment();
+        }
+    }
+
+    public void put(K nøkkel, V verdi, Duration levetid) {
+        put(nøkkel, verdi, klokke.instant().plus(levetid));
+    }
+
+    public void put(K nøkkel, V verdi, Instant utløper) {
+        if (!utløper.isAfter(klokke.instant())) {
+            return;
+        }
+        synchronized (elementer) {
+            elementer.put(nøkkel, new Element<>(verdi, utløper));
+        }
+    }
+
+    /**
+     * Legger inn verdien bare dersom nøkkelen mangler eller er utløpt.
+     *
+     * @return verdien som allerede lå der, eller null dersom den nye verdien ble lagt inn
+     */
+    public V putIfAbsent(K nøkkel, V verdi, Duration levetid) {
+        var nå = klokke.instant();
+        synchronized (elementer) {
+            var element = elementer.get(nøkkel);
+            if (element != null && !element.erUtløpt(nå)) {
+                treff.increment();
+                return element.verdi();
+            }
+            if (element != null) {
+                utløpt.increment();
+            }
+            bom.increment();
+            elementer.put(nøkkel, new Element<>(verdi, nå.plus(levetid)));
+            return null;
+        }
+    }
+
+    public void remove(K nøkkel) {
+        synchronized (elementer) {
+            elementer.remove(nøkkel);
+        }
+    }
+
+    /**
+     * Fjerner nøkkelen bare dersom den fortsatt peker på akkurat denne verdien.
+     */
+    public void remove(K nøkkel, V verdi) {
+        synchronized (elementer) {
+            var element = elementer.get(nøkkel);
+            if (element != null && element.verdi() == verdi) {
+                elementer.remove(nøkkel);
+            }
+        }
+    }
+
+    public int størrelse() {
+        synchronized (elementer) {
+            return elementer.size();
+        }
+    }
+
+    private record Element<V>(V verdi, Instant utløper) {
+        boolean erUtløpt(Instant nå) {
+            return !utløper.isAfter(nå);
+        }
+    }
+}
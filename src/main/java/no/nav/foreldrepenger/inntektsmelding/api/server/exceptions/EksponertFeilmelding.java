@@ -16,6 +16,9 @@ public enum EksponertFeilmelding {
     TOM_FORESPOERSEL("Finner ikke forespørsel"),
     TOM_INNTEKTSMELDING("Finner ikke inntektsmelding"),
     UGYLDIG_PERIODE("Oppgitt periode er ugyldig, fom kan ikke være etter tom"),
+    IDEMPOTENSNOEKKEL_GJENBRUKT("Idempotency-Key er allerede brukt på en inntektsmelding med annet innhold"),
+    IDEMPOTENSNOEKKEL_PAAGAAR("En innsending med samme Idempotency-Key pågår fortsatt. Prøv igjen om litt."),
+    UGYLDIG_CURSOR("Oppgitt cursor er ugyldig, bruk verdien fra Neste-Cursor i forrige svar"),
     MISMATCH_ORGNR("Organisasjonsnummer fra token og organisasjonsnummer fra etterspurt forespørsel matcher ikke"),
     MISMATCH_FOERSTE_UTTAKSDATO("Første uttaksdato fra inntektsmelding og første uttaksdato fra etterspurt forespørsel matcher ikke"),
     MISMATCH_SKJAERINGSTIDSPUNKT("Skjæringstidspunkt fra inntektsmelding og skjæringstidspunkt fra etterspurt forespørsel matcher ikke"),
@@ -34,6 +37,9 @@ public enum EksponertFeilmelding {
     FRA_DATO_FOER_STARTDATO("Dato for varig lønnsendring må være før fraværsdato"),
     DUPLIKATER_IKKE_TILATT(
         "Duplikate endringsårsker er ikke tillatt for årsakene: NY_STILLING, NY_STILLINGSPROSENT, VARIG_LØNNSENDRING, BONUS, TARIFF_ENDRING, FERIETREKK_ELLER_UTBETALING_AV_FERIEPENGER, NYANSATT, MANGELFULL_RAPPORTERING_A-ORDNING, INNTEKT_IKKE_RAPPRTERT_ENDA_A-ORDNING"),
+    // Tilgjengelighet
+    MIDLERTIDIG_UTILGJENGELIG("Tjenesten er midlertidig utilgjengelig. Prøv igjen om litt."),
+    FOR_MANGE_KALL("Systemet har brukt opp kvoten sin for dette endepunktet. Prøv igjen etter tiden i Retry-After."),
     // Default
     STANDARD_FEIL("Noe feilet.");
 
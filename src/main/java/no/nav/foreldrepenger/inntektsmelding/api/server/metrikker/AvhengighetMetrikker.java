@@ -0,0 +1,109 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.metrikker;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Svartider og utfall for utgående kall mot én avhengighet. Hvert kall registreres i timeren avhengighet.kall med
+ * histogram og persentiler, merket med avhengighet, operasjon og utfall, slik at det går an å se hvilket ledd som
+ * drar opp p99. Utfallet er statusklassen til HTTP-responsen (2xx, 4xx, 5xx), tidsavbrudd eller feil. Nye forsøk etter
+ * feil telles i avhengighet.nytt.forsok.
+ */
+public class AvhengighetMetrikker {
+
+    static final String TIMER = "avhengighet.kall";
+    static final String NYTT_FORSØK = "avhengighet.nytt.forsok";
+    static final String TIDSAVBRUDD = "tidsavbrudd";
+    static final String FEIL = "feil";
+    static final String OK = "ok";
+
+    private final String avhengighet;
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timere = new ConcurrentHashMap<>();
+    private final Map<String, Counter> nyeForsøk = new ConcurrentHashMap<>();
+
+    public AvhengighetMetrikker(String avhengighet) {
+        this(avhengighet, REGISTRY);
+    }
+
+    AvhengighetMetrikker(String avhengighet, MeterRegistry registry) {
+        this.avhengighet = avhengighet;
+        this.registry = registry;
+    }
+
+    /**
+     * Måler et synkront kall. Returnerer kallet en {@link HttpResponse} brukes statuskoden som utfall.
+     */
+    public <T> T mål(String operasjon, Supplier<T> kall) {
+        var start = System.nanoTime();
+        try {
+            var resultat = kall.get();
+            registrer(operasjon, start, resultat, null);
+            return resultat;
+        } catch (RuntimeException e) {
+            registrer(operasjon, start, null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Registrerer et kall som startet ved {@code startNanos}, for asynkrone kall der {@link #mål} ikke passer.
+     */
+    public void registrer(String operasjon, long startNanos, Object resultat, Throwable feil) {
+        timer(operasjon, utfall(resultat, feil)).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void nyttForsøk(String operasjon) {
+        nyeForsøk.computeIfAbsent(operasjon, o -> Counter.builder(NYTT_FORSØK)
+            .tag("avhengighet", avhengighet)
+            .tag("operasjon", o)
+            .register(registry)).increment();
+    }
+
+    private Timer timer(String operasjon, String utfall) {
+        return timere.computeIfAbsent(operasjon + "|" + utfall, k -> Timer.builder(TIMER)
+            .tag("avhengighet", avhengighet)
+            .tag("operasjon", operasjon)
+            .tag("utfall", utfall)
+            .publishPercentileHistogram()
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofSeconds(30))
+            .register(registry));
+    }
+
+    static String utfall(Object resultat, Throwable feil) {
+        if (feil != null) {
+            return erTidsavbrudd(feil) ? TIDSAVBRUDD : FEIL;
+        }
+        if (resultat instanceof HttpResponse<?> response) {
+            return response.statusCode() / 100 + "xx";
+        }
+        return OK;
+    }
+
+    private static boolean erTidsavbrudd(Throwable feil) {
+        for (var årsak = feil; årsak != null; årsak = årsak.getCause()) {
+            if (årsak instanceof HttpTimeoutException || årsak instanceof SocketTimeoutException || årsak instanceof TimeoutException) {
+                return true;
+            }
+            if (årsak.getCause() == årsak) {
+                break;
+            }
+        }
+        return false;
+    }
+}
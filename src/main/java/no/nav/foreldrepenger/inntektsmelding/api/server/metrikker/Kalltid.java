@@ -0,0 +1,105 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.metrikker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Hvor lang tid ett kall mot /v1 bruker i hvert steg. Kalltiden settes på request-tråden av {@link KalltidFilter}, og
+ * stegene måles med {@link #mål(Steg, Supplier)} der arbeidet gjøres. Tiden regnes eksklusivt: starter et steg inne i
+ * et annet, for eksempel mapping av hvert element mens svaret fra backend leses, står det ytre steget stille så lenge.
+ * Steg som kjøres parallelt på flere tråder summeres, og kan derfor til sammen bli lengre enn hele kallet.
+ */
+public final class Kalltid {
+
+    public enum Steg {
+        AUTENTISERING("auth"),
+        TILGANG("pdp"),
+        BACKEND("backend"),
+        VALIDERING("validering"),
+        MAPPING("mapping"),
+        SERIALISERING("serialisering");
+
+        private final String navn;
+
+        Steg(String navn) {
+            this.navn = navn;
+        }
+
+        public String navn() {
+            return navn;
+        }
+    }
+
+    private record Pågående(Steg steg, long start) {
+    }
+
+    private static final ThreadLocal<Kalltid> AKTIV = new ThreadLocal<>();
+    private static final ThreadLocal<Pågående> PÅGÅENDE = new ThreadLocal<>();
+
+    private final long start = System.nanoTime();
+    private final AtomicLongArray nanos = new AtomicLongArray(Steg.values().length);
+
+    Kalltid() {
+    }
+
+    /**
+     * @return kalltiden til kallet som behandles på denne tråden, eller null utenfor et kall mot /v1
+     */
+    public static Kalltid aktiv() {
+        return AKTIV.get();
+    }
+
+    /**
+     * Knytter tråden til et kall, slik at steg som kjøres på andre tråder enn request-tråden telles med.
+     */
+    public static void sett(Kalltid kalltid) {
+        if (kalltid == null) {
+            AKTIV.remove();
+        } else {
+            AKTIV.set(kalltid);
+        }
+    }
+
+    public static <T> T mål(Steg steg, Supplier<T> arbeid) {
+        var kalltid = AKTIV.get();
+        if (kalltid == null) {
+            return arbeid.get();
+        }
+        var ytre = PÅGÅENDE.get();
+        var start = System.nanoTime();
+        if (ytre != null) {
+            kalltid.leggTil(ytre.steg(), start - ytre.start());
+        }
+        PÅGÅENDE.set(new Pågående(steg, start));
+        try {
+            return arbeid.get();
+        } finally {
+            var slutt = System.nanoTime();
+            kalltid.leggTil(steg, slutt - PÅGÅENDE.get().start());
+            if (ytre == null) {
+                PÅGÅENDE.remove();
+            } else {
+                PÅGÅENDE.set(new Pågående(ytre.steg(), slutt));
+            }
+        }
+    }
+
+    public static void mål(Steg steg, Runnable arbeid) {
+        mål(steg, () -> {
+            arbeid.run();
+            return null;
+        });
+    }
+
+    void leggTil(Steg steg, long varighet) {
+        nanos.addAndGet(steg.ordinal(), varighet);
+    }
+
+    long nanos(Steg steg) {
+        return nanos.get(steg.ordinal());
+    }
+
+    long totalNanos() {
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,167 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.metrikker;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import no.nav.foreldrepenger.inntektsmelding.api.server.begrensning.Endepunktklasse;
+import no.nav.foreldrepenger.konfig.Environment;
+
+/**
+ * Måler hvor lang tid hvert kall mot /v1 bruker totalt og i hvert {@link Kalltid.Steg}, per ressursmetode. Totaltiden
+ * publiseres i timeren api.kall og stegene i api.kall.steg. Utenfor prod settes også Server-Timing i svaret, slik at
+ * fordelingen kan leses rett fra nettleseren eller curl. Da må svaret serialiseres til minnet før det sendes, siden
+ * headeren ikke kan settes etter at body er begynt skrevet.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 200)
+public class KalltidFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    static final String SERVER_TIMING = "Server-Timing";
+    static final String TIMER = "api.kall";
+    static final String TIMER_STEG = "api.kall.steg";
+
+    private static final String KALLTID = KalltidFilter.class.getName() + ".kalltid";
+    private static final String METODE = KalltidFilter.class.getName() + ".metode";
+    private static final Environment ENV = Environment.current();
+    private static final boolean SERVER_TIMING_AKTIV = ENV.getProperty("api.server.timing.aktiv", Boolean.class, !ENV.isProd());
+
+    private final boolean serverTiming;
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timere = new ConcurrentHashMap<>();
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    public KalltidFilter() {
+        this(SERVER_TIMING_AKTIV, REGISTRY);
+    }
+
+    KalltidFilter(boolean serverTiming, MeterRegistry registry) {
+        this.serverTiming = serverTiming;
+        this.registry = registry;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext req) {
+        if (Endepunktklasse.fraSti(req.getUriInfo().getPath()) == null || resourceInfo == null || resourceInfo.getResourceMethod() == null) {
+            return;
+        }
+        var kalltid = new Kalltid();
+        Kalltid.sett(kalltid);
+        req.setProperty(KALLTID, kalltid);
+        req.setProperty(METODE, resourceInfo.getResourceClass().getSimpleName() + "." + resourceInfo.getResourceMethod().getName());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext req, ContainerResponseContext res) {
+        // Med body avsluttes målingen etter serialiseringen, i aroundWriteTo
+        if (!res.hasEntity() && req.getProperty(KALLTID) instanceof Kalltid kalltid && req.getProperty(METODE) instanceof String metode) {
+            req.removeProperty(KALLTID);
+            avslutt(kalltid, metode, res.getHeaders());
+        }
+        Kalltid.sett(null);
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext ctx) throws IOException {
+        if (!(ctx.getProperty(KALLTID) instanceof Kalltid kalltid) || !(ctx.getProperty(METODE) instanceof String metode)) {
+            ctx.proceed();
+            return;
+        }
+        ctx.removeProperty(KALLTID);
+        if (!serverTiming) {
+            try {
+                serialiser(kalltid, ctx);
+            } finally {
+                avslutt(kalltid, metode, null);
+            }
+            return;
+        }
+        var ut = ctx.getOutputStream();
+        var buffer = new ByteArrayOutputStream();
+        ctx.setOutputStream(buffer);
+        try {
+            serialiser(kalltid, ctx);
+        } finally {
+            ctx.setOutputStream(ut);
+            avslutt(kalltid, metode, ctx.getHeaders());
+        }
+        buffer.writeTo(ut);
+    }
+
+    private static void serialiser(Kalltid kalltid, WriterInterceptorContext ctx) throws IOException {
+        var start = System.nanoTime();
+        try {
+            ctx.proceed();
+        } finally {
+            kalltid.leggTil(Kalltid.Steg.SERIALISERING, System.nanoTime() - start);
+        }
+    }
+
+    private void avslutt(Kalltid kalltid, String metode, MultivaluedMap<String, Object> headere) {
+        var total = kalltid.totalNanos();
+        timer(TIMER, metode, null).record(total, TimeUnit.NANOSECONDS);
+        for (var steg : Kalltid.Steg.values()) {
+            var nanos = kalltid.nanos(steg);
+            if (nanos > 0) {
+                timer(TIMER_STEG, metode, steg).record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (serverTiming && headere != null) {
+            headere.putSingle(SERVER_TIMING, serverTiming(kalltid, total));
+        }
+    }
+
+    static String serverTiming(Kalltid kalltid, long totalNanos) {
+        var verdi = new StringBuilder();
+        for (var steg : Kalltid.Steg.values()) {
+            var nanos = kalltid.nanos(steg);
+            if (nanos > 0) {
+                verdi.append(steg.navn()).append(";dur=").append(millis(nanos)).append(", ");
+            }
+        }
+        return verdi.append("total;dur=").append(millis(totalNanos)).toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+
+    private Timer timer(String navn, String metode, Kalltid.Steg steg) {
+        var stegnavn = steg == null ? "" : steg.navn();
+        return timere.computeIfAbsent(navn + "|" + metode + "|" + stegnavn, k -> {
+            var builder = Timer.builder(navn)
+                .tag("metode", metode)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30));
+            if (steg != null) {
+                builder.tag("steg", stegnavn);
+            }
+            return builder.register(registry);
+        });
+    }
+}
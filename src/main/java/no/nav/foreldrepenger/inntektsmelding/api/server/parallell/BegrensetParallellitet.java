@@ -0,0 +1,82 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.parallell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import org.slf4j.MDC;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.Kalltid;
+import no.nav.vedtak.sikkerhet.kontekst.KontekstHolder;
+
+/**
+ * Kjører en oppgave per element på virtuelle tråder, men aldri flere enn maksSamtidige om gangen. Token-kontekst, MDC og
+ * {@link Kalltid} fra kallende tråd følger med inn i oppgavene, slik at tilgangssjekk, logging og måling virker som på
+ * request-tråden.
+ */
+public final class BegrensetParallellitet {
+
+    private BegrensetParallellitet() {
+    }
+
+    /**
+     * @return resultatene i samme rekkefølge som elementene. Feiler en oppgave kastes feilen etter at alle er ferdige.
+     */
+    public static <T, R> List<R> kjør(List<T> elementer, int maksSamtidige, Function<T, R> oppgave) {
+        if (elementer.isEmpty()) {
+            return List.of();
+        }
+        var kontekst = KontekstHolder.harKontekst() ? KontekstHolder.getKontekst() : null;
+        var mdc = MDC.getCopyOfContextMap();
+        var kalltid = Kalltid.aktiv();
+        var plasser = new Semaphore(maksSamtidige);
+        var fremtider = new ArrayList<Future<R>>(elementer.size());
+        try (var executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("parallell-", 0).factory())) {
+            for (var element : elementer) {
+                plasser.acquireUninterruptibly();
+                fremtider.add(executor.submit(() -> {
+                    if (kontekst != null) {
+                        KontekstHolder.setKontekst(kontekst);
+                    }
+                    if (mdc != null) {
+                        MDC.setContextMap(mdc);
+                    }
+                    Kalltid.sett(kalltid);
+                    try {
+                        return oppgave.apply(element);
+                    } finally {
+                        if (kontekst != null) {
+                            KontekstHolder.fjernKontekst();
+                        }
+                        MDC.clear();
+                        Kalltid.sett(null);
+                        plasser.release();
+                    }
+                }));
+            }
+        }
+        var resultater = new ArrayList<R>(fremtider.size());
+        for (var fremtid : fremtider) {
+            resultater.add(hentResultat(fremtid));
+        }
+        return resultater;
+    }
+
+    private static <R> R hentResultat(Future<R> fremtid) {
+        try {
+            return fremtid.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.resiliens;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.MDC;
+
+import io.micrometer.core.instrument.Counter;
+import no.nav.foreldrepenger.konfig.Environment;
+import no.nav.vedtak.sikkerhet.kontekst.Kontekst;
+import no.nav.vedtak.sikkerhet.kontekst.KontekstHolder;
+
+/**
+ * Garderte kall for idempotente oppslag: svarer ikke det første kallet innen en valgt persentil av de siste svartidene,
+ * sendes det samme kallet en gang til. Det første svaret brukes og det andre kallet avbrytes. Ekstra kall trekkes fra et
+ * budsjett som fylles opp med en fast andel av alle kall, slik at gardering aldri øker lasten mot avhengigheten mer enn
+ * denne andelen. Svartidene som persentilen regnes fra er tiden til hvert vellykket forsøk svarte. For et første forsøk
+ * som avbrytes fordi det ekstra kallet vant, brukes tiden fram til avbruddet som en nedre grense.
+ */
+public class Gardering {
+
+    private static final int VINDU = 500;
+    private static final int MINIMUM_MÅLINGER = 20;
+    private static final int BEREGN_FORSINKELSE_HVERT = 10;
+    private static final long MAKS_SALDO = 10_000;
+    private static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("gardering-", 0).factory());
+
+    /**
+     * @param aktiv om kall skal garderes. Er det av kjøres kallet rett på tråden til den som kaller.
+     * @param persentil persentilen av de siste svartidene som må passeres før et ekstra kall sendes
+     * @param budsjettProsent hvor mange ekstra kall som tillates, i prosent av alle kall
+     * @param minimumForsinkelse korteste ventetid før et ekstra kall sendes
+     */
+    public record Innstillinger(boolean aktiv, int persentil, int budsjettProsent, Duration minimumForsinkelse) {
+
+        public static Innstillinger fraKonfig(String prefiks) {
+            var env = Environment.current();
+            return new Innstillinger(env.getProperty(prefiks + ".aktiv", Boolean.class, false),
+                env.getProperty(prefiks + ".persentil", Integer.class, 95),
+                env.getProperty(prefiks + ".budsjett.prosent", Integer.class, 5),
+                Duration.ofMillis(env.getProperty(prefiks + ".minimum.millis", Integer.class, 20)));
+        }
+    }
+
+    private final Innstillinger innstillinger;
+    private final long[] svartider = new long[VINDU];
+    private final AtomicLong saldo = new AtomicLong();
+    private final Counter garderte;
+    private final Counter vunnet;
+    private final Counter utenBudsjett;
+    private int neste;
+    private int antall;
+    private long registrert;
+    private volatile long forsinkelseNanos = -1;
+
+    public Gardering(String navn, Innstillinger innstillinger) {
+        this.innstillinger = innstillinger;
+        this.garderte = Counter.builder("gardering.ekstra.kall").tag("navn", navn).register(REGISTRY);
+        this.vunnet = Counter.builder("gardering.ekstra.kall.vunnet").tag("navn", navn).register(REGISTRY);
+        this.utenBudsjett = Counter.builder("gardering.uten.budsjett").tag("navn", navn).register(REGISTRY);
+    }
+
+    public <T> T kjør(Supplier<T> kall) {
+        if (!innstillinger.aktiv()) {
+            return kall.get();
+        }
+        fyllBudsjett();
+        var forsinkelse = forsinkelseNanos;
+        if (forsinkelse < 0) {
+            // For få målinger til å vite hva som er tregt ennå
+            return målt(kall).get();
+        }
+
+        var kontekst = KontekstHolder.harKontekst() ? KontekstHolder.getKontekst() : null;
+        var mdc = MDC.getCopyOfContextMap();
+        var fullført = new ExecutorCompletionService<T>(EXECUTOR);
+        var forsøk = new ArrayList<Future<T>>(2);
+        var startet = new ArrayList<Long>(2);
+        try {
+            startet.add(System.nanoTime());
+            var første = fullført.submit(medKontekst(kontekst, mdc, kall));
+            forsøk.add(første);
+            var ferdig = fullført.poll(forsinkelse, TimeUnit.NANOSECONDS);
+            if (ferdig == null) {
+                if (taFraBudsjett()) {
+                    garderte.increment();
+                    startet.add(System.nanoTime());
+                    forsøk.add(fullført.submit(medKontekst(kontekst, mdc, kall)));
+                } else {
+                    utenBudsjett.increment();
+                }
+                ferdig = fullført.take();
+            }
+            var gjenstår = forsøk.size() - 1;
+            while (true) {
+                try {
+                    var resultat = ferdig.get();
+                    var slutt = System.nanoTime();
+                    registrerSvartid(slutt - startet.get(forsøk.indexOf(ferdig)));
+                    if (ferdig != første) {
+                        vunnet.increment();
+                        if (!første.isDone()) {
+                            // Det første kallet avbrytes, men har minst brukt så lang tid. Uten denne målingen bygger
+                            // persentilen bare på kallene som vant, og forsinkelsen kryper nedover.
+                            registrerSvartid(slutt - startet.getFirst());
+                        }
+                    }
+                    return resultat;
+                } catch (ExecutionException e) {
+                    if (gjenstår-- == 0) {
+                        throw kastVidere(e.getCause());
+                    }
+                    ferdig = fullført.take();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            // Avbryter kallet som tapte. Allerede fullførte kall påvirkes ikke.
+            forsøk.forEach(f -> f.cancel(true));
+        }
+    }
+
+    Duration forsinkelse() {
+        var forsinkelse = forsinkelseNanos;
+        return forsinkelse < 0 ? null : Duration.ofNanos(forsinkelse);
+    }
+
+    private <T> Supplier<T> målt(Supplier<T> kall) {
+        return () -> {
+            var start = System.nanoTime();
+            var resultat = kall.get();
+            registrerSvartid(System.nanoTime() - start);
+            return resultat;
+        };
+    }
+
+    private synchronized void registrerSvartid(long nanos) {
+        svartider[neste] = nanos;
+        neste = (neste + 1) % VINDU;
+        antall = Math.min(antall + 1, VINDU);
+        registrert++;
+        if (antall >= MINIMUM_MÅLINGER && (forsinkelseNanos < 0 || registrert % BEREGN_FORSINKELSE_HVERT == 0)) {
+            var sortert = Arrays.copyOf(svartider, antall);
+            Arrays.sort(sortert);
+            var indeks = Math.min(antall - 1, (int) Math.ceil(innstillinger.persentil() / 100.0 * antall) - 1);
+            forsinkelseNanos = Math.max(sortert[Math.max(indeks, 0)], innstillinger.minimumForsinkelse().toNanos());
+        }
+    }
+
+    /**
+     * Saldoen føres i tusendeler av et kall. Hvert kall gir budsjettProsent hundredeler av et ekstra kall.
+     */
+    private void fyllBudsjett() {
+        var innskudd = innstillinger.budsjettProsent() * 10L;
+        saldo.accumulateAndGet(innskudd, (gammel, inn) -> Math.min(gammel + inn, MAKS_SALDO));
+    }
+
+    private boolean taFraBudsjett() {
+        while (true) {
+            var gammel = saldo.get();
+            if (gammel < 1000) {
+                return false;
+            }
+            if (saldo.compareAndSet(gammel, gammel - 1000)) {
+                return true;
+            }
+        }
+    }
+
+    private static <T> Callable<T> medKontekst(Kontekst kontekst, Map<String, String> mdc, Supplier<T> kall) {
+        return () -> {
+            if (kontekst != null) {
+                KontekstHolder.setKontekst(kontekst);
+            }
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                return kall.get();
+            } finally {
+                if (kontekst != null) {
+                    KontekstHolder.fjernKontekst();
+                }
+                MDC.clear();
+            }
+        };
+    }
+
+    private static RuntimeException kastVidere(Throwable feil) {
+        if (feil instanceof RuntimeException re) {
+            return re;
+        }
+        if (feil instanceof Error e) {
+            throw e;
+        }
+        return new IllegalStateException(feil);
+    }
+}
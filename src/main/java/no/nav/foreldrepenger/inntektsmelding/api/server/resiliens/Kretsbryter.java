@@ -0,0 +1,214 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.resiliens;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import jakarta.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+import no.nav.foreldrepenger.konfig.Environment;
+
+/**
+ * Kretsbryter over de siste kallene mot en avhengighet. Blir andelen feil for høy åpnes bryteren, og kall avvises med 503
+ * uten å bli sendt. Etter en stund slippes noen prøvekall gjennom. Lykkes alle lukkes bryteren, feiler ett åpnes den igjen.
+ * Tilstanden publiseres i Prometheus som kretsbryter.tilstand, der 0 er lukket, 1 er åpen og 2 er halvåpen.
+ * <p>
+ * Bare feil som sier noe om helsen til avhengigheten telles, se {@link #erAvhengighetsfeil(Throwable)}. Kall avhengigheten
+ * avviste med 4xx, eller som feilet hos oss, telles som vellykkede, slik at én konsument med ugyldige kall ikke kan åpne
+ * bryteren for alle.
+ */
+public class Kretsbryter {
+    private static final Logger LOG = LoggerFactory.getLogger(Kretsbryter.class);
+
+    public enum Tilstand {
+        LUKKET,
+        ÅPEN,
+        HALVÅPEN
+    }
+
+    /**
+     * @param vindu antall siste kall feilandelen regnes over
+     * @param minimumKall antall kall som må være registrert før bryteren kan åpnes
+     * @param feilandelProsent andel feilede kall i vinduet som åpner bryteren
+     * @param åpenVarighet hvor lenge bryteren er åpen før prøvekall slippes gjennom
+     * @param prøvekall antall prøvekall som må lykkes før bryteren lukkes
+     */
+    public record Innstillinger(int vindu, int minimumKall, int feilandelProsent, Duration åpenVarighet, int prøvekall) {
+
+        public static Innstillinger fraKonfig(String prefiks) {
+            var env = Environment.current();
+            return new Innstillinger(env.getProperty(prefiks + ".vindu", Integer.class, 20),
+                env.getProperty(prefiks + ".minimum.kall", Integer.class, 10),
+                env.getProperty(prefiks + ".feilandel.prosent", Integer.class, 50),
+                Duration.ofSeconds(env.getProperty(prefiks + ".aapen.sekunder", Integer.class, 30)),
+                env.getProperty(prefiks + ".provekall", Integer.class, 3));
+        }
+    }
+
+    private final String navn;
+    private final Innstillinger innstillinger;
+    private final Clock klokke;
+    private final boolean[] feilet;
+    private final Counter avvist;
+    private int neste;
+    private int antall;
+    private int antallFeil;
+    private Tilstand tilstand = Tilstand.LUKKET;
+    private Instant åpnet;
+    private int prøverStartet;
+    private int prøverLyktes;
+
+    public Kretsbryter(String navn, Innstillinger innstillinger) {
+        this(navn, innstillinger, Clock.systemUTC());
+    }
+
+    Kretsbryter(String navn, Innstillinger innstillinger, Clock klokke) {
+        this.navn = navn;
+        this.innstillinger = innstillinger;
+        this.klokke = klokke;
+        this.feilet = new boolean[innstillinger.vindu()];
+        this.avvist = Counter.builder("kretsbryter.avvist").tag("navn", navn).register(REGISTRY);
+        Gauge.builder("kretsbryter.tilstand", this, k -> k.tilstand().ordinal()).tag("navn", navn).register(REGISTRY);
+    }
+
+    /**
+     * Kjører kallet dersom bryteren tillater det. Kall som kaster en avhengighetsfeil telles som feilet.
+     */
+    public <T> T kjør(Supplier<T> kall) {
+        var prøvekall = slippInn();
+        try {
+            var resultat = kall.get();
+            registrer(prøvekall, true);
+            return resultat;
+        } catch (Throwable feil) {
+            registrer(prøvekall, !erAvhengighetsfeil(feil));
+            throw feil;
+        }
+    }
+
+    /**
+     * Som {@link #kjør(Supplier)} for asynkrone kall. Avvisning gir en feilet fremtid, og utfallet registreres når kallet er ferdig.
+     */
+    public <T> CompletableFuture<T> kjørAsync(Supplier<CompletableFuture<T>> kall) {
+        boolean prøvekall;
+        try {
+            prøvekall = slippInn();
+        } catch (InntektsmeldingAPIException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            return kall.get().whenComplete((resultat, feil) -> registrer(prøvekall, feil == null || !erAvhengighetsfeil(feil)));
+        } catch (RuntimeException e) {
+            registrer(prøvekall, !erAvhengighetsfeil(e));
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return om feilen, eller en av årsakene til den, er en 5xx-respons, et tidsavbrudd eller en I/O-feil mot avhengigheten
+     */
+    public static boolean erAvhengighetsfeil(Throwable feil) {
+        for (var årsak = feil; årsak != null; årsak = årsak.getCause() == årsak ? null : årsak.getCause()) {
+            if (årsak instanceof UventetStatusException uventet) {
+                return uventet.getStatuskode() >= 500;
+            }
+            if (årsak instanceof IOException || årsak instanceof UncheckedIOException || årsak instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized Tilstand tilstand() {
+        return tilstand;
+    }
+
+    /**
+     * @return om kallet er et prøvekall. Kaster dersom kallet ikke slippes gjennom.
+     */
+    private synchronized boolean slippInn() {
+        if (tilstand == Tilstand.ÅPEN && !klokke.instant().isBefore(åpnet.plus(innstillinger.åpenVarighet()))) {
+            skiftTil(Tilstand.HALVÅPEN);
+            prøverStartet = 0;
+            prøverLyktes = 0;
+        }
+        return switch (tilstand) {
+            case LUKKET -> false;
+            case HALVÅPEN -> {
+                if (prøverStartet < innstillinger.prøvekall()) {
+                    prøverStartet++;
+                    yield true;
+                }
+                throw avvis();
+            }
+            case ÅPEN -> throw avvis();
+        };
+    }
+
+    private synchronized void registrer(boolean prøvekall, boolean lyktes) {
+        if (prøvekall) {
+            if (tilstand != Tilstand.HALVÅPEN) {
+                return;
+            }
+            if (!lyktes) {
+                åpne();
+            } else if (++prøverLyktes >= innstillinger.prøvekall()) {
+                nullstillVindu();
+                skiftTil(Tilstand.LUKKET);
+            }
+            return;
+        }
+        if (tilstand != Tilstand.LUKKET) {
+            return;
+        }
+        if (antall == feilet.length) {
+            antallFeil -= feilet[neste] ? 1 : 0;
+        } else {
+            antall++;
+        }
+        feilet[neste] = !lyktes;
+        antallFeil += lyktes ? 0 : 1;
+        neste = (neste + 1) % feilet.length;
+        if (antall >= innstillinger.minimumKall() && antallFeil * 100 >= innstillinger.feilandelProsent() * antall) {
+            LOG.warn("Kretsbryter {} åpnes etter {} feil av {} kall", navn, antallFeil, antall);
+            åpne();
+        }
+    }
+
+    private void åpne() {
+        åpnet = klokke.instant();
+        skiftTil(Tilstand.ÅPEN);
+    }
+
+    private void nullstillVindu() {
+        antall = 0;
+        antallFeil = 0;
+        neste = 0;
+    }
+
+    private void skiftTil(Tilstand ny) {
+        if (tilstand != ny) {
+            LOG.info("Kretsbryter {} går fra {} til {}", navn, tilstand, ny);
+            tilstand = ny;
+        }
+    }
+
+    private InntektsmeldingAPIException avvis() {
+        avvist.increment();
+        return new InntektsmeldingAPIException(EksponertFeilmelding.MIDLERTIDIG_UTILGJENGELIG, Response.Status.SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,53 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.resiliens;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import jakarta.ws.rs.core.Response;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+
+/**
+ * Begrenser antall samtidige kall av en type mot en avhengighet, slik at én type trafikk ikke kan bruke opp all kapasitet
+ * mot den. Kall som ikke får plass innen ventetiden avvises med 503.
+ */
+public class Skott {
+    private final Semaphore plasser;
+    private final Duration maksVentetid;
+    private final Counter avvist;
+
+    public Skott(String navn, int maksSamtidige, Duration maksVentetid) {
+        this.plasser = new Semaphore(maksSamtidige);
+        this.maksVentetid = maksVentetid;
+        this.avvist = Counter.builder("skott.avvist").tag("navn", navn).register(REGISTRY);
+        Gauge.builder("skott.ledige", plasser, Semaphore::availablePermits).tag("navn", navn).register(REGISTRY);
+    }
+
+    public <T> T kjør(Supplier<T> kall) {
+        if (!fåPlass()) {
+            avvist.increment();
+            throw new InntektsmeldingAPIException(EksponertFeilmelding.MIDLERTIDIG_UTILGJENGELIG, Response.Status.SERVICE_UNAVAILABLE);
+        }
+        try {
+            return kall.get();
+        } finally {
+            plasser.release();
+        }
+    }
+
+    private boolean fåPlass() {
+        try {
+            return plasser.tryAcquire(maksVentetid.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
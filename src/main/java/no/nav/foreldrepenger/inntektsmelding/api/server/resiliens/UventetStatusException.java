@@ -0,0 +1,18 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.resiliens;
+
+/**
+ * En avhengighet svarte med en statuskode klienten ikke kan bruke. Statuskoden tas vare på, slik at {@link Kretsbryter}
+ * kan skille feil hos avhengigheten (5xx) fra kall den avviste (4xx).
+ */
+public class UventetStatusException extends RuntimeException {
+    private final int statuskode;
+
+    public UventetStatusException(int statuskode, String avhengighet) {
+        super("Uventet respons " + statuskode + " fra " + avhengighet);
+        this.statuskode = statuskode;
+    }
+
+    public int getStatuskode() {
+        return statuskode;
+    }
+}
@@ -4,6 +4,7 @@ import java.time.LocalDate;
 import java.util.UUID;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 
@@ -17,4 +18,6 @@ public record ForespørselFilter(@NotNull @Pattern(regexp = "^\\d{9}$") String o
                                 @Valid YtelseType ytelseType,
                                 LocalDate fom,
                                 LocalDate tom,
-                                Long fraLoepenr) {}
+                                Long fraLoepenr,
+                                @Min(1) Integer limit,
+                                @Pattern(regexp = "^[A-Za-z0-9_-]{1,64}$") String cursor) {}
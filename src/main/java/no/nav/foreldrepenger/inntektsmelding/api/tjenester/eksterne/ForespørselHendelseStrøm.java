@@ -0,0 +1,231 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import no.nav.foreldrepenger.inntektsmelding.api.integrasjoner.ForespørselStatusOvervåker;
+import no.nav.foreldrepenger.inntektsmelding.api.server.auth.Tilgang;
+import no.nav.foreldrepenger.inntektsmelding.api.server.auth.TokenKontekst;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.KodeverkMapper;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
+import no.nav.foreldrepenger.konfig.Environment;
+import no.nav.vedtak.sikkerhet.kontekst.Kontekst;
+import no.nav.vedtak.sikkerhet.kontekst.KontekstHolder;
+
+/**
+ * Holder styr på åpne SSE-tilkoblinger for statusendringer på forespørsler. Ingen tråd holdes per tilkobling mens den er
+ * ledig, hendelser sendes på virtuelle tråder. Hver tilkobling har en begrenset kø, og en konsument som ikke klarer å
+ * lese unna blir koblet fra og må koble til på nytt. Ledige tilkoblinger får jevnlig en kommentar som hjerteslag.
+ * <p>
+ * Tilgangen sjekkes på nytt med jevne mellomrom mens strømmen er åpen, med token-konteksten fra da strømmen ble åpnet,
+ * og strømmen lukkes når tokenet utløper eller systemet har mistet tilgangen til organisasjonen.
+ */
+@ApplicationScoped
+public class ForespørselHendelseStrøm {
+    private static final Logger LOG = LoggerFactory.getLogger(ForespørselHendelseStrøm.class);
+    private static final Environment ENV = Environment.current();
+    static final String STATUS_HENDELSE = "status";
+
+    private final int maksKø = ENV.getProperty("api.hendelser.maks.koe", Integer.class, 100);
+    private final int hjerteslagSekunder = ENV.getProperty("api.hendelser.hjerteslag.sekunder", Integer.class, 15);
+    private final int tilgangskontrollSekunder = ENV.getProperty("api.hendelser.tilgangskontroll.sekunder", Integer.class, 120);
+    private final Set<Abonnent> abonnenter = ConcurrentHashMap.newKeySet();
+    private final ExecutorService sender = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("forespoersel-sse-", 0).factory());
+    private ScheduledExecutorService hjerteslag;
+    private ForespørselStatusOvervåker overvåker;
+    private Tilgang tilgang;
+
+    ForespørselHendelseStrøm() {
+        // for CDI proxy
+    }
+
+    @Inject
+    public ForespørselHendelseStrøm(ForespørselStatusOvervåker overvåker, Tilgang tilgang) {
+        this.overvåker = overvåker;
+        this.tilgang = tilgang;
+    }
+
+    @PostConstruct
+    void startHjerteslag() {
+        hjerteslag = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("forespoersel-sse-hjerteslag").daemon().factory());
+        hjerteslag.scheduleWithFixedDelay(() -> abonnenter.forEach(Abonnent::hjerteslag), hjerteslagSekunder, hjerteslagSekunder, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void stopp() {
+        hjerteslag.shutdownNow();
+        abonnenter.forEach(Abonnent::lukk);
+    }
+
+    /**
+     * Må kalles fra request-tråden etter at tilgangen er sjekket, siden token-konteksten leses herfra.
+     */
+    public void åpne(Organisasjonsnummer orgnr, SseEventSink sink, Sse sse) {
+        var kontekst = KontekstHolder.getKontekst();
+        var abonnent = new Abonnent(sink, sse);
+        abonnenter.add(abonnent);
+        abonnent.settAvmelding(overvåker.abonner(orgnr.orgnr(), abonnent::motta));
+        if (kontekst instanceof TokenKontekst tk && tk.getUtløper() != null) {
+            var gjenstående = Duration.between(Instant.now(), tk.getUtløper()).toMillis();
+            abonnent.planlegg(hjerteslag.schedule(() -> {
+                LOG.info("Tokenet har utløpt, lukker strøm av forespørselhendelser");
+                abonnent.lukk();
+            }, Math.max(gjenstående, 0), TimeUnit.MILLISECONDS));
+        }
+        abonnent.planlegg(hjerteslag.scheduleWithFixedDelay(() -> sender.execute(() -> sjekkTilgang(abonnent, orgnr, kontekst)),
+            tilgangskontrollSekunder, tilgangskontrollSekunder, TimeUnit.SECONDS));
+        LOG.info("Åpnet strøm av forespørselhendelser, {} åpne strømmer", abonnenter.size());
+    }
+
+    private void sjekkTilgang(Abonnent abonnent, Organisasjonsnummer orgnr, Kontekst kontekst) {
+        KontekstHolder.setKontekst(kontekst);
+        try {
+            tilgang.sjekkAtSystemHarTilgangTilOrganisasjon(orgnr);
+        } catch (RuntimeException e) {
+            LOG.info("Tilgangen kunne ikke bekreftes på nytt, lukker strøm av forespørselhendelser", e);
+            abonnent.lukk();
+        } finally {
+            KontekstHolder.fjernKontekst();
+        }
+    }
+
+    int antallÅpne() {
+        return abonnenter.size();
+    }
+
+    private final class Abonnent {
+        private final SseEventSink sink;
+        private final Sse sse;
+        private final Deque<OutboundSseEvent> kø = new ArrayDeque<>();
+        private boolean senderNå;
+        private boolean lukket;
+        private Runnable avmelding;
+        private final List<ScheduledFuture<?>> planlagte = new ArrayList<>();
+
+        private Abonnent(SseEventSink sink, Sse sse) {
+            this.sink = sink;
+            this.sse = sse;
+        }
+
+        void settAvmelding(Runnable avmelding) {
+            synchronized (this) {
+                if (!lukket) {
+                    this.avmelding = avmelding;
+                    return;
+                }
+            }
+            avmelding.run();
+        }
+
+        void planlegg(ScheduledFuture<?> planlagt) {
+            synchronized (this) {
+                if (!lukket) {
+                    planlagte.add(planlagt);
+                    return;
+                }
+            }
+            planlagt.cancel(false);
+        }
+
+        void motta(List<ForespørselStatusOvervåker.StatusEndring> endringer) {
+            synchronized (this) {
+                if (kø.size() + endringer.size() > maksKø) {
+                    LOG.info("Konsumenten leser ikke unna forespørselhendelser, kobler fra");
+                } else {
+                    endringer.forEach(e -> kø.add(tilHendelse(e)));
+                    sendNeste();
+                    return;
+                }
+            }
+            lukk();
+        }
+
+        void hjerteslag() {
+            if (sink.isClosed()) {
+                lukk();
+                return;
+            }
+            synchronized (this) {
+                if (!senderNå && kø.isEmpty()) {
+                    kø.add(sse.newEventBuilder().comment("hjerteslag").build());
+                    sendNeste();
+                }
+            }
+        }
+
+        private synchronized void sendNeste() {
+            if (senderNå || lukket || kø.isEmpty()) {
+                return;
+            }
+            senderNå = true;
+            var hendelse = kø.poll();
+            sender.execute(() -> sink.send(hendelse).whenComplete((ignorert, feil) -> {
+                synchronized (this) {
+                    senderNå = false;
+                }
+                if (feil != null) {
+                    LOG.debug("Sending av forespørselhendelse feilet, kobler fra", feil);
+                    lukk();
+                } else {
+                    sendNeste();
+                }
+            }));
+        }
+
+        private OutboundSseEvent tilHendelse(ForespørselStatusOvervåker.StatusEndring endring) {
+            return sse.newEventBuilder()
+                .name(STATUS_HENDELSE)
+                .id(String.valueOf(endring.loepenr()))
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(ForespørselStatusHendelseDto.class,
+                    new ForespørselStatusHendelseDto(endring.forespørselUuid(), endring.loepenr(), KodeverkMapper.mapTilDto(endring.status())))
+                .build();
+        }
+
+        void lukk() {
+            Runnable avmeldingVedLukking;
+            synchronized (this) {
+                if (lukket) {
+                    return;
+                }
+                lukket = true;
+                kø.clear();
+                avmeldingVedLukking = avmelding;
+                planlagte.forEach(p -> p.cancel(false));
+                planlagte.clear();
+            }
+            abonnenter.remove(this);
+            if (avmeldingVedLukking != null) {
+                avmeldingVedLukking.run();
+            }
+            try {
+                sink.close();
+            } catch (RuntimeException e) {
+                LOG.debug("Klarte ikke lukke SSE-tilkobling", e);
+            }
+        }
+    }
+}
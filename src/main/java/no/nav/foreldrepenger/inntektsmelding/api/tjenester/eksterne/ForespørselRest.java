@@ -1,11 +1,16 @@
 package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
 
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import jakarta.ws.rs.Consumes;
@@ -14,14 +19,19 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -29,12 +39,15 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
 import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.ForespørselDto;
+import no.nav.foreldrepenger.inntektsmelding.api.integrasjoner.ForespørselFeed;
 import no.nav.foreldrepenger.inntektsmelding.api.integrasjoner.FpinntektsmeldingTjeneste;
 import no.nav.foreldrepenger.inntektsmelding.api.server.auth.Tilgang;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.Kalltid;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.KodeverkMapper;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
+import no.nav.foreldrepenger.konfig.Environment;
 
 @RequestScoped
 @Consumes(MediaType.APPLICATION_JSON)
@@ -44,9 +57,15 @@ public class ForespørselRest {
     public static final String BASE_PATH = "/forespoersel";
     private static final String HENT_FORESPØRSEL = "/{forespoerselId}";
     private static final String HENT_FLERE = "/forespoersler";
+    private static final String HENT_MED_ID = "/hent-flere";
+    private static final String HENT_NYE = "/nye";
+    private static final String HENDELSER = "/hendelser";
     private static final Logger LOG = LoggerFactory.getLogger(ForespørselRest.class);
     private static final Logger secureLogger = LoggerFactory.getLogger("secureLogger");
+    private static final int MAKS_SAMTIDIGE_OPPSLAG = Environment.current().getProperty("api.hent.flere.maks.samtidige", Integer.class, 16);
     private FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste;
+    private ForespørselFeed forespørselFeed;
+    private ForespørselHendelseStrøm hendelseStrøm;
     private Tilgang tilgang;
 
     ForespørselRest() {
@@ -54,8 +73,13 @@ public class ForespørselRest {
     }
 
     @Inject
-    public ForespørselRest(FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste, Tilgang tilgang) {
+    public ForespørselRest(FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste,
+                           ForespørselFeed forespørselFeed,
+                           ForespørselHendelseStrøm hendelseStrøm,
+                           Tilgang tilgang) {
         this.fpinntektsmeldingTjeneste = fpinntektsmeldingTjeneste;
+        this.forespørselFeed = forespørselFeed;
+        this.hendelseStrøm = hendelseStrøm;
         this.tilgang = tilgang;
     }
 
@@ -97,10 +121,13 @@ public class ForespørselRest {
     @Path(HENT_FLERE)
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
-    @Operation(summary = "Hent forespørsler", description = "Filtrer forespørsler om inntektsmelding på orgnr, soekerFnr, forespørselId, status, ytelseType og/eller dato forespørselen ble opprettet av NAV.")
+    @Operation(summary = "Hent forespørsler", description = "Filtrer forespørsler om inntektsmelding på orgnr, soekerFnr, forespørselId, status, ytelseType og/eller dato forespørselen ble opprettet av NAV. "
+        + "Svaret er sortert på løpenummer og delt i sider på limit, men aldri mer enn serverens maksimale sidestørrelse, også når limit ikke er oppgitt. "
+        + "Finnes det flere treff, returneres headeren Neste-Cursor som sendes med som cursor for å hente neste side.")
     @ApiResponse(responseCode = "200", description = "Liste med forespørsler som matcher filteret",
+        headers = @Header(name = Paginering.NESTE_CURSOR, description = "Cursor for neste side, mangler når dette er siste side"),
         content = @Content(array = @ArraySchema(schema = @Schema(implementation = ForespørselDto.class))))
-    @ApiResponse(responseCode = "400", description = "Ugyldig periode (fom er etter tom)",
+    @ApiResponse(responseCode = "400", description = "Ugyldig periode (fom er etter tom) eller ugyldig cursor",
         content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
     @ApiResponse(responseCode = "401", description = "Mangler gyldig autentisering",
         content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
@@ -133,11 +160,97 @@ public class ForespørselRest {
             filterRequest.ytelseType(),
             filterRequest.fom(),
             filterRequest.tom(),
-            filterRequest.fraLoepenr());
+            Paginering.fraLoepenr(filterRequest.fraLoepenr(), filterRequest.cursor()),
+            Paginering.antallÅLese(filterRequest.limit(), filterRequest.cursor()));
 
-        var dtoer = forespørsler.stream().map(this::mapTilDto).toList();
+        var side = Paginering.lagSide(forespørsler, filterRequest.limit(), filterRequest.cursor(), Forespørsel::loepenr);
+        var dtoer = side.elementer().stream().map(this::mapTilDto).toList();
         LOG.info("Returnerer {} forespørsler", dtoer.size());
-        return Response.ok(dtoer).build();
+        return Response.ok(dtoer).header(Paginering.NESTE_CURSOR, side.nesteCursor()).build();
+    }
+
+    @POST
+    @Path(HENT_MED_ID)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Hent forespørsler med id", description = "Henter inntil " + HentForespørslerRequest.MAKS_ANTALL + " forespørsler med kjent forespørselId i ett kall, "
+        + "for eksempel for å avstemme status. Id-er som ikke finnes, eller som gjelder en organisasjon systemet ikke har tilgang til, returneres i ikkeFunnet.")
+    @ApiResponse(responseCode = "200", description = "Forespørslene som ble funnet, i samme rekkefølge som id-ene",
+        content = @Content(schema = @Schema(implementation = HentForespørslerResponsDto.class)))
+    @ApiResponse(responseCode = "400", description = "Tom liste eller for mange id-er",
+        content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
+    @ApiResponse(responseCode = "401", description = "Mangler gyldig autentisering",
+        content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
+    @ApiResponse(responseCode = "500", description = "Intern serverfeil",
+        content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
+    public Response hentForespørslerMedId(@NotNull @Valid HentForespørslerRequest request) {
+        LOG.info("Innkomende kall på API for å hente {} forespørsler med id", request.forespoerselIder().size());
+        var forespørsler = fpinntektsmeldingTjeneste.hentForespørslerMedId(request.forespoerselIder(), MAKS_SAMTIDIGE_OPPSLAG);
+
+        // Tilgang sjekkes én gang per organisasjon, ikke per forespørsel
+        var organisasjoner = forespørsler.stream().map(f -> new Organisasjonsnummer(f.orgnummer().orgnr())).collect(Collectors.toSet());
+        var medTilgang = tilgang.organisasjonerSystemetHarTilgangTil(organisasjoner);
+        var tillatte = forespørsler.stream()
+            .filter(f -> medTilgang.contains(new Organisasjonsnummer(f.orgnummer().orgnr())))
+            .toList();
+
+        var funnet = tillatte.stream().map(Forespørsel::forespørselUuid).collect(Collectors.toSet());
+        var ikkeFunnet = request.forespoerselIder().stream().distinct().filter(id -> !funnet.contains(id)).toList();
+        LOG.info("Returnerer {} forespørsler, {} ble ikke funnet", tillatte.size(), ikkeFunnet.size());
+        return Response.ok(new HentForespørslerResponsDto(tillatte.stream().map(this::mapTilDto).toList(), ikkeFunnet)).build();
+    }
+
+    @GET
+    @Path(HENT_NYE)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Hent nye forespørsler", description = "Returnerer forespørsler opprettet etter cursor, sortert på løpenummer. "
+        + "Uten cursor returneres forespørslene fra starten. Med ventSekunder holdes kallet åpent til det kommer nye forespørsler eller tiden går ut. "
+        + "Svaret inneholder alltid nesteCursor som brukes i neste kall. Endringer i status på eksisterende forespørsler fanges ikke opp her.")
+    @ApiResponse(responseCode = "200", description = "Nye forespørsler, tom liste dersom ingen kom innen ventetiden",
+        content = @Content(schema = @Schema(implementation = NyeForespørslerDto.class)))
+    @ApiResponse(responseCode = "400", description = "Ugyldig orgnr, cursor eller ventetid",
+        content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
+    @ApiResponse(responseCode = "401", description = "Mangler gyldig autentisering",
+        content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
+    @ApiResponse(responseCode = "403", description = "Ikke tilgang til oppgitt organisasjon")
+    @ApiResponse(responseCode = "500", description = "Intern serverfeil",
+        content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
+    public CompletionStage<Response> hentNyeForespørsler(@NotNull @QueryParam("orgnr") @Pattern(regexp = "^\\d{9}$") String orgnr,
+                                                        @QueryParam("cursor") @Pattern(regexp = "^[A-Za-z0-9_-]{1,64}$") String cursor,
+                                                        @QueryParam("ventSekunder") @Min(0) @Max(30)
+                                                        @Parameter(description = "Hvor lenge kallet kan holdes åpent i påvente av nye forespørsler, 0-30 sekunder")
+                                                        Integer ventSekunder) {
+        LOG.info("Innkomende kall på API for nye forespørsler");
+        tilgang.sjekkAtSystemHarTilgangTilOrganisasjon(new Organisasjonsnummer(orgnr));
+        var etterLoepenr = cursor == null ? 0L : Paginering.lesCursor(cursor);
+        var ventetid = Duration.ofSeconds(ventSekunder == null ? 0 : ventSekunder);
+
+        return forespørselFeed.ventPåNye(orgnr, etterLoepenr, ventetid).thenApply(nye -> {
+            var side = Paginering.lagSide(nye, Paginering.MAKS_SIDESTØRRELSE, null, Forespørsel::loepenr);
+            var dtoer = side.elementer().stream().map(this::mapTilDto).toList();
+            var sisteLevert = dtoer.isEmpty() ? etterLoepenr : dtoer.getLast().loepenr();
+            return Response.ok(new NyeForespørslerDto(dtoer, Paginering.lagCursor(sisteLevert))).build();
+        });
+    }
+
+    @GET
+    @Path(HENDELSER)
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @Operation(summary = "Strøm av statusendringer", description = "Holder tilkoblingen åpen og sender en hendelse av typen status hver gang "
+        + "en forespørsel for organisasjonen i tokenet blir opprettet eller bytter status. Hendelsen har løpenummeret som id og ForespørselStatusHendelseDto som data. "
+        + "Ledige tilkoblinger får jevnlig en kommentar som hjerteslag. En konsument som ikke leser unna blir koblet fra og må koble til på nytt, "
+        + "og bør da hente forespørslene på nytt for å fange opp endringer den kan ha gått glipp av. "
+        + "Strømmen lukkes når tokenet utløper, og når systemet ikke lenger har tilgang til organisasjonen. Tilgangen sjekkes på nytt med noen minutters mellomrom.")
+    @ApiResponse(responseCode = "200", description = "Strømmen er åpnet",
+        content = @Content(mediaType = MediaType.SERVER_SENT_EVENTS, schema = @Schema(implementation = ForespørselStatusHendelseDto.class)))
+    @ApiResponse(responseCode = "401", description = "Mangler gyldig autentisering",
+        content = @Content(schema = @Schema(implementation = no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse.class)))
+    @ApiResponse(responseCode = "403", description = "Ikke tilgang til organisasjonen")
+    public void strømHendelser(@Context SseEventSink sink, @Context Sse sse) {
+        LOG.info("Innkomende kall på API for strøm av forespørselhendelser");
+        var orgnr = tilgang.organisasjonFraToken();
+        tilgang.sjekkAtSystemHarTilgangTilOrganisasjon(orgnr);
+        hendelseStrøm.åpne(orgnr, sink, sse);
     }
 
     private boolean datoerErUgyldige(ForespørselFilter filterRequest) {
@@ -145,7 +258,7 @@ public class ForespørselRest {
     }
 
     private ForespørselDto mapTilDto(Forespørsel forespørsel) {
-        return new ForespørselDto(forespørsel.loepenr(),
+        return Kalltid.mål(Kalltid.Steg.MAPPING, () -> new ForespørselDto(forespørsel.loepenr(),
             forespørsel.forespørselUuid(),
             forespørsel.orgnummer().orgnr(),
             forespørsel.fødselsnummer(),
@@ -153,6 +266,6 @@ public class ForespørselRest {
             forespørsel.skjæringstidspunkt(),
             KodeverkMapper.mapTilDto(forespørsel.status()),
             KodeverkMapper.mapTilDto(forespørsel.ytelseType()),
-            forespørsel.opprettetTid());
+            forespørsel.opprettetTid()));
     }
 }
@@ -0,0 +1,10 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.util.UUID;
+
+import jakarta.validation.constraints.NotNull;
+
+import no.nav.foreldrepenger.inntektsmelding.api.typer.StatusDto;
+
+public record ForespørselStatusHendelseDto(@NotNull UUID forespoerselId, @NotNull Long loepenr, @NotNull StatusDto status) {
+}
@@ -0,0 +1,11 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.util.List;
+import java.util.UUID;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+public record HentForespørslerRequest(@NotNull @Size(min = 1, max = HentForespørslerRequest.MAKS_ANTALL) List<@NotNull UUID> forespoerselIder) {
+    public static final int MAKS_ANTALL = 500;
+}
@@ -0,0 +1,14 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.util.List;
+import java.util.UUID;
+
+import jakarta.validation.constraints.NotNull;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.ForespørselDto;
+
+public record HentForespørslerResponsDto(@NotNull List<ForespørselDto> forespoersler,
+                                         @Schema(description = "Id-er som ikke finnes, eller som tilhører en organisasjon systemet ikke har tilgang til")
+                                         @NotNull List<UUID> ikkeFunnet) {
+}
@@ -0,0 +1,116 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.cache.TidsbegrensetCache;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+import no.nav.foreldrepenger.konfig.Environment;
+import no.nav.vedtak.mapper.json.DefaultJsonMapper;
+
+/**
+ * Husker svaret på innsendinger med Idempotency-Key, slik at et nytt forsøk etter timeout hos konsumenten får samme svar
+ * uten å gå til fpinntektsmelding på nytt. Et forsøk som kommer mens det første fortsatt pågår venter på det første,
+ * men ikke lenger enn {@code api.idempotens.maks.ventetid.sekunder}; da avvises det med 409 og kan prøves igjen senere.
+ * Nøkkelen gjelder per systembruker. Svar med serverfeil huskes ikke, slik at et senere forsøk sendes videre som vanlig.
+ */
+@ApplicationScoped
+public class IdempotensLager {
+    private static final Logger LOG = LoggerFactory.getLogger(IdempotensLager.class);
+    private static final Environment ENV = Environment.current();
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    private final TidsbegrensetCache<String, Innsending> innsendinger = new TidsbegrensetCache<>("idempotens-send-inn",
+        ENV.getProperty("api.idempotens.maks.antall", Integer.class, 10_000));
+    private final Duration levetid = Duration.ofHours(ENV.getProperty("api.idempotens.levetid.timer", Integer.class, 24));
+    private final Duration maksVentetid;
+
+    public IdempotensLager() {
+        this(Duration.ofSeconds(ENV.getProperty("api.idempotens.maks.ventetid.sekunder", Integer.class, 30)));
+    }
+
+    IdempotensLager(Duration maksVentetid) {
+        this.maksVentetid = maksVentetid;
+    }
+
+    /**
+     * Kjører innsendingen første gang nøkkelen brukes, og returnerer lagret svar ved senere bruk av samme nøkkel.
+     * Samme nøkkel med annet innhold avvises.
+     */
+    public Response utførEnGang(String systembruker, String nøkkel, Object innhold, Supplier<Response> innsending) {
+        var lagringsnøkkel = systembruker + ":" + nøkkel;
+        var ny = new Innsending(fingeravtrykk(innhold), new CompletableFuture<>());
+        var eksisterende = innsendinger.putIfAbsent(lagringsnøkkel, ny, levetid);
+        if (eksisterende != null) {
+            return gjenta(eksisterende, ny.fingeravtrykk());
+        }
+
+        try {
+            var respons = innsending.get();
+            ny.svar().complete(new LagretSvar(respons.getStatus(), respons.getEntity()));
+            if (respons.getStatus() >= 500) {
+                innsendinger.remove(lagringsnøkkel, ny);
+            }
+            return respons;
+        } catch (RuntimeException e) {
+            innsendinger.remove(lagringsnøkkel, ny);
+            ny.svar().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Response gjenta(Innsending eksisterende, byte[] fingeravtrykk) {
+        if (!Arrays.equals(eksisterende.fingeravtrykk(), fingeravtrykk)) {
+            throw new InntektsmeldingAPIException(EksponertFeilmelding.IDEMPOTENSNOEKKEL_GJENBRUKT, Response.Status.BAD_REQUEST);
+        }
+        if (!eksisterende.svar().isDone()) {
+            LOG.info("Innsending med samme Idempotency-Key pågår allerede, venter på svaret fra den");
+        }
+        try {
+            var svar = eksisterende.svar().get(maksVentetid.toMillis(), TimeUnit.MILLISECONDS);
+            LOG.info("Returnerer lagret svar for gjentatt innsending med samme Idempotency-Key");
+            return Response.status(svar.status()).entity(svar.entitet()).header(IDEMPOTENT_REPLAYED, "true").build();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            LOG.warn("Innsending med samme Idempotency-Key ble ikke ferdig innen {}, avviser gjentatt forsøk", maksVentetid);
+            throw new InntektsmeldingAPIException(EksponertFeilmelding.IDEMPOTENSNOEKKEL_PAAGAAR, Response.Status.CONFLICT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InntektsmeldingAPIException(EksponertFeilmelding.IDEMPOTENSNOEKKEL_PAAGAAR, Response.Status.CONFLICT);
+        }
+    }
+
+    private static byte[] fingeravtrykk(Object innhold) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(DefaultJsonMapper.toJson(innhold).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Innsending(byte[] fingeravtrykk, CompletableFuture<LagretSvar> svar) {
+    }
+
+    private record LagretSvar(int status, Object entitet) {
+    }
+}
@@ -4,6 +4,7 @@ import java.time.LocalDate;
 import java.util.UUID;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 
@@ -18,4 +19,6 @@ public record InntektsmeldingFilter(@NotNull @Pattern(regexp = "^\\d{9}$") Strin
                                     LocalDate fom,
                                     LocalDate tom,
                                     Long fraLoepenr,
-                                    InntektsmeldingStatusDto status) {}
+                                    InntektsmeldingStatusDto status,
+                                    @Min(1) Integer limit,
+                                    @Pattern(regexp = "^[A-Za-z0-9_-]{1,64}$") String cursor) {}
@@ -1,6 +1,14 @@
 package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
@@ -9,6 +17,7 @@ import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
@@ -21,20 +30,28 @@ import org.slf4j.LoggerFactory;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
+import no.nav.foreldrepenger.inntektsmelding.api.inntektsmelding.Inntektsmelding;
 import no.nav.foreldrepenger.inntektsmelding.api.inntektsmelding.InntektsmeldingDto;
 import no.nav.foreldrepenger.inntektsmelding.api.inntektsmelding.InntektsmeldingMapper;
 import no.nav.foreldrepenger.inntektsmelding.api.integrasjoner.FpinntektsmeldingTjeneste;
 import no.nav.foreldrepenger.inntektsmelding.api.server.auth.Tilgang;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+import no.nav.foreldrepenger.inntektsmelding.api.server.metrikker.Kalltid;
+import no.nav.foreldrepenger.inntektsmelding.api.server.parallell.BegrensetParallellitet;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.InntektsmeldingStatusDto;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
 import no.nav.foreldrepenger.inntektsmelding.felles.FeilkodeDto;
+import no.nav.foreldrepenger.inntektsmelding.imapi.inntektsmelding.SendInntektsmeldingResponse;
+import no.nav.foreldrepenger.konfig.Environment;
 
 @RequestScoped
 @Consumes(MediaType.APPLICATION_JSON)
@@ -44,20 +61,25 @@ import no.nav.foreldrepenger.inntektsmelding.felles.FeilkodeDto;
 public class InntektsmeldingRest {
     public static final String BASE_PATH = "/inntektsmelding";
     private static final Logger LOG = LoggerFactory.getLogger(InntektsmeldingRest.class);
+    private static final Environment ENV = Environment.current();
     private static final String SEND_INNTEKTSMELDING = "/send-inn";
+    private static final String SEND_INNTEKTSMELDINGER = "/send-inn/flere";
     private static final String HENT_INNTEKTSMELDING = "/hent/{inntektsmeldingId}";
     private static final String HENT_INNTEKTSMELDINGER = "/hent/inntektsmeldinger";
+    private static final int MAKS_SAMTIDIGE_INNSENDINGER = ENV.getProperty("api.send.inn.flere.maks.samtidige", Integer.class, 8);
     private FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste;
     private Tilgang tilgang;
+    private IdempotensLager idempotensLager;
 
     InntektsmeldingRest() {
         // for CDI proxy
     }
 
     @Inject
-    public InntektsmeldingRest(FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste, Tilgang tilgang) {
+    public InntektsmeldingRest(FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste, Tilgang tilgang, IdempotensLager idempotensLager) {
         this.fpinntektsmeldingTjeneste = fpinntektsmeldingTjeneste;
         this.tilgang = tilgang;
+        this.idempotensLager = idempotensLager;
     }
 
     @POST
@@ -65,57 +87,205 @@ public class InntektsmeldingRest {
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
     @Operation(summary = "Send inn inntektsmelding",
-        description = "Sender inn en inntektsmelding for en gitt forespørsel. Inntekten valideres mot A-inntekt og duplikater avvises.")
+        description = "Sender inn en inntektsmelding for en gitt forespørsel. Inntekten valideres mot A-inntekt og duplikater avvises. "
+            + "Med headeren Idempotency-Key kan innsendingen trygt prøves på nytt etter timeout. Gjentatte forsøk får da svaret fra første innsending "
+            + "med headeren Idempotent-Replayed satt.")
     @ApiResponse(responseCode = "200", description = "Inntektsmeldingen ble mottatt. Returnerer UUID og status for den innsendte inntektsmeldingen.",
         content = @Content(schema = @Schema(implementation = SendInntektsmeldingResponsDto.class)))
-    @ApiResponse(responseCode = "400", description = "Valideringsfeil eller ugyldig inntektsmelding (f.eks. inntekt avviker fra A-inntekt uten endringsårsak)",
+    @ApiResponse(responseCode = "400", description = "Valideringsfeil eller ugyldig inntektsmelding (f.eks. inntekt avviker fra A-inntekt uten endringsårsak), "
+        + "eller Idempotency-Key er brukt før med annet innhold",
         content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     @ApiResponse(responseCode = "401", description = "Mangler gyldig autentisering",
         content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     @ApiResponse(responseCode = "403", description = "Ikke tilgang til oppgitt organisasjon")
     @ApiResponse(responseCode = "404", description = "Forespørselen ble ikke funnet",
         content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
-    @ApiResponse(responseCode = "409", description = "Duplikat – inntektsmelding er identisk med siste innsendte",
+    @ApiResponse(responseCode = "409", description = "Duplikat – inntektsmelding er identisk med siste innsendte, "
+        + "eller en innsending med samme Idempotency-Key pågår fortsatt",
         content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     @ApiResponse(responseCode = "503", description = "A-inntekt er midlertidig utilgjengelig. Prøv igjen om litt.",
         content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     @ApiResponse(responseCode = "500", description = "Intern serverfeil",
         content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
-    public Response sendInntektsmelding(@Valid @NotNull InntektsmeldingRequest inntektsmeldingRequest) {
+    public Response sendInntektsmelding(@Valid @NotNull InntektsmeldingRequest inntektsmeldingRequest,
+                                        @HeaderParam(IdempotensLager.IDEMPOTENCY_KEY) @Pattern(regexp = "^[A-Za-z0-9_.:-]{1,128}$")
+                                        @Parameter(description = "Valgfri nøkkel fra konsumenten. Nye forsøk med samme nøkkel og samme innhold får svaret fra første innsending.")
+                                        String idempotensnøkkel) {
+        if (idempotensnøkkel == null) {
+            return sendInn(inntektsmeldingRequest);
+        }
+        return idempotensLager.utførEnGang(tilgang.systembrukerFraToken(), idempotensnøkkel, inntektsmeldingRequest,
+            () -> sendInn(inntektsmeldingRequest));
+    }
+
+    private Response sendInn(InntektsmeldingRequest inntektsmeldingRequest) {
         var forespørselUuid = inntektsmeldingRequest.forespoerselId();
         LOG.info("Mottatt inntektsmeldling via API for forespørselUuid {} ", forespørselUuid);
-        var forespørsel = fpinntektsmeldingTjeneste.hentForespørsel(forespørselUuid);
+        var forespørsel = fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid);
 
         if (forespørsel == null) {
-            LOG.info("Avvist inntektsmelding for forespørselUuid {}. Forespørsel ikke funnet.", forespørselUuid);
-            return Response.status(Response.Status.NOT_FOUND)
-                .entity(new ErrorResponse(EksponertFeilmelding.TOM_FORESPOERSEL.name(),
-                    EksponertFeilmelding.TOM_FORESPOERSEL.getTekst() + ": " + forespørselUuid,
-                    forespørselUuid.toString()))
-                .build();
+            return forespørselIkkeFunnet(forespørselUuid);
         }
 
         if (!forespørsel.fødselsnummer().equals(inntektsmeldingRequest.soekerFnr())) {
-            LOG.info("Avvist inntektsmelding for forespørselUuid {}. Forespørsel og inntektsmelding har ikke samme fødselsnummer.", forespørselUuid);
-            return Response.status(Response.Status.BAD_REQUEST)
-                .entity(new ErrorResponse(EksponertFeilmelding.MISMATCH_FOEDSELSNUMMER.name(),
-                    EksponertFeilmelding.MISMATCH_FOEDSELSNUMMER.getTekst(),
-                    forespørselUuid.toString()))
-                .build();
+            return fødselsnummerAvviker(forespørselUuid);
         }
 
-        tilgang.sjekkAtSystemHarTilgangTilOrganisasjon(new Organisasjonsnummer(forespørsel.orgnummer().orgnr()));
+        // Tilgangssjekken mot Altinn og valideringen er uavhengige og kjøres samtidig. Manglende tilgang går likevel
+        // foran valideringsfeil, slik at et system uten tilgang ikke får vite noe om innholdet i forespørselen.
+        var tilgangssjekk = tilgang.sjekkAtSystemHarTilgangTilOrganisasjonAsync(new Organisasjonsnummer(forespørsel.orgnummer().orgnr()));
+        var feilmelding = Kalltid.mål(Kalltid.Steg.VALIDERING,
+            () -> InntektsmeldingValidererUtil.validerInntektsmelding(inntektsmeldingRequest, forespørsel));
+        ventPåTilgangssjekk(tilgangssjekk);
 
-        var feilmelding = InntektsmeldingValidererUtil.validerInntektsmelding(inntektsmeldingRequest, forespørsel);
         if (feilmelding.isPresent()) {
-            LOG.info("Avvist inntektsmelding for forespørselUuid {}. Validering av inntektsmelding feilet. Feilmelding: {}",
-                inntektsmeldingRequest.forespoerselId(), feilmelding.get().getTekst());
-            return Response.status(Response.Status.BAD_REQUEST)
-                .entity(new ErrorResponse(feilmelding.get().name(), feilmelding.get().getTekst(), forespørselUuid.toString()))
+            return valideringFeilet(forespørselUuid, feilmelding.get());
+        }
+        return tilRespons(fpinntektsmeldingTjeneste.sendInntektsmelding(inntektsmeldingRequest, forespørsel));
+    }
+
+    @POST
+    @Path(SEND_INNTEKTSMELDINGER)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Send inn flere inntektsmeldinger",
+        description = "Sender inn inntill " + SendInntektsmeldingerRequest.MAKS_ANTALL + " inntektsmeldinger i ett kall, for eksempel etter en lønnskjøring. "
+            + "Hver inntektsmelding behandles som ved innsending alene, og svaret har ett resultat per inntektsmelding med status og kvittering eller feil. "
+            + "At én inntektsmelding avvises påvirker ikke de andre.")
+    @ApiResponse(responseCode = "200", description = "Inntektsmeldingene ble behandlet. Se status i hvert resultat.",
+        content = @Content(schema = @Schema(implementation = SendInntektsmeldingerResponsDto.class)))
+    @ApiResponse(responseCode = "400", description = "Tom liste, for mange inntektsmeldinger eller valideringsfeil i formatet",
+        content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    @ApiResponse(responseCode = "401", description = "Mangler gyldig autentisering",
+        content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    @ApiResponse(responseCode = "500", description = "Intern serverfeil",
+        content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    public Response sendInntektsmeldinger(@Valid @NotNull SendInntektsmeldingerRequest request) {
+        var inntektsmeldinger = request.inntektsmeldinger();
+        LOG.info("Mottatt {} inntektsmeldinger via API", inntektsmeldinger.size());
+
+        // Flere inntektsmeldinger kan gjelde samme forespørsel og mange gjelder samme organisasjon, så hvert oppslag gjøres én gang
+        var forespørselIder = inntektsmeldinger.stream().map(InntektsmeldingRequest::forespoerselId).distinct().toList();
+        // Feiler oppslaget for én forespørsel blir det resultatet for inntektsmeldingene som gjelder den, ikke for hele kallet
+        var hentet = BegrensetParallellitet.kjør(forespørselIder, MAKS_SAMTIDIGE_INNSENDINGER, this::slåOppForespørsel);
+        var forespørsler = new HashMap<UUID, Oppslag>();
+        for (int i = 0; i < forespørselIder.size(); i++) {
+            forespørsler.put(forespørselIder.get(i), hentet.get(i));
+        }
+        var organisasjoner = forespørsler.values().stream()
+            .map(Oppslag::forespørsel)
+            .filter(Objects::nonNull)
+            .map(f -> new Organisasjonsnummer(f.orgnummer().orgnr()))
+            .collect(Collectors.toSet());
+        var medTilgang = tilgangTil(organisasjoner, forespørsler);
+
+        var indekser = IntStream.range(0, inntektsmeldinger.size()).boxed().toList();
+        var resultater = BegrensetParallellitet.kjør(indekser, MAKS_SAMTIDIGE_INNSENDINGER, i -> {
+            var inntektsmelding = inntektsmeldinger.get(i);
+            var respons = sendInnEn(inntektsmelding, forespørsler.get(inntektsmelding.forespoerselId()), medTilgang);
+            return tilResultat(i, inntektsmelding.forespoerselId(), respons);
+        });
+        LOG.info("Behandlet {} inntektsmeldinger, {} ble mottatt", resultater.size(),
+            resultater.stream().filter(r -> r.status() == Response.Status.OK.getStatusCode()).count());
+        return Response.ok(new SendInntektsmeldingerResponsDto(resultater)).build();
+    }
+
+    /**
+     * Feiler tilgangsoppslaget mot Altinn, blir feilen resultatet for inntektsmeldingene med en funnet forespørsel, og ikke for
+     * hele kallet. Inntektsmeldinger der forespørselen ikke ble funnet eller ikke kunne slås opp, beholder sitt eget resultat.
+     */
+    private Set<Organisasjonsnummer> tilgangTil(Set<Organisasjonsnummer> organisasjoner, Map<UUID, Oppslag> forespørsler) {
+        try {
+            return tilgang.organisasjonerSystemetHarTilgangTil(organisasjoner);
+        } catch (RuntimeException e) {
+            forespørsler.replaceAll((uuid, oppslag) -> oppslag.forespørsel() == null ? oppslag : new Oppslag(null, tilFeilrespons(uuid, e)));
+            return Set.of();
+        }
+    }
+
+    private Oppslag slåOppForespørsel(UUID forespørselUuid) {
+        try {
+            return new Oppslag(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid), null);
+        } catch (RuntimeException e) {
+            return new Oppslag(null, tilFeilrespons(forespørselUuid, e));
+        }
+    }
+
+    private Response sendInnEn(InntektsmeldingRequest inntektsmeldingRequest, Oppslag oppslag, Set<Organisasjonsnummer> medTilgang) {
+        var forespørselUuid = inntektsmeldingRequest.forespoerselId();
+        if (oppslag.feil() != null) {
+            return oppslag.feil();
+        }
+        var forespørsel = oppslag.forespørsel();
+        try {
+            if (forespørsel == null) {
+                return forespørselIkkeFunnet(forespørselUuid);
+            }
+            if (!medTilgang.contains(new Organisasjonsnummer(forespørsel.orgnummer().orgnr()))) {
+                return Response.status(Response.Status.UNAUTHORIZED)
+                    .entity(new ErrorResponse(EksponertFeilmelding.IKKE_TILGANG_ALTINN.name(), EksponertFeilmelding.IKKE_TILGANG_ALTINN.getTekst(),
+                        forespørselUuid.toString()))
+                    .build();
+            }
+            if (!forespørsel.fødselsnummer().equals(inntektsmeldingRequest.soekerFnr())) {
+                return fødselsnummerAvviker(forespørselUuid);
+            }
+            var feilmelding = Kalltid.mål(Kalltid.Steg.VALIDERING,
+                () -> InntektsmeldingValidererUtil.validerInntektsmelding(inntektsmeldingRequest, forespørsel));
+            if (feilmelding.isPresent()) {
+                return valideringFeilet(forespørselUuid, feilmelding.get());
+            }
+            return tilRespons(fpinntektsmeldingTjeneste.sendInntektsmelding(inntektsmeldingRequest, forespørsel));
+        } catch (RuntimeException e) {
+            return tilFeilrespons(forespørselUuid, e);
+        }
+    }
+
+    private static Response tilFeilrespons(UUID forespørselUuid, RuntimeException e) {
+        LOG.warn("Innsending av inntektsmelding for forespørselUuid {} feilet", forespørselUuid, e);
+        if (e instanceof InntektsmeldingAPIException apiFeil) {
+            return Response.status(apiFeil.getStatus())
+                .entity(new ErrorResponse(apiFeil.getFeilmelding().name(), apiFeil.getFeilmelding().getTekst(), forespørselUuid.toString()))
                 .build();
         }
-        var response = fpinntektsmeldingTjeneste.sendInntektsmelding(inntektsmeldingRequest, forespørsel);
+        return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+            .entity(new ErrorResponse(EksponertFeilmelding.STANDARD_FEIL.name(), EksponertFeilmelding.STANDARD_FEIL.getTekst(), forespørselUuid.toString()))
+            .build();
+    }
+
+    private static SendInntektsmeldingResultatDto tilResultat(int indeks, UUID forespørselUuid, Response respons) {
+        var kvittering = respons.getEntity() instanceof SendInntektsmeldingResponsDto dto ? dto : null;
+        var feil = respons.getEntity() instanceof ErrorResponse e ? e : null;
+        return new SendInntektsmeldingResultatDto(indeks, forespørselUuid, respons.getStatus(), kvittering, feil);
+    }
+
+    private static Response forespørselIkkeFunnet(UUID forespørselUuid) {
+        LOG.info("Avvist inntektsmelding for forespørselUuid {}. Forespørsel ikke funnet.", forespørselUuid);
+        return Response.status(Response.Status.NOT_FOUND)
+            .entity(new ErrorResponse(EksponertFeilmelding.TOM_FORESPOERSEL.name(),
+                EksponertFeilmelding.TOM_FORESPOERSEL.getTekst() + ": " + forespørselUuid,
+                forespørselUuid.toString()))
+            .build();
+    }
+
+    private static Response fødselsnummerAvviker(UUID forespørselUuid) {
+        LOG.info("Avvist inntektsmelding for forespørselUuid {}. Forespørsel og inntektsmelding har ikke samme fødselsnummer.", forespørselUuid);
+        return Response.status(Response.Status.BAD_REQUEST)
+            .entity(new ErrorResponse(EksponertFeilmelding.MISMATCH_FOEDSELSNUMMER.name(),
+                EksponertFeilmelding.MISMATCH_FOEDSELSNUMMER.getTekst(),
+                forespørselUuid.toString()))
+            .build();
+    }
 
+    private static Response valideringFeilet(UUID forespørselUuid, EksponertFeilmelding feilmelding) {
+        LOG.info("Avvist inntektsmelding for forespørselUuid {}. Validering av inntektsmelding feilet. Feilmelding: {}",
+            forespørselUuid, feilmelding.getTekst());
+        return Response.status(Response.Status.BAD_REQUEST)
+            .entity(new ErrorResponse(feilmelding.name(), feilmelding.getTekst(), forespørselUuid.toString()))
+            .build();
+    }
+
+    private Response tilRespons(SendInntektsmeldingResponse response) {
         if (response.success()) {
             return Response.ok(new SendInntektsmeldingResponsDto(response.inntektsmeldingUuid(), mapStatusTilKonsument(response.status()))).build();
         } else {
@@ -139,6 +309,18 @@ public class InntektsmeldingRest {
         }
     }
 
+    private static void ventPåTilgangssjekk(CompletableFuture<Void> tilgangssjekk) {
+        try {
+            // Bare tiden kallet faktisk venter på Altinn telles, resten gikk parallelt med valideringen
+            Kalltid.mål(Kalltid.Steg.TILGANG, tilgangssjekk::join);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+    }
+
     private InntektsmeldingStatusDto mapStatusTilKonsument(no.nav.foreldrepenger.inntektsmelding.felles.InntektsmeldingStatusDto status) {
         return switch (status) {
             case GODKJENT -> InntektsmeldingStatusDto.GODKJENT;
@@ -179,7 +361,7 @@ public class InntektsmeldingRest {
 
         tilgang.sjekkAtSystemHarTilgangTilOrganisasjon(new Organisasjonsnummer(inntektsmelding.orgnr().orgnr()));
 
-        var dto = InntektsmeldingMapper.mapTilDto(inntektsmelding);
+        var dto = tilDto(inntektsmelding);
 
         return Response.status(Response.Status.OK)
             .entity(dto)
@@ -188,10 +370,13 @@ public class InntektsmeldingRest {
 
     @POST
     @Path(HENT_INNTEKTSMELDINGER)
-    @Operation(summary = "Hent inntektsmeldinger", description = "Filtrer inntektsmeldinger på orgnr, soekerFnr, forespørselId, inntektsmeldingId, ytelseType og/eller dato inntektsmeldingen ble mottatt av NAV.")
+    @Operation(summary = "Hent inntektsmeldinger", description = "Filtrer inntektsmeldinger på orgnr, soekerFnr, forespørselId, inntektsmeldingId, ytelseType og/eller dato inntektsmeldingen ble mottatt av NAV. "
+        + "Svaret er sortert på løpenummer og delt i sider på limit, men aldri mer enn serverens maksimale sidestørrelse, også når limit ikke er oppgitt. "
+        + "Finnes det flere treff, returneres headeren Neste-Cursor som sendes med som cursor for å hente neste side.")
     @ApiResponse(responseCode = "200", description = "Liste med inntektsmeldinger som matcher filteret",
+        headers = @Header(name = Paginering.NESTE_CURSOR, description = "Cursor for neste side, mangler når dette er siste side"),
         content = @Content(array = @ArraySchema(schema = @Schema(implementation = InntektsmeldingDto.class))))
-    @ApiResponse(responseCode = "400", description = "Ugyldig periode (fom er etter tom)",
+    @ApiResponse(responseCode = "400", description = "Ugyldig periode (fom er etter tom) eller ugyldig cursor",
         content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     @ApiResponse(responseCode = "401", description = "Mangler gyldig autentisering",
         content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
@@ -213,7 +398,7 @@ public class InntektsmeldingRest {
                     .build();
             }
 
-            var dto = InntektsmeldingMapper.mapTilDto(inntektsmelding);
+            var dto = tilDto(inntektsmelding);
 
             return Response.status(Response.Status.OK)
                 .entity(dto)
@@ -226,17 +411,27 @@ public class InntektsmeldingRest {
             inntektsmeldingFilter.ytelseType(),
             inntektsmeldingFilter.fom(),
             inntektsmeldingFilter.tom(),
-            inntektsmeldingFilter.fraLoepenr(),
-            inntektsmeldingFilter.status());
+            Paginering.fraLoepenr(inntektsmeldingFilter.fraLoepenr(), inntektsmeldingFilter.cursor()),
+            inntektsmeldingFilter.status(),
+            Paginering.antallÅLese(inntektsmeldingFilter.limit(), inntektsmeldingFilter.cursor()));
 
-        var dto = inntektsmeldinger.stream().map(InntektsmeldingMapper::mapTilDto).toList();
+        var side = Paginering.lagSide(inntektsmeldinger, inntektsmeldingFilter.limit(), inntektsmeldingFilter.cursor(), Inntektsmelding::loepenr);
+        var dto = side.elementer().stream().map(InntektsmeldingRest::tilDto).toList();
 
         return Response.status(Response.Status.OK)
             .entity(dto)
+            .header(Paginering.NESTE_CURSOR, side.nesteCursor())
             .build();
     }
 
+    private static InntektsmeldingDto tilDto(Inntektsmelding inntektsmelding) {
+        return Kalltid.mål(Kalltid.Steg.MAPPING, () -> InntektsmeldingMapper.mapTilDto(inntektsmelding));
+    }
+
     private boolean datoerErUgyldige(InntektsmeldingFilter filterRequest) {
         return filterRequest.fom() != null && filterRequest.tom() != null && filterRequest.fom().isAfter(filterRequest.tom());
     }
+
+    private record Oppslag(Forespørsel forespørsel, Response feil) {
+    }
 }
@@ -0,0 +1,10 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotNull;
+
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.ForespørselDto;
+
+public record NyeForespørslerDto(@NotNull List<ForespørselDto> forespoersler, @NotNull String nesteCursor) {
+}
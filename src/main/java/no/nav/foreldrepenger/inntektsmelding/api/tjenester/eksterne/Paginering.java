@@ -0,0 +1,81 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import jakarta.ws.rs.core.Response;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+import no.nav.foreldrepenger.konfig.Environment;
+
+/**
+ * Sidevis utlevering av søkeresultater sortert på løpenummer. Cursoren er ugjennomsiktig for konsumenten og peker på
+ * siste løpenummer som ble levert. Neste side hentes ved å sende verdien fra {@value #NESTE_CURSOR}-headeren som cursor.
+ * Sidestørrelsen er alltid begrenset til {@link #MAKS_SIDESTØRRELSE}, også når konsumenten verken oppgir limit eller
+ * cursor, slik at svaret holder seg begrenset uansett hvor stor organisasjonen er.
+ */
+final class Paginering {
+    static final String NESTE_CURSOR = "Neste-Cursor";
+    private static final Environment ENV = Environment.current();
+    static final int MAKS_SIDESTØRRELSE = ENV.getProperty("api.sok.maks.sidestorrelse", Integer.class, 1000);
+    private static final String CURSOR_PREFIKS = "loepenr:";
+
+    private Paginering() {
+        // Skjuler default
+    }
+
+    /**
+     * @return løpenummeret som skal sendes til fpinntektsmelding. Cursor går foran fraLoepenr når begge er oppgitt.
+     */
+    static Long fraLoepenr(Long fraLoepenr, String cursor) {
+        return cursor == null ? fraLoepenr : lesCursor(cursor);
+    }
+
+    static <T> Side<T> lagSide(List<T> sortertPåLoepenr, Integer limit, String cursor, ToLongFunction<T> loepenr) {
+        var elementer = sortertPåLoepenr;
+        if (cursor != null) {
+            var sisteLevert = lesCursor(cursor);
+            elementer = elementer.stream().filter(e -> loepenr.applyAsLong(e) > sisteLevert).toList();
+        }
+        var sidestørrelse = sidestørrelse(limit);
+        if (elementer.size() <= sidestørrelse) {
+            return new Side<>(elementer, null);
+        }
+        var side = elementer.subList(0, sidestørrelse);
+        return new Side<>(side, lagCursor(loepenr.applyAsLong(side.getLast())));
+    }
+
+    /**
+     * @return hvor mange treff som må leses fra fpinntektsmelding for å fylle siden og vite om det finnes en neste side.
+     * Med cursor kan treffet på selve cursoren komme med og filtreres bort i {@link #lagSide}, så da leses ett til.
+     */
+    static int antallÅLese(Integer limit, String cursor) {
+        return sidestørrelse(limit) + (cursor == null ? 1 : 2);
+    }
+
+    private static int sidestørrelse(Integer limit) {
+        return limit == null ? MAKS_SIDESTØRRELSE : Math.min(limit, MAKS_SIDESTØRRELSE);
+    }
+
+    static String lagCursor(long loepenr) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((CURSOR_PREFIKS + loepenr).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long lesCursor(String cursor) {
+        try {
+            var verdi = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (verdi.startsWith(CURSOR_PREFIKS)) {
+                return Long.parseLong(verdi.substring(CURSOR_PREFIKS.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // Faller gjennom til feilmelding under, NumberFormatException er også en IllegalArgumentException
+        }
+        throw new InntektsmeldingAPIException(EksponertFeilmelding.UGYLDIG_CURSOR, Response.Status.BAD_REQUEST);
+    }
+
+    record Side<T>(List<T> elementer, String nesteCursor) {
+    }
+}
@@ -0,0 +1,18 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.util.UUID;
+
+import jakarta.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SendInntektsmeldingResultatDto(@Schema(description = "Plassen inntektsmeldingen hadde i innsendt liste") @NotNull Integer indeks,
+                                             @NotNull UUID forespoerselId,
+                                             @Schema(description = "HTTP-statusen inntektsmeldingen ville fått ved innsending alene") @NotNull Integer status,
+                                             @Schema(nullable = true) SendInntektsmeldingResponsDto kvittering,
+                                             @Schema(nullable = true) ErrorResponse feil) {
+}
@@ -0,0 +1,12 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+public record SendInntektsmeldingerRequest(@NotNull @Size(min = 1, max = SendInntektsmeldingerRequest.MAKS_ANTALL)
+                                           List<@NotNull @Valid InntektsmeldingRequest> inntektsmeldinger) {
+    public static final int MAKS_ANTALL = 200;
+}
@@ -0,0 +1,8 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotNull;
+
+public record SendInntektsmeldingerResponsDto(@NotNull List<SendInntektsmeldingResultatDto> resultater) {
+}
@@ -0,0 +1,110 @@
+package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.ForespørselStatus;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.YtelseType;
+
+@ExtendWith(MockitoExtension.class)
+class ForespørselFeedTest {
+    private static final String ORGNR = "999999999";
+
+    @Mock
+    private FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste;
+
+    @Test
+    void skal_returnere_forespørsler_etter_cursor_med_en_gang() throws Exception {
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, 1L))
+            .thenReturn(List.of(lagForespørsel(1L), lagForespørsel(2L)));
+
+        var nye = new ForespørselFeed(fpinntektsmeldingTjeneste).ventPåNye(ORGNR, 1L, Duration.ofSeconds(30)).get(5, TimeUnit.SECONDS);
+
+        assertThat(nye).extracting(Forespørsel::loepenr).containsExactly(2L);
+    }
+
+    @Test
+    void skal_returnere_tom_liste_når_ventetiden_er_ute() throws Exception {
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, 5L)).thenReturn(List.of(lagForespørsel(5L)));
+
+        var nye = new ForespørselFeed(fpinntektsmeldingTjeneste).ventPåNye(ORGNR, 5L, Duration.ZERO).get(5, TimeUnit.SECONDS);
+
+        assertThat(nye).isEmpty();
+    }
+
+    @Test
+    void skal_fullføre_ved_fristen_uten_å_vente_på_neste_oppslag() throws Exception {
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, 5L)).thenReturn(List.of(lagForespørsel(5L)));
+        var start = System.nanoTime();
+
+        var nye = new ForespørselFeed(fpinntektsmeldingTjeneste).ventPåNye(ORGNR, 5L, Duration.ofMillis(200)).get(5, TimeUnit.SECONDS);
+
+        assertThat(nye).isEmpty();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void skal_ikke_slå_opp_på_nytt_for_kall_som_er_à_jour() throws Exception {
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, 0L))
+            .thenReturn(List.of(lagForespørsel(1L), lagForespørsel(2L)));
+        var feed = new ForespørselFeed(fpinntektsmeldingTjeneste);
+
+        assertThat(feed.ventPåNye(ORGNR, 0L, Duration.ZERO).get(5, TimeUnit.SECONDS)).hasSize(2);
+        var nye = feed.ventPåNye(ORGNR, 2L, Duration.ofMillis(100)).get(5, TimeUnit.SECONDS);
+
+        assertThat(nye).isEmpty();
+        verify(fpinntektsmeldingTjeneste, never()).hentForespørsler(ORGNR, null, null, null, null, null, 2L);
+    }
+
+    @Test
+    void skal_returnere_tom_liste_med_en_gang_uten_å_vente_når_ventetiden_er_null() {
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, 0L))
+            .thenReturn(List.of(lagForespørsel(1L), lagForespørsel(2L)));
+        var feed = new ForespørselFeed(fpinntektsmeldingTjeneste);
+        assertThat(feed.ventPåNye(ORGNR, 0L, Duration.ZERO).join()).hasSize(2);
+
+        var nye = feed.ventPåNye(ORGNR, 2L, Duration.ZERO);
+
+        assertThat(nye).isCompletedWithValue(List.of());
+        assertThat(feed.antallAbonnementer()).isZero();
+    }
+
+    @Test
+    void skal_glemme_høyeste_løpenummer_for_organisasjoner_utover_maks_antall() throws Exception {
+        var annenOrgnr = "888888888";
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, 0L))
+            .thenReturn(List.of(lagForespørsel(1L), lagForespørsel(2L)));
+        when(fpinntektsmeldingTjeneste.hentForespørsler(annenOrgnr, null, null, null, null, null, 0L))
+            .thenReturn(List.of(lagForespørsel(3L)));
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, 2L)).thenReturn(List.of());
+        var feed = new ForespørselFeed(fpinntektsmeldingTjeneste, 1);
+
+        feed.ventPåNye(ORGNR, 0L, Duration.ZERO).get(5, TimeUnit.SECONDS);
+        feed.ventPåNye(annenOrgnr, 0L, Duration.ZERO).get(5, TimeUnit.SECONDS);
+        var nye = feed.ventPåNye(ORGNR, 2L, Duration.ZERO).get(5, TimeUnit.SECONDS);
+
+        // Organisasjonen er glemt, så kallet gjør sitt eget oppslag i stedet for å regnes som à jour
+        assertThat(nye).isEmpty();
+        verify(fpinntektsmeldingTjeneste).hentForespørsler(ORGNR, null, null, null, null, null, 2L);
+    }
+
+    private static Forespørsel lagForespørsel(long loepenr) {
+        return new Forespørsel(loepenr, UUID.randomUUID(), new Organisasjonsnummer(ORGNR), "11111111111", LocalDate.now(), LocalDate.now(),
+            ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER, LocalDate.now().atStartOfDay());
+    }
+}
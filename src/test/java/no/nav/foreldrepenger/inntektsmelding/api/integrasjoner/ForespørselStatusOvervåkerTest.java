@@ -0,0 +1,80 @@
+package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.ForespørselStatus;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.YtelseType;
+
+@ExtendWith(MockitoExtension.class)
+class ForespørselStatusOvervåkerTest {
+    private static final String ORGNR = "999999999";
+
+    @Mock
+    private FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste;
+
+    @Test
+    void skal_melde_endret_status_men_ikke_utgangspunktet() throws Exception {
+        var uuid = UUID.randomUUID();
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, null))
+            .thenReturn(List.of(lagForespørsel(1L, uuid, ForespørselStatus.UNDER_BEHANDLING)))
+            .thenReturn(List.of(lagForespørsel(1L, uuid, ForespørselStatus.UNDER_BEHANDLING), lagForespørsel(2L, UUID.randomUUID(), ForespørselStatus.UNDER_BEHANDLING)));
+        var mottatt = new LinkedBlockingQueue<List<ForespørselStatusOvervåker.StatusEndring>>();
+
+        var avmelding = new ForespørselStatusOvervåker(fpinntektsmeldingTjeneste, Duration.ofMillis(20)).abonner(ORGNR, mottatt::add);
+
+        var endringer = mottatt.poll(5, TimeUnit.SECONDS);
+        avmelding.run();
+        assertThat(endringer).extracting(ForespørselStatusOvervåker.StatusEndring::loepenr).containsExactly(2L);
+    }
+
+    @Test
+    void skal_melde_statusbytte_på_eksisterende_forespørsel_som_beholder_løpenummeret() throws Exception {
+        var uuid = UUID.randomUUID();
+        when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, null))
+            .thenReturn(List.of(lagForespørsel(1L, uuid, ForespørselStatus.UNDER_BEHANDLING)))
+            .thenReturn(List.of(lagForespørsel(1L, uuid, ForespørselStatus.FERDIG)));
+        var mottatt = new LinkedBlockingQueue<List<ForespørselStatusOvervåker.StatusEndring>>();
+
+        var avmelding = new ForespørselStatusOvervåker(fpinntektsmeldingTjeneste, Duration.ofMillis(20)).abonner(ORGNR, mottatt::add);
+
+        var endringer = mottatt.poll(5, TimeUnit.SECONDS);
+        avmelding.run();
+        assertThat(endringer).containsExactly(new ForespørselStatusOvervåker.StatusEndring(uuid, 1L, ForespørselStatus.FERDIG));
+    }
+
+    @Test
+    void skal_stoppe_overvåkning_når_siste_lytter_melder_seg_av() {
+        lenient().when(fpinntektsmeldingTjeneste.hentForespørsler(ORGNR, null, null, null, null, null, null)).thenReturn(List.of());
+        var overvåker = new ForespørselStatusOvervåker(fpinntektsmeldingTjeneste, Duration.ofMinutes(1));
+
+        var første = overvåker.abonner(ORGNR, e -> { });
+        var andre = overvåker.abonner(ORGNR, e -> { });
+        assertThat(overvåker.antallOvervåkedeOrganisasjoner()).isEqualTo(1);
+
+        første.run();
+        assertThat(overvåker.antallOvervåkedeOrganisasjoner()).isEqualTo(1);
+        andre.run();
+        assertThat(overvåker.antallOvervåkedeOrganisasjoner()).isZero();
+    }
+
+    private static Forespørsel lagForespørsel(long loepenr, UUID uuid, ForespørselStatus status) {
+        return new Forespørsel(loepenr, uuid, new Organisasjonsnummer(ORGNR), "11111111111", LocalDate.now(), LocalDate.now(),
+            status, YtelseType.FORELDREPENGER, LocalDate.now().atStartOfDay());
+    }
+}
@@ -0,0 +1,121 @@
+package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import jakarta.ws.rs.core.Response;
+
+import org.junit.jupiter.api.Test;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+import no.nav.foreldrepenger.inntektsmelding.api.server.resiliens.UventetStatusException;
+import no.nav.foreldrepenger.inntektsmelding.imapi.forespørsel.ForespørselResponse;
+import no.nav.foreldrepenger.konfig.Environment;
+
+class FpinntektsmeldingKlientTest {
+    private static final Function<Stream<Element>, List<String>> TIL_ORGNUMRE = s -> s.map(Element::orgnr).toList();
+    private static final int ANTALL_SØK = Environment.current().getProperty("fpinntektsmelding.skott.sok.maks.samtidige", Integer.class, 40);
+
+    @Test
+    void skal_lese_og_mappe_hvert_element_i_listen() {
+        var response = lagResponse(200, "[{\"orgnr\":\"999999999\"},{\"orgnr\":\"888888888\"}]");
+
+        var orgnumre = FpinntektsmeldingKlient.lesListe(response, Element.class, TIL_ORGNUMRE);
+
+        assertThat(orgnumre).containsExactly("999999999", "888888888");
+    }
+
+    @Test
+    void skal_slutte_å_lese_når_behandlingen_har_fått_nok() {
+        var response = lagResponse(200, "[{\"orgnr\":\"999999999\"},{\"orgnr\":\"888888888\"},ugyldig");
+
+        var orgnumre = FpinntektsmeldingKlient.lesListe(response, Element.class, s -> s.limit(2).map(Element::orgnr).toList());
+
+        assertThat(orgnumre).containsExactly("999999999", "888888888");
+    }
+
+    @Test
+    void skal_gi_tom_liste_når_body_mangler() {
+        var response = lagResponse(204, null);
+
+        assertThat(FpinntektsmeldingKlient.lesListe(response, Element.class, TIL_ORGNUMRE)).isEmpty();
+    }
+
+    @Test
+    void skal_feile_på_uventet_status() {
+        var response = lagResponse(500, "[]");
+
+        assertThrows(UventetStatusException.class,
+            () -> FpinntektsmeldingKlient.lesListe(response, Element.class, TIL_ORGNUMRE));
+    }
+
+    @Test
+    void skal_gi_tom_liste_når_body_er_tom() {
+        var response = lagResponse(200, "");
+
+        assertThat(FpinntektsmeldingKlient.lesListe(response, Element.class, TIL_ORGNUMRE)).isEmpty();
+    }
+
+    @Test
+    void skal_slå_opp_forespørsel_til_innsending_selv_om_skottet_for_søk_er_fullt() throws Exception {
+        var klient = mock(FpinntektsmeldingKlient.class, CALLS_REAL_METHODS);
+        var søk = UUID.randomUUID();
+        var innsending = UUID.randomUUID();
+        var svar = mock(ForespørselResponse.class);
+        var slipp = new CountDownLatch(1);
+        var iGang = new CountDownLatch(ANTALL_SØK);
+        doAnswer(i -> {
+            if (søk.equals(i.getArgument(0))) {
+                iGang.countDown();
+                slipp.await();
+            }
+            return svar;
+        }).when(klient).hentForespørselFraFpinntektsmelding(any());
+        var søkene = new ArrayList<CompletableFuture<ForespørselResponse>>();
+        try (var tråder = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                for (int i = 0; i < ANTALL_SØK; i++) {
+                    søkene.add(CompletableFuture.supplyAsync(() -> klient.hentForespørsel(søk), tråder));
+                }
+                assertThat(iGang.await(5, TimeUnit.SECONDS)).isTrue();
+
+                var fullt = assertThrows(InntektsmeldingAPIException.class, () -> klient.hentForespørsel(søk));
+                assertThat(fullt.getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE);
+                assertThat(klient.hentForespørselForInnsending(innsending)).isSameAs(svar);
+            } finally {
+                slipp.countDown();
+            }
+        }
+        assertThat(søkene).allMatch(f -> f.join() == svar);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<InputStream> lagResponse(int status, String body) {
+        var response = (HttpResponse<InputStream>) mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.body()).thenReturn(body == null ? null : new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        return response;
+    }
+
+    private record Element(String orgnr) {
+    }
+}
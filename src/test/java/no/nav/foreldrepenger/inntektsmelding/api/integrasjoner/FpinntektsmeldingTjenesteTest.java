@@ -2,6 +2,9 @@ package no.nav.foreldrepenger.inntektsmelding.api.integrasjoner;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -10,6 +13,10 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import no.nav.foreldrepenger.inntektsmelding.api.typer.InntektsmeldingStatus;
 
@@ -21,6 +28,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
 
 import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
 import no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne.InntektsmeldingRequest;
@@ -64,17 +72,75 @@ class FpinntektsmeldingTjenesteTest {
         assertThat(forespørsel.fødselsnummer()).isEqualTo(fødselsnummer);
     }
 
+    @Test
+    void skal_gjenbruke_hentet_forespørsel_til_innsending_har_lyktes() {
+        var uuid = UUID.randomUUID();
+        var response = new ForespørselResponse(null, uuid, new OrganisasjonsnummerDto("999999999"), new FødselsnummerDto("12345678901"),
+            LocalDate.now(), LocalDate.now(), ForespørselStatusDto.UNDER_BEHANDLING, YtelseTypeDto.FORELDREPENGER, LocalDateTime.now());
+        when(fpinntektsmeldingKlient.hentForespørsel(uuid)).thenReturn(response);
+        when(fpinntektsmeldingKlient.sendInntektsmelding(any())).thenReturn(new SendInntektsmeldingResponse(true, UUID.randomUUID(),
+            no.nav.foreldrepenger.inntektsmelding.felles.InntektsmeldingStatusDto.GODKJENT, null));
+
+        var forespørsel = fpinntektsmeldingTjeneste.hentForespørsel(uuid);
+        assertThat(fpinntektsmeldingTjeneste.hentForespørsel(uuid)).isEqualTo(forespørsel);
+        verify(fpinntektsmeldingKlient, times(1)).hentForespørsel(uuid);
+
+        fpinntektsmeldingTjeneste.sendInntektsmelding(new InntektsmeldingRequest(uuid, "12345678901", LocalDate.now(), YtelseType.FORELDREPENGER,
+            new InntektsmeldingRequest.InntektInfo(BigDecimal.valueOf(25000.00), List.of()), null, List.of(),
+            new InntektsmeldingRequest.Kontaktinformasjon("Kontaktperson", "12345678"),
+            new InntektsmeldingRequest.Avsender("TestSystem", "1.0.0")), forespørsel);
+        fpinntektsmeldingTjeneste.hentForespørsel(uuid);
+        verify(fpinntektsmeldingKlient, times(2)).hentForespørsel(uuid);
+    }
+
+    @Test
+    void skal_slå_opp_forespørsel_til_innsending_i_eget_skott_og_dele_cache_med_søk() {
+        var uuid = UUID.randomUUID();
+        var response = new ForespørselResponse(null, uuid, new OrganisasjonsnummerDto("999999999"), new FødselsnummerDto("12345678901"),
+            LocalDate.now(), LocalDate.now(), ForespørselStatusDto.UNDER_BEHANDLING, YtelseTypeDto.FORELDREPENGER, LocalDateTime.now());
+        when(fpinntektsmeldingKlient.hentForespørselForInnsending(uuid)).thenReturn(response);
+
+        var forespørsel = fpinntektsmeldingTjeneste.hentForespørselForInnsending(uuid);
+
+        assertThat(fpinntektsmeldingTjeneste.hentForespørsel(uuid)).isEqualTo(forespørsel);
+        verify(fpinntektsmeldingKlient, never()).hentForespørsel(uuid);
+    }
+
+    @Test
+    void skal_huske_at_forespørsel_ikke_finnes() {
+        var uuid = UUID.randomUUID();
+        when(fpinntektsmeldingKlient.hentForespørsel(uuid)).thenReturn(null);
+
+        assertThat(fpinntektsmeldingTjeneste.hentForespørsel(uuid)).isNull();
+        assertThat(fpinntektsmeldingTjeneste.hentForespørsel(uuid)).isNull();
+        verify(fpinntektsmeldingKlient, times(1)).hentForespørsel(uuid);
+    }
+
+    @Test
+    void skal_hente_forespørsler_med_id_en_gang_per_id() {
+        var uuid = UUID.randomUUID();
+        var ukjent = UUID.randomUUID();
+        var response = new ForespørselResponse(null, uuid, new OrganisasjonsnummerDto("999999999"), new FødselsnummerDto("12345678901"),
+            LocalDate.now(), LocalDate.now(), ForespørselStatusDto.UNDER_BEHANDLING, YtelseTypeDto.FORELDREPENGER, LocalDateTime.now());
+        when(fpinntektsmeldingKlient.hentForespørsel(uuid)).thenReturn(response);
+        when(fpinntektsmeldingKlient.hentForespørsel(ukjent)).thenReturn(null);
+
+        var forespørsler = fpinntektsmeldingTjeneste.hentForespørslerMedId(List.of(uuid, ukjent, uuid), 4);
+
+        assertThat(forespørsler).extracting(Forespørsel::forespørselUuid).containsExactly(uuid);
+        verify(fpinntektsmeldingKlient, times(1)).hentForespørsel(uuid);
+    }
+
     @Test
     void skal_hente_tom_liste_forespørsler() {
         var orgnummer = "999999999";
-        when(fpinntektsmeldingKlient.hentForespørsler(new ForespørselFilterRequest(new OrganisasjonsnummerDto(orgnummer),
+        when(fpinntektsmeldingKlient.hentForespørsler(eq(new ForespørselFilterRequest(new OrganisasjonsnummerDto(orgnummer),
             null,
             null,
             null,
             null,
             null,
-            null))).thenReturn(
-            List.of());
+            null)), any())).thenAnswer(mapTilSvar());
         var forespørsler = fpinntektsmeldingTjeneste.hentForespørsler(orgnummer, null, null, null, null, null, null);
         assertThat(forespørsler).isEmpty();
     }
@@ -88,14 +154,13 @@ class FpinntektsmeldingTjenesteTest {
         var response2 = new ForespørselResponse(3L, UUID.randomUUID(), new OrganisasjonsnummerDto(orgnummer), new FødselsnummerDto(fødselsnummer),
             LocalDate.now(), LocalDate.now(), ForespørselStatusDto.UTGÅTT, YtelseTypeDto.SVANGERSKAPSPENGER, LocalDateTime.now());
 
-        when(fpinntektsmeldingKlient.hentForespørsler(new ForespørselFilterRequest(new OrganisasjonsnummerDto(orgnummer),
+        when(fpinntektsmeldingKlient.hentForespørsler(eq(new ForespørselFilterRequest(new OrganisasjonsnummerDto(orgnummer),
             null,
             null,
             null,
             null,
             null,
-            1L))).thenReturn(
-            List.of(response1, response2));
+            1L)), any())).thenAnswer(mapTilSvar(response1, response2));
         var forespørsler = fpinntektsmeldingTjeneste.hentForespørsler(orgnummer, null, null, null, null, null, 1L);
         assertThat(forespørsler).hasSize(2);
         var forespørsel1 = forespørsler.stream().filter(f -> f.ytelseType().equals(YtelseType.FORELDREPENGER)).findFirst().orElseThrow();
@@ -111,6 +176,25 @@ class FpinntektsmeldingTjenesteTest {
 
     }
 
+    @Test
+    void skal_bare_lese_maks_antall_forespørsler_fra_svaret() {
+        var orgnummer = "999999999";
+        var responser = LongStream.rangeClosed(1, 5)
+            .mapToObj(loepenr -> new ForespørselResponse(loepenr, UUID.randomUUID(), new OrganisasjonsnummerDto(orgnummer), new FødselsnummerDto("123"),
+                LocalDate.now(), LocalDate.now(), ForespørselStatusDto.UNDER_BEHANDLING, YtelseTypeDto.FORELDREPENGER, LocalDateTime.now()))
+            .toArray(ForespørselResponse[]::new);
+        var lest = new AtomicInteger();
+        when(fpinntektsmeldingKlient.hentForespørsler(any(), any())).thenAnswer(invocation -> {
+            Function<Stream<ForespørselResponse>, Object> behandling = invocation.getArgument(1);
+            return behandling.apply(Stream.of(responser).peek(r -> lest.incrementAndGet()));
+        });
+
+        var forespørsler = fpinntektsmeldingTjeneste.hentForespørsler(orgnummer, null, null, null, null, null, null, 3);
+
+        assertThat(forespørsler).extracting(Forespørsel::loepenr).containsExactly(1L, 2L, 3L);
+        assertThat(lest).hasValue(3);
+    }
+
     @Test
     void skal_mappe_status_fra_hentInntektsmelding_respons() {
         var uuid = UUID.randomUUID();
@@ -282,4 +366,12 @@ class FpinntektsmeldingTjenesteTest {
         assertThat(response).isEqualTo(responseResultat);
         verify(fpinntektsmeldingKlient).sendInntektsmelding(any());
     }
+
+    @SafeVarargs
+    private static <T> Answer<Object> mapTilSvar(T... responser) {
+        return invocation -> {
+            Function<Stream<T>, Object> behandling = invocation.getArgument(1);
+            return behandling.apply(Stream.of(responser));
+        };
+    }
 }
@@ -0,0 +1,184 @@
+package no.nav.foreldrepenger.inntektsmelding.api.lasttest;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne.ForespørselFilter;
+import no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne.InntektsmeldingFilter;
+import no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne.InntektsmeldingRequest;
+import no.nav.foreldrepenger.inntektsmelding.api.typer.YtelseType;
+import no.nav.vedtak.mapper.json.DefaultJsonMapper;
+
+/**
+ * Sender en blanding av innsending, oppslag og søk mot tjenesten med fast ankomstrate, uavhengig av hvor fort tjenesten
+ * svarer. Svartiden regnes fra når kallet skulle vært sendt, slik at kø hos klienten også kommer med i tallene og ikke
+ * skjules når tjenesten blir treg (coordinated omission).
+ */
+class Arbeidslast {
+
+    private static final long MAKS_SVARTID_NANOS = Duration.ofMinutes(5).toNanos();
+
+    /**
+     * Et endepunkt med vekt i blandingen og en oppskrift på et tilfeldig kall.
+     */
+    record Endepunkt(String navn, int vekt, Supplier<HttpRequest.Builder> kall) {
+    }
+
+    /**
+     * Målinger for ett endepunkt. Histogrammet er i nanosekunder.
+     */
+    record Målinger(Histogram svartider, Map<Integer, LongAdder> statuser, LongAdder nettverksfeil) {
+        Målinger() {
+            this(new ConcurrentHistogram(MAKS_SVARTID_NANOS, 3), new ConcurrentHashMap<>(), new LongAdder());
+        }
+
+        void registrer(long svartidNanos, int status) {
+            svartider.recordValue(Math.min(svartidNanos, MAKS_SVARTID_NANOS));
+            statuser.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    private final URI baseUrl;
+    private final List<Endepunkt> endepunkter;
+    private final int totalVekt;
+    private final List<String> tokens;
+    private final List<UUID> forespørsler;
+    private final HttpClient klient = HttpClient.newBuilder()
+        .executor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lasttest-klient-", 0).factory()))
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    Arbeidslast(URI baseUrl, Map<String, Integer> blanding, List<String> tokens, int antallForespørsler) {
+        this.baseUrl = baseUrl;
+        this.tokens = tokens;
+        this.forespørsler = new ArrayList<>(antallForespørsler);
+        for (int i = 0; i < antallForespørsler; i++) {
+            forespørsler.add(UUID.randomUUID());
+        }
+        var alle = Map.of(
+            "send-inn", (Supplier<HttpRequest.Builder>) this::sendInn,
+            "hent-forespoersel", this::hentForespørsel,
+            "sok-forespoersler", this::søkForespørsler,
+            "hent-inntektsmelding", this::hentInntektsmelding,
+            "sok-inntektsmeldinger", this::søkInntektsmeldinger);
+        this.endepunkter = blanding.entrySet().stream()
+            .filter(e -> e.getValue() > 0)
+            .map(e -> {
+                var kall = alle.get(e.getKey());
+                if (kall == null) {
+                    throw new IllegalArgumentException("Ukjent endepunkt " + e.getKey() + ", gyldige er " + alle.keySet());
+                }
+                return new Endepunkt(e.getKey(), e.getValue(), kall);
+            })
+            .toList();
+        this.totalVekt = endepunkter.stream().mapToInt(Endepunkt::vekt).sum();
+    }
+
+    /**
+     * Kjører blandingen med fast ankomstrate i oppgitt tid, og venter til alle kall har svart.
+     */
+    Map<String, Målinger> kjør(Duration varighet, int kallPerSekund) {
+        var målinger = new LinkedHashMap<String, Målinger>();
+        endepunkter.forEach(e -> målinger.put(e.navn(), new Målinger()));
+        var intervall = 1_000_000_000L / kallPerSekund;
+        var antall = varighet.toSeconds() * kallPerSekund;
+        try (var executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lasttest-", 0).factory())) {
+            var start = System.nanoTime();
+            for (long i = 0; i < antall; i++) {
+                var planlagt = start + i * intervall;
+                var vent = planlagt - System.nanoTime();
+                if (vent > 0) {
+                    LockSupport.parkNanos(vent);
+                }
+                var endepunkt = velg();
+                var måling = målinger.get(endepunkt.navn());
+                executor.execute(() -> send(endepunkt, måling, planlagt));
+            }
+        }
+        return målinger;
+    }
+
+    private void send(Endepunkt endepunkt, Målinger måling, long planlagt) {
+        var request = endepunkt.kall().get()
+            .header("Authorization", "Bearer " + tilfeldig(tokens))
+            .timeout(Duration.ofSeconds(30))
+            .build();
+        try {
+            var response = klient.send(request, HttpResponse.BodyHandlers.discarding());
+            måling.registrer(System.nanoTime() - planlagt, response.statusCode());
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            måling.nettverksfeil().increment();
+            måling.svartider().recordValue(Math.min(System.nanoTime() - planlagt, MAKS_SVARTID_NANOS));
+        }
+    }
+
+    private Endepunkt velg() {
+        var trekk = ThreadLocalRandom.current().nextInt(totalVekt);
+        for (var endepunkt : endepunkter) {
+            trekk -= endepunkt.vekt();
+            if (trekk < 0) {
+                return endepunkt;
+            }
+        }
+        return endepunkter.getLast();
+    }
+
+    private HttpRequest.Builder sendInn() {
+        var request = new InntektsmeldingRequest(tilfeldig(forespørsler), Avhengigheter.FNR, Avhengigheter.STARTDATO, YtelseType.FORELDREPENGER,
+            new InntektsmeldingRequest.InntektInfo(new BigDecimal("50000.00"), List.of()),
+            new InntektsmeldingRequest.Refusjon(new BigDecimal("30000.00"), List.of()),
+            List.of(),
+            new InntektsmeldingRequest.Kontaktinformasjon("Ola Nordmann", "12345678"),
+            new InntektsmeldingRequest.Avsender("Lasttest", "1.0"));
+        return post("/v1/inntektsmelding/send-inn", request);
+    }
+
+    private HttpRequest.Builder hentForespørsel() {
+        return HttpRequest.newBuilder(baseUrl.resolve("/v1/forespoersel/" + tilfeldig(forespørsler))).GET();
+    }
+
+    private HttpRequest.Builder søkForespørsler() {
+        return post("/v1/forespoersel/forespoersler",
+            new ForespørselFilter(Avhengigheter.ORGNR, null, null, null, null, null, null, null, null, null));
+    }
+
+    private HttpRequest.Builder hentInntektsmelding() {
+        return HttpRequest.newBuilder(baseUrl.resolve("/v1/inntektsmelding/hent/" + UUID.randomUUID())).GET();
+    }
+
+    private HttpRequest.Builder søkInntektsmeldinger() {
+        return post("/v1/inntektsmelding/hent/inntektsmeldinger",
+            new InntektsmeldingFilter(Avhengigheter.ORGNR, null, null, null, null, null, null, null, null, null, null));
+    }
+
+    private HttpRequest.Builder post(String sti, Object body) {
+        return HttpRequest.newBuilder(baseUrl.resolve(sti))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(DefaultJsonMapper.toJson(body)));
+    }
+
+    private static <T> T tilfeldig(List<T> liste) {
+        return liste.get(ThreadLocalRandom.current().nextInt(liste.size()));
+    }
+}
@@ -0,0 +1,199 @@
+package no.nav.foreldrepenger.inntektsmelding.api.lasttest;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinnPdp.PdpRequest;
+import no.nav.foreldrepenger.inntektsmelding.felles.AvsenderSystemDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.ForespørselStatusDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.FødselsnummerDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.InnsendingstypeDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.InntektsmeldingStatusDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.KontaktpersonDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.OrganisasjonsnummerDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.SøktRefusjonDto;
+import no.nav.foreldrepenger.inntektsmelding.felles.YtelseTypeDto;
+import no.nav.foreldrepenger.inntektsmelding.imapi.forespørsel.ForespørselResponse;
+import no.nav.foreldrepenger.inntektsmelding.imapi.inntektsmelding.HentInntektsmeldingResponse;
+import no.nav.foreldrepenger.inntektsmelding.imapi.inntektsmelding.SendInntektsmeldingResponse;
+import no.nav.foreldrepenger.konfig.Environment;
+import no.nav.vedtak.mapper.json.DefaultJsonMapper;
+
+/**
+ * Stand-ins for Texas, Altinn token exchange, Altinn PDP og fpinntektsmelding. Alle tokens på formen
+ * lasttest-&lt;konsument&gt;-&lt;system&gt; er gyldige, alle systemer har tilgang til {@link #ORGNR}, og alle forespørsler
+ * finnes og kan besvares.
+ */
+class Avhengigheter implements AutoCloseable {
+
+    static final String ORGNR = "999999999";
+    static final String FNR = "12345678901";
+    static final LocalDate STARTDATO = LocalDate.of(2025, 6, 1);
+    static final String FPINNTEKTSMELDING_KONTEKST = "/fpinntektsmelding";
+
+    private static final int ANTALL_I_SØK = Environment.current().getProperty("lasttest.antall.i.sok", Integer.class, 20);
+    private static final boolean STOKK_PDP_SVAR = Environment.current().getProperty("lasttest.altinn.pdp.stokk", Boolean.class, true);
+    private static final String ORGANISASJONSNUMMER = "urn:altinn:organization:identifier-no";
+
+    private final AtomicLong løpenummer = new AtomicLong();
+    private final StubServer texas;
+    private final StubServer altinnToken;
+    private final StubServer altinnPdp;
+    private final StubServer fpinntektsmelding;
+
+    Avhengigheter() {
+        this.texas = new StubServer("texas", Stubadferd.fraKonfig("texas", 5, 50))
+            .håndter("/api/v1/introspect", this::introspeksjon)
+            .håndter("/api/v1/token", e -> StubServer.Svar.json("{\"access_token\":\"lasttest-stub\",\"expires_in\":3600,\"token_type\":\"Bearer\"}"))
+            .start();
+        this.altinnToken = new StubServer("altinn-token", Stubadferd.fraKonfig("altinn.token", 30, 200))
+            .håndter("/", e -> StubServer.Svar.json("\"lasttest-altinn-token\""))
+            .start();
+        this.altinnPdp = new StubServer("altinn-pdp", Stubadferd.fraKonfig("altinn.pdp", 40, 300))
+            .håndter("/authorization/api/v1/authorize", this::pdp)
+            .start();
+        this.fpinntektsmelding = new StubServer("fpinntektsmelding", Stubadferd.fraKonfig("fpinntektsmelding", 20, 250))
+            .håndter(FPINNTEKTSMELDING_KONTEKST + "/api/imapi/foresporsel/hent/foresporsler", e -> json(lagForespørsler()))
+            .håndter(FPINNTEKTSMELDING_KONTEKST + "/api/imapi/foresporsel/hent/", e -> json(lagForespørsel(sisteDel(e))))
+            .håndter(FPINNTEKTSMELDING_KONTEKST + "/api/imapi/inntektsmelding/send-inntektsmelding",
+                e -> json(new SendInntektsmeldingResponse(true, UUID.randomUUID(), InntektsmeldingStatusDto.MOTTATT, null)))
+            .håndter(FPINNTEKTSMELDING_KONTEKST + "/api/imapi/inntektsmelding/hent/inntektsmeldinger", e -> json(lagInntektsmeldinger()))
+            .håndter(FPINNTEKTSMELDING_KONTEKST + "/api/imapi/inntektsmelding/hent/", e -> json(lagInntektsmelding(sisteDel(e))))
+            .start();
+    }
+
+    /**
+     * Properties som peker tjenesten mot stubbene i stedet for ekte avhengigheter.
+     */
+    Map<String, String> properties() {
+        var properties = new HashMap<String, String>();
+        properties.put("NAIS_TOKEN_ENDPOINT", texas.url() + "/api/v1/token");
+        properties.put("NAIS_TOKEN_EXCHANGE_ENDPOINT", texas.url() + "/api/v1/token/exchange");
+        properties.put("NAIS_TOKEN_INTROSPECTION_ENDPOINT", texas.url() + "/api/v1/introspect");
+        // application-vtp.properties henter Azure-tokenet til fpinntektsmelding fra VTP, stubben svarer på samme format
+        properties.put("AZURE_OPENID_CONFIG_TOKEN_ENDPOINT", texas.url() + "/api/v1/token");
+        properties.put("altinn.tre.token.exchange.path", altinnToken.url() + "/authentication/api/v1/exchange/maskinporten");
+        properties.put("altinn.tre.base.url", altinnPdp.url().toString());
+        properties.put("altinn.tre.inntektsmelding.ressurs", "nav_foreldrepenger_inntektsmelding");
+        properties.put("ALTINN_TRE_SUBSCRIPTION_KEY", "lasttest");
+        properties.put("fpinntektsmelding.override.url", fpinntektsmelding.url() + FPINNTEKTSMELDING_KONTEKST);
+        return properties;
+    }
+
+    static String token(int konsument, int system) {
+        return "lasttest-" + konsument + "-" + system;
+    }
+
+    private StubServer.Svar introspeksjon(HttpExchange exchange) {
+        var forespørsel = DefaultJsonMapper.fromJson(StubServer.lesBody(exchange), Map.class);
+        var deler = String.valueOf(forespørsel.get("token")).split("-");
+        if (deler.length != 3 || !deler[0].equals("lasttest")) {
+            return StubServer.Svar.json("{\"active\":false,\"error\":\"ukjent token\"}");
+        }
+        var konsument = String.format("%09d", Integer.parseInt(deler[1]));
+        var systembruker = new UUID(Long.parseLong(deler[1]), Long.parseLong(deler[2])).toString();
+        return StubServer.Svar.json("""
+            {"active":true,"scope":"nav:inntektsmelding/foreldrepenger","exp":%d,
+             "consumer":{"authority":"iso6523-actorid-upis","ID":"0192:%s"},
+             "authorization_details":[{"type":"urn:altinn:systemuser","systemuser_id":["%s"],"system_id":"%s_lasttest",
+               "systemuser_org":{"authority":"iso6523-actorid-upis","ID":"0192:%s"}}]}
+            """.formatted(Instant.now().plusSeconds(3600).getEpochSecond(), konsument, systembruker, konsument, ORGNR));
+    }
+
+    /**
+     * Svarer som Altinn PDP: én beslutning per ressurs, Permit bare for {@link #ORGNR}. Organisasjonsnummeret sendes tilbake
+     * i beslutningen når requesten ber om det med includeInResult. Med lasttest.altinn.pdp.stokk (standard på) kommer
+     * beslutningene i tilfeldig rekkefølge, siden PDP ikke garanterer samme rekkefølge som i requesten.
+     */
+    private StubServer.Svar pdp(HttpExchange exchange) {
+        var pdpRequest = DefaultJsonMapper.fromJson(StubServer.lesBody(exchange), PdpRequest.class);
+        var beslutninger = new ArrayList<Map<String, Object>>();
+        for (var ressurs : pdpRequest.request().resource()) {
+            var organisasjonsnummer = ressurs.attribute().stream()
+                .filter(a -> ORGANISASJONSNUMMER.equals(a.attributeId()))
+                .findFirst();
+            var beslutning = new HashMap<String, Object>();
+            beslutning.put("decision", organisasjonsnummer.filter(a -> ORGNR.equals(a.value())).isPresent() ? "Permit" : "Deny");
+            organisasjonsnummer.filter(a -> Boolean.TRUE.equals(a.includeInResult())).ifPresent(a -> beslutning.put("category",
+                List.of(Map.of("categoryId", "urn:oasis:names:tc:xacml:3.0:attribute-category:resource",
+                    "attribute", List.of(Map.of("attributeId", a.attributeId(), "value", a.value()))))));
+            beslutninger.add(beslutning);
+        }
+        if (STOKK_PDP_SVAR) {
+            Collections.shuffle(beslutninger);
+        }
+        return json(Map.of("response", beslutninger));
+    }
+
+    private ForespørselResponse lagForespørsel(UUID uuid) {
+        return new ForespørselResponse(løpenummer.incrementAndGet(), uuid, new OrganisasjonsnummerDto(ORGNR), new FødselsnummerDto(FNR),
+            STARTDATO, STARTDATO, ForespørselStatusDto.UNDER_BEHANDLING, YtelseTypeDto.FORELDREPENGER, LocalDateTime.now());
+    }
+
+    private List<ForespørselResponse> lagForespørsler() {
+        var forespørsler = new ArrayList<ForespørselResponse>(ANTALL_I_SØK);
+        for (int i = 0; i < ANTALL_I_SØK; i++) {
+            forespørsler.add(lagForespørsel(UUID.randomUUID()));
+        }
+        return forespørsler;
+    }
+
+    private HentInntektsmeldingResponse lagInntektsmelding(UUID uuid) {
+        return new HentInntektsmeldingResponse(
+            løpenummer.incrementAndGet(),
+            uuid,
+            UUID.randomUUID(),
+            new FødselsnummerDto(FNR),
+            YtelseTypeDto.FORELDREPENGER,
+            new OrganisasjonsnummerDto(ORGNR),
+            new KontaktpersonDto("Ola Nordmann", "12345678"),
+            STARTDATO,
+            BigDecimal.valueOf(50000),
+            LocalDateTime.now(),
+            BigDecimal.valueOf(30000),
+            null,
+            new AvsenderSystemDto("Lasttest", "1.0"),
+            List.of(new SøktRefusjonDto(STARTDATO, BigDecimal.valueOf(30000))),
+            List.of(),
+            List.of(),
+            InntektsmeldingStatusDto.GODKJENT,
+            InnsendingstypeDto.FORESPURT_EKSTERN,
+            STARTDATO);
+    }
+
+    private List<HentInntektsmeldingResponse> lagInntektsmeldinger() {
+        var inntektsmeldinger = new ArrayList<HentInntektsmeldingResponse>(ANTALL_I_SØK);
+        for (int i = 0; i < ANTALL_I_SØK; i++) {
+            inntektsmeldinger.add(lagInntektsmelding(UUID.randomUUID()));
+        }
+        return inntektsmeldinger;
+    }
+
+    private static UUID sisteDel(HttpExchange exchange) {
+        var sti = exchange.getRequestURI().getPath();
+        return UUID.fromString(sti.substring(sti.lastIndexOf('/') + 1));
+    }
+
+    private static StubServer.Svar json(Object body) {
+        return StubServer.Svar.json(DefaultJsonMapper.toJson(body));
+    }
+
+    @Override
+    public void close() {
+        texas.close();
+        altinnToken.close();
+        altinnPdp.close();
+        fpinntektsmelding.close();
+    }
+}
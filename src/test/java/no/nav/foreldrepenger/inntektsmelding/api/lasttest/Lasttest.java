@@ -0,0 +1,147 @@
+package no.nav.foreldrepenger.inntektsmelding.api.lasttest;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.JettyDevServer;
+import no.nav.foreldrepenger.konfig.Environment;
+
+/**
+ * Ende-til-ende lasttest: starter stubber for avhengighetene og tjenesten selv med {@link JettyDevServer}, kjører en
+ * oppvarming og deretter en målt runde med {@link Arbeidslast}, og logger gjennomstrømning og svartider per endepunkt.
+ * <p>
+ * Kjøres med {@code mvn test-compile exec:java -Dexec.mainClass=no.nav.foreldrepenger.inntektsmelding.api.lasttest.Lasttest
+ * -Dexec.classpathScope=test}. Last, blanding og adferden til stubbene styres med lasttest.*-properties.
+ * <p>
+ * Med {@code -Dlasttest.traadmodus=virtuelle} eller {@code plattform} velges om Jetty håndterer requester på virtuelle tråder
+ * eller i den vanlige trådpoolen. For å sammenligne modusene kjøres testen én gang per modus med samme last og fast heap,
+ * f.eks. {@code MAVEN_OPTS="-Xms512m -Xmx512m"}. Rapporten viser modus, maks heap, høyeste målte heapbruk og høyeste antall tråder.
+ */
+public class Lasttest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Lasttest.class);
+    private static final String STANDARD_BLANDING =
+        "send-inn=10,hent-forespoersel=40,sok-forespoersler=25,hent-inntektsmelding=15,sok-inntektsmeldinger=10";
+
+    public static void main(String[] args) throws Exception {
+        var env = Environment.current();
+        var kallPerSekund = env.getProperty("lasttest.kall.per.sekund", Integer.class, 200);
+        var oppvarming = Duration.ofSeconds(env.getProperty("lasttest.oppvarming.sekunder", Integer.class, 10));
+        var varighet = Duration.ofSeconds(env.getProperty("lasttest.varighet.sekunder", Integer.class, 60));
+        var antallSystemer = env.getProperty("lasttest.antall.systemer", Integer.class, 50);
+        var antallForespørsler = env.getProperty("lasttest.antall.forespoersler", Integer.class, 10_000);
+        var blanding = lesBlanding(env.getProperty("lasttest.miks", STANDARD_BLANDING));
+        var trådmodus = env.getProperty("lasttest.traadmodus", "plattform");
+        if (!trådmodus.equals("virtuelle") && !trådmodus.equals("plattform")) {
+            throw new IllegalArgumentException("lasttest.traadmodus må være virtuelle eller plattform, var " + trådmodus);
+        }
+        System.setProperty("server.virtuelle.traader", String.valueOf(trådmodus.equals("virtuelle")));
+
+        try (var avhengigheter = new Avhengigheter()) {
+            avhengigheter.properties().forEach(System::setProperty);
+            var baseUrl = startTjenesten();
+
+            var tokens = new ArrayList<String>(antallSystemer);
+            for (int i = 0; i < antallSystemer; i++) {
+                tokens.add(Avhengigheter.token(i % 10 + 1, i + 1));
+            }
+            var arbeidslast = new Arbeidslast(baseUrl, blanding, tokens, antallForespørsler);
+
+            LOG.info("Varmer opp i {} med {} kall/s", oppvarming, kallPerSekund);
+            arbeidslast.kjør(oppvarming, kallPerSekund);
+            LOG.info("Måler i {} med {} kall/s, blanding {}, {} tråder", varighet, kallPerSekund, blanding, trådmodus);
+            var tråder = ManagementFactory.getThreadMXBean();
+            tråder.resetPeakThreadCount();
+            var høyesteHeap = new AtomicLong();
+            var heapmåler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("lasttest-heap").factory());
+            heapmåler.scheduleAtFixedRate(() -> høyesteHeap.accumulateAndGet(
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max), 0, 100, TimeUnit.MILLISECONDS);
+            var start = System.nanoTime();
+            var målinger = arbeidslast.kjør(varighet, kallPerSekund);
+            var tid = Duration.ofNanos(System.nanoTime() - start);
+            heapmåler.shutdownNow();
+            rapporter(målinger, tid);
+            LOG.info("Trådmodus {}, maks heap {} MB, høyeste heapbruk {} MB, høyeste antall plattformtråder {}", trådmodus,
+                Runtime.getRuntime().maxMemory() / (1024 * 1024), høyesteHeap.get() / (1024 * 1024), tråder.getPeakThreadCount());
+        }
+        System.exit(0);
+    }
+
+    private static URI startTjenesten() throws Exception {
+        int port;
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        var tråd = Thread.ofPlatform().daemon().name("lasttest-jetty").start(() -> {
+            try {
+                JettyDevServer.main(new String[]{String.valueOf(port)});
+            } catch (Exception e) {
+                LOG.error("Klarte ikke å starte tjenesten", e);
+            }
+        });
+        var baseUrl = URI.create("http://localhost:" + port);
+        var klient = HttpClient.newHttpClient();
+        var isAlive = HttpRequest.newBuilder(baseUrl.resolve("/internal/health/isAlive")).timeout(Duration.ofSeconds(1)).build();
+        var frist = System.nanoTime() + Duration.ofMinutes(2).toNanos();
+        while (System.nanoTime() < frist && tråd.isAlive()) {
+            try {
+                if (klient.send(isAlive, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return baseUrl;
+                }
+            } catch (IOException e) {
+                // Ikke oppe ennå
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("Tjenesten svarte ikke på " + isAlive.uri());
+    }
+
+    private static Map<String, Integer> lesBlanding(String blanding) {
+        var resultat = new LinkedHashMap<String, Integer>();
+        for (var del : blanding.split(",")) {
+            var navnOgVekt = del.trim().split("=");
+            resultat.put(navnOgVekt[0].trim(), Integer.parseInt(navnOgVekt[1].trim()));
+        }
+        return resultat;
+    }
+
+    private static void rapporter(Map<String, Arbeidslast.Målinger> målinger, Duration tid) {
+        var sekunder = tid.toMillis() / 1000.0;
+        var rapport = new StringBuilder(String.format("%n%-22s %8s %8s %8s %8s %8s %8s %8s  %s%n",
+            "endepunkt", "kall", "kall/s", "p50", "p90", "p99", "p99.9", "maks", "statuser"));
+        målinger.forEach((navn, måling) -> {
+            var h = måling.svartider();
+            var statuser = new TreeMap<>(måling.statuser()).entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue().sum())
+                .collect(Collectors.joining(" "));
+            if (måling.nettverksfeil().sum() > 0) {
+                statuser += " nettverksfeil=" + måling.nettverksfeil().sum();
+            }
+            rapport.append(String.format("%-22s %8d %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f  %s%n", navn, h.getTotalCount(),
+                h.getTotalCount() / sekunder, millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(90)),
+                millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()), statuser));
+        });
+        LOG.info("Resultat etter {}, svartider i ms:{}", tid, rapport);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
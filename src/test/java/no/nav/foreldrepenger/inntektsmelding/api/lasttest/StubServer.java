@@ -0,0 +1,106 @@
+package no.nav.foreldrepenger.inntektsmelding.api.lasttest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Lokal stand-in for en avhengighet, med svartider og feil etter {@link Stubadferd}. Hvert kall håndteres på egen
+ * virtuell tråd, slik at stubben selv ikke blir flaskehalsen.
+ */
+class StubServer implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(StubServer.class);
+
+    /**
+     * Svar fra en stub. Body er null for tomt svar.
+     */
+    record Svar(int status, String body) {
+        static Svar json(String body) {
+            return new Svar(200, body);
+        }
+    }
+
+    private final String navn;
+    private final Stubadferd adferd;
+    private final HttpServer server;
+
+    StubServer(String navn, Stubadferd adferd) {
+        this.navn = navn;
+        this.adferd = adferd;
+        try {
+            this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.setExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stub-" + navn + "-", 0).factory()));
+    }
+
+    /**
+     * @param håndterer lager svaret ut fra kallet. Kjøres etter at svartiden er ventet ut, og ikke for kall som skal feile.
+     */
+    StubServer håndter(String sti, Function<HttpExchange, Svar> håndterer) {
+        server.createContext(sti, exchange -> {
+            try {
+                Thread.sleep(adferd.trekkSvartid());
+                var svar = adferd.skalFeile() ? new Svar(adferd.feilstatus(), null) : håndterer.apply(exchange);
+                send(exchange, svar);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.warn("Stub {} feilet på {}", navn, exchange.getRequestURI(), e);
+                send(exchange, new Svar(500, null));
+            } finally {
+                exchange.close();
+            }
+        });
+        return this;
+    }
+
+    StubServer start() {
+        server.start();
+        LOG.info("Stub {} lytter på {} ({})", navn, url(), adferd);
+        return this;
+    }
+
+    URI url() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    static String lesBody(HttpExchange exchange) {
+        try {
+            return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, Svar svar) {
+        try {
+            if (svar.body() == null) {
+                exchange.sendResponseHeaders(svar.status(), -1);
+                return;
+            }
+            var bytes = svar.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(svar.status(), bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch (IOException e) {
+            LOG.debug("Klarte ikke svare på {}", exchange.getRequestURI(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,59 @@
+package no.nav.foreldrepenger.inntektsmelding.api.lasttest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import no.nav.foreldrepenger.konfig.Environment;
+
+/**
+ * Hvor tregt og hvor ofte en stubbet avhengighet feiler. Svartidene er log-normalfordelte ut fra median og 99-persentil,
+ * slik at stubben også gir den lange halen ekte avhengigheter har.
+ *
+ * @param median median svartid
+ * @param p99 99-persentilen av svartiden, minst like stor som medianen
+ * @param feilandel andel kall som svarer med feilstatus, mellom 0 og 1
+ * @param feilstatus HTTP-statusen feilende kall svarer med
+ */
+record Stubadferd(Duration median, Duration p99, double feilandel, int feilstatus) {
+
+    private static final double Z_99 = 2.326;
+
+    Stubadferd {
+        if (p99.compareTo(median) < 0) {
+            throw new IllegalArgumentException("p99 kan ikke være kortere enn medianen, fikk " + p99 + " og " + median);
+        }
+        if (feilandel < 0 || feilandel > 1) {
+            throw new IllegalArgumentException("Feilandel må være mellom 0 og 1, fikk " + feilandel);
+        }
+    }
+
+    /**
+     * Leser lasttest.&lt;navn&gt;.median.millis, .p99.millis, .feilandel og .feilstatus, med oppgitte standardverdier.
+     */
+    static Stubadferd fraKonfig(String navn, int medianMillis, int p99Millis) {
+        var env = Environment.current();
+        var prefiks = "lasttest." + navn;
+        return new Stubadferd(Duration.ofMillis(env.getProperty(prefiks + ".median.millis", Integer.class, medianMillis)),
+            Duration.ofMillis(env.getProperty(prefiks + ".p99.millis", Integer.class, p99Millis)),
+            env.getProperty(prefiks + ".feilandel", Double.class, 0.0),
+            env.getProperty(prefiks + ".feilstatus", Integer.class, 503));
+    }
+
+    Duration trekkSvartid() {
+        if (median.isZero()) {
+            return Duration.ZERO;
+        }
+        var sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+        var nanos = median.toNanos() * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian());
+        return Duration.ofNanos((long) nanos);
+    }
+
+    boolean skalFeile() {
+        return feilandel > 0 && ThreadLocalRandom.current().nextDouble() < feilandel;
+    }
+
+    @Override
+    public String toString() {
+        return "median " + median.toMillis() + " ms, p99 " + p99.toMillis() + " ms, feilandel " + feilandel;
+    }
+}
@@ -0,0 +1,103 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.auth.TokenKontekst;
+import no.nav.vedtak.sikkerhet.kontekst.KontekstHolder;
+
+class JettyServerTest {
+
+    private static final String SYSTEMBRUKER = "systembruker";
+
+    private Server server;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void skal_bruke_virtuelle_tråder_når_det_er_slått_på() throws Exception {
+        server = new JettyServer(0).lagServer(true);
+
+        var executor = ((QueuedThreadPool) server.getThreadPool()).getVirtualThreadsExecutor();
+
+        assertThat(executor).isNotNull();
+        var tråd = new CompletableFuture<Thread>();
+        executor.execute(() -> tråd.complete(Thread.currentThread()));
+        assertThat(tråd.get().isVirtual()).isTrue();
+    }
+
+    @Test
+    void skal_ikke_bruke_virtuelle_tråder_som_standard() {
+        server = new JettyServer(0).lagServer(false);
+
+        assertThat(((QueuedThreadPool) server.getThreadPool()).getVirtualThreadsExecutor()).isNull();
+    }
+
+    @Test
+    void skal_holde_kontekst_og_mdc_per_request_på_virtuelle_tråder() throws Exception {
+        server = new JettyServer(0).lagServer(true);
+        server.setHandler(new KontekstHandler());
+        server.start();
+        var port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+
+        var svar = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+        try (var klient = HttpClient.newHttpClient()) {
+            IntStream.range(0, 50).forEach(i -> svar.add(klient.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/"))
+                .header(SYSTEMBRUKER, "systembruker-" + i)
+                .build(), HttpResponse.BodyHandlers.ofString())));
+
+            for (int i = 0; i < svar.size(); i++) {
+                var forventet = "systembruker-" + i;
+                assertThat(svar.get(i).get().body()).isEqualTo("virtuell=true;kontekst=" + forventet + ";mdc=" + forventet);
+            }
+        }
+    }
+
+    /**
+     * Setter kontekst og MDC slik autentiseringsfilteret gjør, og svarer med det som leses tilbake på samme tråd.
+     */
+    private static class KontekstHandler extends Handler.Abstract {
+        @Override
+        public boolean handle(Request request, Response response, Callback callback) {
+            var systembruker = request.getHeaders().get(SYSTEMBRUKER);
+            KontekstHolder.setKontekst(new TokenKontekst("uuid", "999999999", "999999999", systembruker));
+            MDC.put(SYSTEMBRUKER, systembruker);
+            try {
+                // Gir andre requester sjansen til å kjøre på samme bæretråd før konteksten leses
+                Thread.yield();
+                var kontekst = (TokenKontekst) KontekstHolder.getKontekst();
+                var svar = "virtuell=" + Thread.currentThread().isVirtual() + ";kontekst=" + kontekst.getSystemUserId() + ";mdc="
+                    + MDC.get(SYSTEMBRUKER);
+                Content.Sink.write(response, true, svar, callback);
+            } finally {
+                KontekstHolder.fjernKontekst();
+                MDC.clear();
+            }
+            return true;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package no.nav.foreldrepenger.inntektsmelding.api.server.auth;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
@@ -109,6 +111,27 @@ class AuthTjenesteTest {
         assertThat(tokenKontekst.getOrganisasjonNummer().orgnr()).isEqualTo(orgnr);
     }
 
+    @Test
+    void skal_gjenbruke_introspeksjon_for_samme_token() {
+        // Arrange
+        var tokenString = new TokenString("456");
+        var authDetails = new IntrospectTokenResponse.AuthorizationDetails("type",
+            null,
+            List.of("systemuser"),
+            new IntrospectTokenResponse.OrgDetails("999999999", null));
+        var introspectTokenRequest = new IntrospectTokenRequest(IdProvider.MASKINPORTEN, tokenString.token());
+        when(authKlient.introspectToken(introspectTokenRequest)).thenReturn(createIntrospectTokenResponse(true, KORREKT_SCOPE, "minId", List.of(authDetails)));
+
+        // Act
+        authTjeneste.validerOgSettKontekst(tokenString);
+        KontekstHolder.fjernKontekst();
+        authTjeneste.validerOgSettKontekst(tokenString);
+
+        // Assert
+        verify(authKlient, times(1)).introspectToken(introspectTokenRequest);
+        assertThat(KontekstHolder.getKontekst()).isInstanceOf(TokenKontekst.class);
+    }
+
     private static IntrospectTokenResponse createIntrospectTokenResponse(boolean active, String scope, String consumerId, List<IntrospectTokenResponse.AuthorizationDetails> authorizationDetails) {
         return new IntrospectTokenResponse(
             active,
@@ -0,0 +1,163 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinn;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+import no.nav.vedtak.exception.TekniskException;
+
+class AltinnTokenExchangeKlientTest {
+
+    private static final int ANTALL_KALL = 20;
+
+    private final AtomicInteger maskinportenTokenHentet = new AtomicInteger();
+    private final AtomicInteger exchanges = new AtomicInteger();
+    private final Klokke klokke = new Klokke();
+
+    @Test
+    void skal_la_samtidige_kall_dele_én_token_exchange() throws Exception {
+        var startet = new CountDownLatch(1);
+        var slipp = new CountDownLatch(1);
+        var klient = lagKlient(maskinportenToken -> {
+            startet.countDown();
+            vent(slipp);
+            return "altinn-" + exchanges.incrementAndGet();
+        });
+
+        var svar = new ArrayList<CompletableFuture<String>>();
+        try (var tråder = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < ANTALL_KALL; i++) {
+                svar.add(CompletableFuture.supplyAsync(klient::hentAltinn3Token, tråder));
+            }
+            assertThat(startet.await(5, TimeUnit.SECONDS)).isTrue();
+            slipp.countDown();
+        }
+
+        assertThat(svar).allSatisfy(s -> assertThat(s.get()).isEqualTo("altinn-1"));
+        assertThat(exchanges).hasValue(1);
+        assertThat(maskinportenTokenHentet).hasValue(1);
+    }
+
+    @Test
+    void skal_gi_feilet_exchange_til_alle_som_venter_uten_å_cache_den() throws Exception {
+        var startet = new CountDownLatch(1);
+        var slipp = new CountDownLatch(1);
+        var feiler = new AtomicReference<>(true);
+        var klient = lagKlient(maskinportenToken -> {
+            exchanges.incrementAndGet();
+            if (feiler.get()) {
+                startet.countDown();
+                vent(slipp);
+                throw new TekniskException("F-157385", "Kunne ikke hente token");
+            }
+            return "altinn-ok";
+        });
+
+        var svar = new ArrayList<CompletableFuture<String>>();
+        try (var tråder = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < ANTALL_KALL; i++) {
+                svar.add(CompletableFuture.supplyAsync(klient::hentAltinn3Token, tråder));
+            }
+            assertThat(startet.await(5, TimeUnit.SECONDS)).isTrue();
+            slipp.countDown();
+        }
+
+        assertThat(svar).allSatisfy(s -> {
+            var feil = assertThrows(ExecutionException.class, s::get);
+            assertThat(feil.getCause()).isInstanceOf(TekniskException.class);
+        });
+        var feiledeExchanges = exchanges.get();
+
+        feiler.set(false);
+        assertThat(klient.hentAltinn3Token()).isEqualTo("altinn-ok");
+        assertThat(exchanges).hasValue(feiledeExchanges + 1);
+    }
+
+    @Test
+    void skal_fornye_tokenet_i_bakgrunnen_før_det_utløper() throws Exception {
+        var fornyet = new CountDownLatch(1);
+        var klient = lagKlient(maskinportenToken -> {
+            var nummer = exchanges.incrementAndGet();
+            if (nummer > 1) {
+                fornyet.countDown();
+            }
+            return "altinn-" + nummer;
+        });
+        assertThat(klient.hentAltinn3Token()).isEqualTo("altinn-1");
+
+        klokke.gåFram(Duration.ofMinutes(25));
+
+        // Kallet som oppdager at tokenet snart utløper får gjeldende token med en gang
+        assertThat(klient.hentAltinn3Token()).isEqualTo("altinn-1");
+        assertThat(fornyet.await(5, TimeUnit.SECONDS)).isTrue();
+        var frist = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!"altinn-2".equals(klient.hentAltinn3Token()) && System.nanoTime() < frist) {
+            Thread.onSpinWait();
+        }
+        assertThat(klient.hentAltinn3Token()).isEqualTo("altinn-2");
+        assertThat(exchanges).hasValue(2);
+    }
+
+    @Test
+    void skal_ikke_hente_maskinporten_token_når_altinn_token_er_i_cache() {
+        var klient = lagKlient(maskinportenToken -> "altinn-" + exchanges.incrementAndGet());
+
+        klient.hentAltinn3Token();
+        klient.hentAltinn3Token();
+        klient.hentAltinn3Token();
+
+        assertThat(maskinportenTokenHentet).hasValue(1);
+        assertThat(exchanges).hasValue(1);
+    }
+
+    private AltinnTokenExchangeKlient lagKlient(UnaryOperator<String> tokenExchange) {
+        return new AltinnTokenExchangeKlient(() -> "maskinporten-" + maskinportenTokenHentet.incrementAndGet(), tokenExchange, klokke);
+    }
+
+    private static void vent(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Klokke extends Clock {
+        private volatile Instant nå = Instant.parse("2026-01-01T12:00:00Z");
+
+        void gåFram(Duration tid) {
+            nå = nå.plus(tid);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return nå;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinnPdp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import no.nav.vedtak.mapper.json.DefaultJsonMapper;
+
+class PdpKlientTest {
+
+    private static final List<String> ORGNUMRE = List.of("999999999", "888888888", "777777777");
+    private static final Duration KØ_TIMEOUT = Duration.ofMillis(200);
+
+    private final HttpClient httpClient = mock(HttpClient.class);
+    private final ExecutorService kø = Executors.newVirtualThreadPerTaskExecutor();
+    private final PdpKlient klient = new PdpKlient(URI.create("http://localhost/authorization/api/v1/authorize"), "nøkkel",
+        () -> "altinn-token", 1, KØ_TIMEOUT, Duration.ofSeconds(5), kø, httpClient);
+
+    @AfterEach
+    void tearDown() {
+        kø.shutdownNow();
+    }
+
+    @Test
+    void skal_la_kall_utover_maks_samtidige_vente_og_feile_etter_køtimeout() throws Exception {
+        var pågående = new CompletableFuture<HttpResponse<String>>();
+        var besvart = CompletableFuture.completedFuture(permit());
+        doReturn(pågående, besvart).when(httpClient).sendAsync(any(), any());
+
+        var første = kall();
+        verify(httpClient, timeout(5000)).sendAsync(any(), any());
+        var start = System.nanoTime();
+        var andre = kall();
+
+        var feil = catchThrowable(() -> andre.get(5, TimeUnit.SECONDS));
+        assertThat(feil).isInstanceOf(ExecutionException.class);
+        assertThat(feil.getCause()).isInstanceOf(PdpKlient.PdpClientException.class).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(KØ_TIMEOUT);
+        assertThat(første).isNotDone();
+
+        // Plassen frigis når det første kallet får svar, så neste kall slipper til
+        pågående.complete(permit());
+        assertThat(første.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(kall().get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void skal_frigi_plassen_når_kallet_feiler() throws Exception {
+        var besvart = CompletableFuture.completedFuture(permit());
+        doReturn(CompletableFuture.failedFuture(new IOException("brutt forbindelse")), besvart).when(httpClient).sendAsync(any(), any());
+
+        assertThatThrownBy(() -> kall().get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(PdpKlient.PdpClientException.class);
+        assertThat(kall().get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void skal_frigi_plassen_når_sendAsync_kaster() throws Exception {
+        var besvart = CompletableFuture.completedFuture(permit());
+        doThrow(new IllegalArgumentException("ugyldig request"))
+            .doReturn(besvart)
+            .when(httpClient).sendAsync(any(), any());
+
+        assertThatThrownBy(() -> kall().get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(PdpKlient.PdpClientException.class);
+        assertThat(kall().get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void skal_frigi_plassen_når_henting_av_altinn_token_feiler() throws Exception {
+        var tokenFeiler = new PdpKlient(URI.create("http://localhost/authorization/api/v1/authorize"), "nøkkel",
+            () -> {
+                throw new IllegalStateException("ingen token");
+            }, 1, KØ_TIMEOUT, Duration.ofSeconds(5), kø, httpClient);
+
+        for (int i = 0; i < 3; i++) {
+            var feil = catchThrowable(() -> tokenFeiler.systemHarRettighetForOrganisasjonAsync("systembruker", "999999999", "ressurs")
+                .get(5, TimeUnit.SECONDS));
+            // Hadde plassen ikke blitt frigitt ville neste kall feilet på køtimeout i stedet
+            assertThat(feil.getCause()).hasRootCauseMessage("ingen token");
+        }
+    }
+
+    @Test
+    void skal_knytte_beslutning_til_organisasjonsnummeret_i_svaret_og_ikke_rekkefølgen() {
+        var response = respons(resultat("Deny", "777777777"), resultat("Permit", "999999999"), resultat("Deny", "888888888"));
+
+        var beslutninger = PdpKlient.tilBeslutningPerOrganisasjon(ORGNUMRE, response);
+
+        assertThat(beslutninger).isEqualTo(Map.of("999999999", true, "888888888", false, "777777777", false));
+    }
+
+    @Test
+    void skal_feile_når_en_organisasjon_mangler_beslutning() {
+        var response = respons(resultat("Permit", "999999999"), resultat("Permit", "888888888"), resultat("Permit", "666666666"));
+
+        assertThatThrownBy(() -> PdpKlient.tilBeslutningPerOrganisasjon(ORGNUMRE, response)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void skal_feile_når_beslutningene_mangler_organisasjonsnummer() {
+        var response = DefaultJsonMapper.fromJson("""
+            {"response":[{"decision":"Permit"},{"decision":"Permit"},{"decision":"Permit"}]}
+            """, PdpResponse.class);
+
+        assertThatThrownBy(() -> PdpKlient.tilBeslutningPerOrganisasjon(ORGNUMRE, response)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void skal_be_om_organisasjonsnummeret_i_svaret() {
+        var request = PdpRequestUtil.lagPdpMultiRequest(new PdpKlient.System("navida_lps", "urn:altinn:systemuser:uuid"), ORGNUMRE, "ressurs");
+
+        assertThat(request.request().resource())
+            .allSatisfy(r -> assertThat(r.attribute())
+                .filteredOn(a -> a.attributeId().equals(PdpRequestUtil.ORGANISASJONSNUMMER))
+                .singleElement()
+                .satisfies(a -> assertThat(a.includeInResult()).isTrue()));
+    }
+
+    private CompletableFuture<Boolean> kall() {
+        return klient.systemHarRettighetForOrganisasjonAsync("systembruker", "999999999", "ressurs");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<String> permit() {
+        var response = (HttpResponse<String>) mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn("{\"response\":[" + resultat("Permit", "999999999") + "]}");
+        return response;
+    }
+
+    private static PdpResponse respons(String... resultater) {
+        return DefaultJsonMapper.fromJson("{\"response\":[" + String.join(",", resultater) + "]}", PdpResponse.class);
+    }
+
+    private static String resultat(String beslutning, String orgnr) {
+        return """
+            {"decision":"%s","status":{"statusCode":{"value":"urn:oasis:names:tc:xacml:1.0:status:ok"}},
+             "category":[{"categoryId":"urn:oasis:names:tc:xacml:3.0:attribute-category:resource",
+               "attribute":[{"attributeId":"urn:altinn:organization:identifier-no","value":"%s",
+                 "dataType":"http://www.w3.org/2001/XMLSchema#string","includeInResult":true}]}]}
+            """.formatted(beslutning, orgnr);
+    }
+}
@@ -1,5 +1,7 @@
 package no.nav.foreldrepenger.inntektsmelding.api.server.auth.altinnPdp;
 
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -32,4 +34,23 @@ class PdpRequestUtilTest {
         assertThat(request.request().resource().getFirst().attribute().stream().anyMatch(a -> a.value().equals(orgnummer))).isTrue();
     }
 
+    @Test
+    void skal_lage_multi_request_med_en_ressurs_per_organisasjon() {
+        // Arrange
+        String systemUserAtt = "urn:altinn:systemuser:uuid";
+        var orgnumre = List.of("999999999", "888888888");
+        String ressurs = "nav:foreldrepenger_dummy";
+
+        // Act
+        var request = PdpRequestUtil.lagPdpMultiRequest(new PdpKlient.System("navida_lps", systemUserAtt), orgnumre, ressurs);
+
+        // Assert
+        assertThat(request.request().accessSubject()).hasSize(1);
+        assertThat(request.request().action()).hasSize(1);
+        assertThat(request.request().resource()).extracting(PdpRequest.XacmlJsonCategoryExternal::id).containsExactly("r1", "r2");
+        assertThat(request.request().resource().get(1).attribute().stream().anyMatch(a -> a.value().equals("888888888"))).isTrue();
+        assertThat(request.request().multiRequests().requestReference()).extracting(PdpRequest.RequestReferenceExternal::referenceId)
+            .containsExactly(List.of("s1", "a1", "r1"), List.of("s1", "a1", "r2"));
+    }
+
 }
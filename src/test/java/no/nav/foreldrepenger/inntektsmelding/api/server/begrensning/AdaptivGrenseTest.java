@@ -0,0 +1,98 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.begrensning;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptivGrenseTest {
+
+    private static final Duration MÅLSVARTID = Duration.ofMillis(100);
+    private static final long RASKT = Duration.ofMillis(10).toNanos();
+    private static final long TREGT = Duration.ofSeconds(2).toNanos();
+
+    @Test
+    void skal_avvise_kall_over_grensen() {
+        var grense = new AdaptivGrense("test", new AdaptivGrense.Innstillinger(2, 1, 10, MÅLSVARTID));
+
+        assertThat(grense.slippInn()).isTrue();
+        assertThat(grense.slippInn()).isTrue();
+        assertThat(grense.slippInn()).isFalse();
+
+        grense.registrer(RASKT, false);
+        assertThat(grense.slippInn()).isTrue();
+    }
+
+    @Test
+    void skal_krympe_grensen_når_kallene_blir_trege_og_ikke_under_minimum() {
+        var grense = new AdaptivGrense("test", new AdaptivGrense.Innstillinger(10, 4, 20, MÅLSVARTID));
+
+        for (int i = 0; i < 200; i++) {
+            grense.slippInn();
+            grense.registrer(TREGT, false);
+        }
+
+        assertThat(grense.grense()).isEqualTo(4);
+        assertThat(grense.prøvIgjenOm()).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void skal_øke_grensen_når_den_er_i_bruk_og_kallene_svarer_raskt() {
+        var grense = new AdaptivGrense("test", new AdaptivGrense.Innstillinger(4, 1, 6, MÅLSVARTID));
+
+        for (int runde = 0; runde < 50; runde++) {
+            var sluppetInn = 0;
+            while (grense.slippInn()) {
+                sluppetInn++;
+            }
+            for (int i = 0; i < sluppetInn; i++) {
+                grense.registrer(RASKT, false);
+            }
+        }
+
+        assertThat(grense.grense()).isEqualTo(6);
+        assertThat(grense.iBruk()).isZero();
+    }
+
+    @Test
+    void skal_ikke_øke_grensen_når_den_ikke_er_i_bruk() {
+        var grense = new AdaptivGrense("test", new AdaptivGrense.Innstillinger(10, 1, 20, MÅLSVARTID));
+
+        for (int i = 0; i < 100; i++) {
+            grense.slippInn();
+            grense.registrer(RASKT, false);
+        }
+
+        assertThat(grense.grense()).isEqualTo(10);
+    }
+
+    @Test
+    void skal_krympe_grensen_bare_én_gang_per_runde() {
+        var grense = new AdaptivGrense("test", new AdaptivGrense.Innstillinger(10, 1, 20, MÅLSVARTID));
+
+        for (int i = 0; i < 10; i++) {
+            grense.slippInn();
+            grense.registrer(TREGT, i == 0);
+        }
+
+        assertThat(grense.grense()).isEqualTo(9);
+    }
+
+    @Test
+    void skal_ikke_krympe_grensen_for_enkeltstående_trege_kall() {
+        var grense = new AdaptivGrense("test", new AdaptivGrense.Innstillinger(10, 2, 20, MÅLSVARTID));
+
+        for (int runde = 0; runde < 100; runde++) {
+            var sluppetInn = 0;
+            while (grense.slippInn()) {
+                sluppetInn++;
+            }
+            for (int i = 0; i < sluppetInn; i++) {
+                grense.registrer(runde % 2 == 0 && i == 0 ? TREGT : RASKT, false);
+            }
+        }
+
+        assertThat(grense.grense()).isGreaterThanOrEqualTo(10);
+    }
+}
@@ -0,0 +1,35 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.begrensning;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class EndepunktklasseTest {
+
+    @Test
+    void skal_klassifisere_innsending_og_søk() {
+        assertThat(Endepunktklasse.fraSti("/v1/inntektsmelding/send-inn")).isEqualTo(Endepunktklasse.INNSENDING);
+        assertThat(Endepunktklasse.fraSti("v1/forespoersel/forespoersler")).isEqualTo(Endepunktklasse.SØK);
+    }
+
+    @Test
+    void skal_ikke_begrense_openapi_og_hendelsesstrømmer() {
+        assertThat(Endepunktklasse.fraSti("/openapi.json")).isNull();
+        assertThat(Endepunktklasse.fraSti("/v1/forespoersel/hendelser")).isNull();
+    }
+
+    @Test
+    void skal_telle_langpolling_mot_søk_men_markere_den_som_langpolling() {
+        assertThat(Endepunktklasse.fraSti("/v1/forespoersel/nye")).isEqualTo(Endepunktklasse.SØK);
+        assertThat(Endepunktklasse.erLangpolling("/v1/forespoersel/nye")).isTrue();
+        assertThat(Endepunktklasse.erLangpolling("/v1/forespoersel/forespoersler")).isFalse();
+    }
+
+    @Test
+    void skal_markere_masseoperasjoner() {
+        assertThat(Endepunktklasse.erMasseoperasjon("/v1/inntektsmelding/send-inn/flere")).isTrue();
+        assertThat(Endepunktklasse.erMasseoperasjon("/v1/forespoersel/hent-flere")).isTrue();
+        assertThat(Endepunktklasse.erMasseoperasjon("/v1/inntektsmelding/send-inn")).isFalse();
+        assertThat(Endepunktklasse.erMasseoperasjon("/v1/forespoersel/forespoersler")).isFalse();
+    }
+}
@@ -0,0 +1,82 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.begrensning;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class KvoteTest {
+
+    private static final Kvote.Innstillinger INNSTILLINGER = new Kvote.Innstillinger(60, 3);
+
+    @Test
+    void skal_tillate_kall_opp_til_kapasiteten_og_så_avvise() {
+        var klokke = new AtomicLong();
+        var kvote = new Kvote("test", INNSTILLINGER, 16, klokke::get);
+
+        assertThat(kvote.forsøk("a").gjenstår()).isEqualTo(2);
+        assertThat(kvote.forsøk("a").gjenstår()).isEqualTo(1);
+        assertThat(kvote.forsøk("a").gjenstår()).isZero();
+        var avvist = kvote.forsøk("a");
+
+        assertThat(avvist.tillatt()).isFalse();
+        assertThat(avvist.fullOm()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void skal_fylle_opp_bøtta_etter_hvert_som_tiden_går() {
+        var klokke = new AtomicLong();
+        var kvote = new Kvote("test", INNSTILLINGER, 16, klokke::get);
+        for (int i = 0; i < 3; i++) {
+            kvote.forsøk("a");
+        }
+        assertThat(kvote.forsøk("a").tillatt()).isFalse();
+
+        klokke.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(kvote.forsøk("a").tillatt()).isTrue();
+        assertThat(kvote.forsøk("a").tillatt()).isFalse();
+
+        klokke.addAndGet(Duration.ofMinutes(10).toNanos());
+        var utfall = kvote.forsøk("a");
+        assertThat(utfall.gjenstår()).isEqualTo(2);
+        assertThat(utfall.fullOm()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void skal_ha_egen_kvote_per_klient() {
+        var klokke = new AtomicLong();
+        var kvote = new Kvote("test", INNSTILLINGER, 1024, klokke::get);
+        for (int i = 0; i < 3; i++) {
+            kvote.forsøk("konsument/system-a");
+        }
+
+        assertThat(kvote.forsøk("konsument/system-a").tillatt()).isFalse();
+        assertThat(kvote.forsøk("konsument/system-b").tillatt()).isTrue();
+    }
+
+    @Test
+    void skal_begrense_klienter_som_kolliderer_og_veksler_på_kallene() {
+        var klokke = new AtomicLong();
+        var kvote = new Kvote("test", INNSTILLINGER, 1, klokke::get);
+        for (int i = 0; i < 3; i++) {
+            assertThat(kvote.forsøk("konsument/system-a").tillatt()).isTrue();
+            assertThat(kvote.forsøk("konsument/system-b").tillatt()).isTrue();
+        }
+
+        assertThat(kvote.forsøk("konsument/system-a").tillatt()).isFalse();
+        assertThat(kvote.forsøk("konsument/system-b").tillatt()).isFalse();
+    }
+
+    @Test
+    void skal_ta_over_plassen_når_bøtta_der_er_full_igjen() {
+        var klokke = new AtomicLong();
+        var kvote = new Kvote("test", INNSTILLINGER, 1, klokke::get);
+        kvote.forsøk("konsument/system-a");
+
+        klokke.addAndGet(Duration.ofMinutes(10).toNanos());
+        assertThat(kvote.forsøk("konsument/system-b").gjenstår()).isEqualTo(2);
+        assertThat(kvote.forsøk("konsument/system-b").gjenstår()).isEqualTo(1);
+    }
+}
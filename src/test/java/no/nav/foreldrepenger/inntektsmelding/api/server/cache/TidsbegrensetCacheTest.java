@@ -0,0 +1,115 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.cache;
+
+import static no.nav.vedtak.log.metrics.MetricsUtil.REGISTRY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+class TidsbegrensetCacheTest {
+
+    private static final Instant NÅ = Instant.parse("2025-01-01T12:00:00Z");
+
+    @Test
+    void skal_returnere_verdi_innenfor_levetid() {
+        var cache = new TidsbegrensetCache<String, String>("test", 10, Clock.fixed(NÅ, ZoneOffset.UTC));
+
+        cache.put("a", "verdi", Duration.ofMinutes(1));
+
+        assertThat(cache.get("a")).isEqualTo("verdi");
+        assertThat(cache.get("b")).isNull();
+    }
+
+    @Test
+    void skal_ikke_returnere_utløpt_verdi() {
+        var klokke = new FlyttbarKlokke(NÅ);
+        var cache = new TidsbegrensetCache<String, String>("test", 10, klokke);
+
+        cache.put("kort", "verdi", Duration.ofSeconds(30));
+        cache.put("lang", "verdi", Duration.ofMinutes(5));
+        klokke.flytt(Duration.ofMinutes(1));
+
+        assertThat(cache.get("kort")).isNull();
+        assertThat(cache.get("lang")).isEqualTo("verdi");
+        assertThat(cache.størrelse()).isEqualTo(1);
+    }
+
+    @Test
+    void skal_bare_legge_inn_når_nøkkelen_mangler_eller_er_utløpt() {
+        var klokke = new FlyttbarKlokke(NÅ);
+        var cache = new TidsbegrensetCache<String, String>("test", 10, klokke);
+
+        assertThat(cache.putIfAbsent("a", "første", Duration.ofSeconds(30))).isNull();
+        assertThat(cache.putIfAbsent("a", "andre", Duration.ofSeconds(30))).isEqualTo("første");
+        klokke.flytt(Duration.ofMinutes(1));
+        assertThat(cache.putIfAbsent("a", "tredje", Duration.ofSeconds(30))).isNull();
+
+        assertThat(cache.get("a")).isEqualTo("tredje");
+    }
+
+    @Test
+    void skal_kaste_ut_minst_nylig_brukte_når_cachen_er_full() {
+        var cache = new TidsbegrensetCache<String, String>("test", 2, Clock.fixed(NÅ, ZoneOffset.UTC));
+
+        cache.put("a", "1", Duration.ofMinutes(1));
+        cache.put("b", "2", Duration.ofMinutes(1));
+        cache.get("a");
+        cache.put("c", "3", Duration.ofMinutes(1));
+
+        assertThat(cache.get("a")).isEqualTo("1");
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isEqualTo("3");
+    }
+
+    @Test
+    void skal_ikke_telle_treff_eller_bom_for_oppslag_uten_telling() {
+        var navn = "test-uten-telling";
+        var cache = new TidsbegrensetCache<String, String>(navn, 10, Clock.fixed(NÅ, ZoneOffset.UTC));
+        cache.put("a", "verdi", Duration.ofMinutes(1));
+
+        assertThat(cache.getUtenTelling("a")).isEqualTo("verdi");
+        assertThat(cache.getUtenTelling("b")).isNull();
+        assertThat(antallOppslag(navn, "hit")).isZero();
+        assertThat(antallOppslag(navn, "miss")).isZero();
+
+        cache.get("a");
+        cache.get("b");
+        assertThat(antallOppslag(navn, "hit")).isEqualTo(1);
+        assertThat(antallOppslag(navn, "miss")).isEqualTo(1);
+    }
+
+    private static double antallOppslag(String navn, String resultat) {
+        return REGISTRY.counter("cache.gets", "cache", navn, "result", resultat).count();
+    }
+
+    private static class FlyttbarKlokke extends Clock {
+        private Instant nå;
+
+        FlyttbarKlokke(Instant nå) {
+            this.nå = nå;
+        }
+
+        void flytt(Duration varighet) {
+            nå = nå.plus(varighet);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return nå;
+        }
+    }
+}
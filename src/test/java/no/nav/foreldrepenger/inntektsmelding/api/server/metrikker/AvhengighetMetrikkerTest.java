@@ -0,0 +1,55 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.metrikker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AvhengighetMetrikkerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AvhengighetMetrikker metrikker = new AvhengighetMetrikker("test", registry);
+
+    @Test
+    void skal_merke_kallet_med_statusklassen_til_responsen() {
+        @SuppressWarnings("unchecked")
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(503);
+
+        metrikker.mål("hent", () -> response);
+        metrikker.mål("hent", () -> "ok");
+
+        assertThat(registry.get(AvhengighetMetrikker.TIMER).tag("avhengighet", "test").tag("operasjon", "hent").tag("utfall", "5xx").timer().count())
+            .isEqualTo(1);
+        assertThat(registry.get(AvhengighetMetrikker.TIMER).tag("utfall", AvhengighetMetrikker.OK).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void skal_skille_tidsavbrudd_fra_andre_feil() {
+        assertThatThrownBy(() -> metrikker.mål("hent", () -> {
+            throw new UncheckedIOException(new HttpTimeoutException("tregt"));
+        })).isInstanceOf(UncheckedIOException.class);
+        assertThatThrownBy(() -> metrikker.mål("hent", () -> {
+            throw new IllegalStateException("feil");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(registry.get(AvhengighetMetrikker.TIMER).tag("utfall", AvhengighetMetrikker.TIDSAVBRUDD).timer().count()).isEqualTo(1);
+        assertThat(registry.get(AvhengighetMetrikker.TIMER).tag("utfall", AvhengighetMetrikker.FEIL).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void skal_telle_nye_forsøk_per_operasjon() {
+        metrikker.nyttForsøk("exchange");
+        metrikker.nyttForsøk("exchange");
+
+        assertThat(registry.get(AvhengighetMetrikker.NYTT_FORSØK).tag("operasjon", "exchange").counter().count()).isEqualTo(2);
+    }
+}
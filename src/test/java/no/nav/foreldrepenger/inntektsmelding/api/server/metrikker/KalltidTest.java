@@ -0,0 +1,72 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.metrikker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.parallell.BegrensetParallellitet;
+
+class KalltidTest {
+
+    @AfterEach
+    void ryddOpp() {
+        Kalltid.sett(null);
+    }
+
+    @Test
+    void skal_ikke_telle_tid_i_indre_steg_med_i_det_ytre() {
+        var kalltid = new Kalltid();
+        Kalltid.sett(kalltid);
+
+        Kalltid.mål(Kalltid.Steg.BACKEND, () -> {
+            vent(Duration.ofMillis(20));
+            Kalltid.mål(Kalltid.Steg.MAPPING, () -> vent(Duration.ofMillis(50)));
+        });
+
+        assertThat(kalltid.nanos(Kalltid.Steg.MAPPING)).isGreaterThanOrEqualTo(Duration.ofMillis(50).toNanos());
+        assertThat(kalltid.nanos(Kalltid.Steg.BACKEND))
+            .isGreaterThanOrEqualTo(Duration.ofMillis(20).toNanos())
+            .isLessThan(Duration.ofMillis(50).toNanos());
+    }
+
+    @Test
+    void skal_telle_med_steg_som_kjøres_parallelt() {
+        var kalltid = new Kalltid();
+        Kalltid.sett(kalltid);
+
+        BegrensetParallellitet.kjør(List.of(1, 2), 2, i -> Kalltid.mål(Kalltid.Steg.BACKEND, () -> {
+            vent(Duration.ofMillis(10));
+            return i;
+        }));
+
+        assertThat(kalltid.nanos(Kalltid.Steg.BACKEND)).isGreaterThanOrEqualTo(Duration.ofMillis(20).toNanos());
+    }
+
+    @Test
+    void skal_lage_server_timing_med_stegene_som_ble_brukt() {
+        var kalltid = new Kalltid();
+        kalltid.leggTil(Kalltid.Steg.AUTENTISERING, Duration.ofMillis(3).toNanos());
+        kalltid.leggTil(Kalltid.Steg.BACKEND, Duration.ofMillis(42).toNanos() + 250_000);
+
+        assertThat(KalltidFilter.serverTiming(kalltid, Duration.ofMillis(60).toNanos()))
+            .isEqualTo("auth;dur=3.0, backend;dur=42.3, total;dur=60.0");
+    }
+
+    @Test
+    void skal_kjøre_arbeidet_uten_måling_utenfor_et_kall() {
+        assertThat(Kalltid.mål(Kalltid.Steg.MAPPING, () -> "ok")).isEqualTo("ok");
+        assertThat(Kalltid.aktiv()).isNull();
+    }
+
+    private static void vent(Duration varighet) {
+        try {
+            Thread.sleep(varighet);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
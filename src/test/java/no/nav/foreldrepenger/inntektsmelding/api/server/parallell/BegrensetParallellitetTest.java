@@ -0,0 +1,48 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.parallell;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class BegrensetParallellitetTest {
+
+    @Test
+    void skal_returnere_resultater_i_rekkefølge_uten_å_overskride_maks_samtidige() {
+        var pågår = new AtomicInteger();
+        var høyeste = new AtomicInteger();
+        var elementer = IntStream.range(0, 50).boxed().toList();
+
+        var resultater = BegrensetParallellitet.kjør(elementer, 4, i -> {
+            høyeste.accumulateAndGet(pågår.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pågår.decrementAndGet();
+            return i * 2;
+        });
+
+        assertThat(resultater).isEqualTo(elementer.stream().map(i -> i * 2).toList());
+        assertThat(høyeste.get()).isBetween(1, 4);
+    }
+
+    @Test
+    void skal_kaste_feil_fra_oppgave() {
+        var elementer = List.of(1, 2, 3);
+
+        var ex = assertThrows(IllegalArgumentException.class, () -> BegrensetParallellitet.kjør(elementer, 2, i -> {
+            if (i == 2) {
+                throw new IllegalArgumentException("feil for " + i);
+            }
+            return i;
+        }));
+
+        assertThat(ex.getMessage()).isEqualTo("feil for 2");
+    }
+}
@@ -0,0 +1,105 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.resiliens;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class GarderingTest {
+
+    @Test
+    void skal_sende_ekstra_kall_når_første_er_tregt_og_avbryte_det_som_taper() throws Exception {
+        var gardering = new Gardering("test", new Gardering.Innstillinger(true, 95, 50, Duration.ofMillis(10)));
+        varmOpp(gardering);
+        var avbrutt = new CountDownLatch(1);
+        var forsøk = new AtomicInteger();
+
+        var resultat = gardering.kjør(() -> {
+            if (forsøk.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(Duration.ofSeconds(10));
+                } catch (InterruptedException e) {
+                    avbrutt.countDown();
+                }
+                return "tregt";
+            }
+            return "raskt";
+        });
+
+        assertThat(resultat).isEqualTo("raskt");
+        assertThat(forsøk.get()).isEqualTo(2);
+        assertThat(avbrutt.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void skal_ikke_sende_flere_ekstra_kall_enn_budsjettet_tillater() {
+        // 5 % av 22 kall gir ett ekstra kall
+        var gardering = new Gardering("test", new Gardering.Innstillinger(true, 95, 5, Duration.ofMillis(10)));
+        varmOpp(gardering);
+        var forsøk = new AtomicInteger();
+
+        gardering.kjør(() -> tregt(forsøk));
+        gardering.kjør(() -> tregt(forsøk));
+
+        assertThat(forsøk.get()).isEqualTo(3);
+    }
+
+    @Test
+    void skal_regne_avbrutte_første_forsøk_med_i_svartidene() {
+        var gardering = new Gardering("test", new Gardering.Innstillinger(true, 50, 100, Duration.ofMillis(1)));
+        for (int i = 0; i < 20; i++) {
+            gardering.kjør(() -> sov(Duration.ofMillis(20)));
+        }
+        var forsinkelse = gardering.forsinkelse();
+        assertThat(forsinkelse).isGreaterThanOrEqualTo(Duration.ofMillis(20));
+
+        // Det ekstra kallet vinner hver gang. Regnes bare vinnerne med, faller medianen til nesten null.
+        for (int i = 0; i < 30; i++) {
+            var forsøk = new AtomicInteger();
+            gardering.kjør(() -> forsøk.getAndIncrement() == 0 ? sov(Duration.ofSeconds(10)) : "raskt");
+        }
+
+        assertThat(gardering.forsinkelse()).isGreaterThanOrEqualTo(forsinkelse);
+    }
+
+    @Test
+    void skal_kjøre_kallet_direkte_når_gardering_er_av() {
+        var gardering = new Gardering("test", new Gardering.Innstillinger(false, 95, 50, Duration.ofMillis(10)));
+        var tråd = Thread.currentThread();
+
+        var resultat = gardering.kjør(() -> Thread.currentThread() == tråd);
+
+        assertThat(resultat).isTrue();
+        assertThat(gardering.forsinkelse()).isNull();
+    }
+
+    private static void varmOpp(Gardering gardering) {
+        for (int i = 0; i < 20; i++) {
+            gardering.kjør(() -> "ok");
+        }
+        assertThat(gardering.forsinkelse()).isEqualTo(Duration.ofMillis(10));
+    }
+
+    private static String sov(Duration varighet) {
+        try {
+            Thread.sleep(varighet);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "ok";
+    }
+
+    private static String tregt(AtomicInteger forsøk) {
+        forsøk.incrementAndGet();
+        try {
+            Thread.sleep(Duration.ofMillis(100));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "ok";
+    }
+}
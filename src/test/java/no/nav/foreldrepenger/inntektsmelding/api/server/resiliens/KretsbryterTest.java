@@ -0,0 +1,124 @@
+package no.nav.foreldrepenger.inntektsmelding.api.server.resiliens;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletionException;
+
+import jakarta.ws.rs.core.Response;
+
+import org.junit.jupiter.api.Test;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+
+class KretsbryterTest {
+
+    private static final Kretsbryter.Innstillinger INNSTILLINGER = new Kretsbryter.Innstillinger(10, 4, 50, Duration.ofSeconds(30), 2);
+
+    @Test
+    void skal_åpne_når_feilandelen_er_for_høy_og_avvise_uten_å_kalle() {
+        var kretsbryter = new Kretsbryter("test", INNSTILLINGER, Clock.fixed(Instant.now(), ZoneOffset.UTC));
+
+        kjørOk(kretsbryter);
+        kjørOk(kretsbryter);
+        kjørFeil(kretsbryter);
+        assertThat(kretsbryter.tilstand()).isEqualTo(Kretsbryter.Tilstand.LUKKET);
+        kjørFeil(kretsbryter);
+
+        assertThat(kretsbryter.tilstand()).isEqualTo(Kretsbryter.Tilstand.ÅPEN);
+        var ex = assertThrows(InntektsmeldingAPIException.class, () -> kretsbryter.kjør(() -> {
+            throw new AssertionError("Skal ikke kalles når bryteren er åpen");
+        }));
+        assertThat(ex.getStatus()).isEqualTo(Response.Status.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    void skal_lukke_etter_vellykkede_prøvekall_og_åpne_igjen_ved_feil() {
+        var klokke = new FlyttbarKlokke(Instant.now());
+        var kretsbryter = new Kretsbryter("test", INNSTILLINGER, klokke);
+        for (int i = 0; i < 4; i++) {
+            kjørFeil(kretsbryter);
+        }
+        assertThat(kretsbryter.tilstand()).isEqualTo(Kretsbryter.Tilstand.ÅPEN);
+
+        klokke.flytt(Duration.ofSeconds(30));
+        kjørFeil(kretsbryter);
+        assertThat(kretsbryter.tilstand()).isEqualTo(Kretsbryter.Tilstand.ÅPEN);
+
+        klokke.flytt(Duration.ofSeconds(30));
+        kjørOk(kretsbryter);
+        assertThat(kretsbryter.tilstand()).isEqualTo(Kretsbryter.Tilstand.HALVÅPEN);
+        kjørOk(kretsbryter);
+        assertThat(kretsbryter.tilstand()).isEqualTo(Kretsbryter.Tilstand.LUKKET);
+    }
+
+    @Test
+    void skal_ikke_telle_avviste_kall_eller_lokale_feil() {
+        var kretsbryter = new Kretsbryter("test", INNSTILLINGER, Clock.fixed(Instant.now(), ZoneOffset.UTC));
+
+        for (int i = 0; i < 10; i++) {
+            assertThrows(UventetStatusException.class, () -> kretsbryter.kjør(() -> {
+                throw new UventetStatusException(400, "test");
+            }));
+            assertThrows(IllegalArgumentException.class, () -> kretsbryter.kjør(() -> {
+                throw new IllegalArgumentException("ugyldig json");
+            }));
+        }
+
+        assertThat(kretsbryter.tilstand()).isEqualTo(Kretsbryter.Tilstand.LUKKET);
+    }
+
+    @Test
+    void skal_telle_tidsavbrudd_og_io_feil_som_avhengighetsfeil() {
+        assertThat(Kretsbryter.erAvhengighetsfeil(new IllegalStateException(new HttpTimeoutException("timeout")))).isTrue();
+        assertThat(Kretsbryter.erAvhengighetsfeil(new UncheckedIOException(new ConnectException("nede")))).isTrue();
+        assertThat(Kretsbryter.erAvhengighetsfeil(new CompletionException(new UventetStatusException(502, "test")))).isTrue();
+        assertThat(Kretsbryter.erAvhengighetsfeil(new CompletionException(new UventetStatusException(404, "test")))).isFalse();
+        assertThat(Kretsbryter.erAvhengighetsfeil(new IllegalStateException("feil"))).isFalse();
+    }
+
+    private static void kjørOk(Kretsbryter kretsbryter) {
+        kretsbryter.kjør(() -> "ok");
+    }
+
+    private static void kjørFeil(Kretsbryter kretsbryter) {
+        assertThrows(UventetStatusException.class, () -> kretsbryter.kjør(() -> {
+            throw new UventetStatusException(503, "test");
+        }));
+    }
+
+    private static class FlyttbarKlokke extends Clock {
+        private Instant nå;
+
+        FlyttbarKlokke(Instant nå) {
+            this.nå = nå;
+        }
+
+        void flytt(Duration varighet) {
+            nå = nå.plus(varighet);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return nå;
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import no.nav.foreldrepenger.inntektsmelding.api.typer.YtelseType;
 
@@ -17,10 +23,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.Forespørsel;
 import no.nav.foreldrepenger.inntektsmelding.api.forespørsel.ForespørselDto;
+import no.nav.foreldrepenger.inntektsmelding.api.integrasjoner.ForespørselFeed;
 import no.nav.foreldrepenger.inntektsmelding.api.integrasjoner.FpinntektsmeldingTjeneste;
 import no.nav.foreldrepenger.inntektsmelding.api.server.auth.TilgangTjeneste;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.ForespørselStatus;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.Organisasjonsnummer;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.StatusDto;
@@ -30,19 +38,23 @@ class ForespørselRestTest {
     @Mock
     private FpinntektsmeldingTjeneste fpinntektsmeldingTjeneste;
     @Mock
+    private ForespørselFeed forespørselFeed;
+    @Mock
+    private ForespørselHendelseStrøm hendelseStrøm;
+    @Mock
     private TilgangTjeneste tilgangTjeneste;
 
     private ForespørselRest forespørselRest;
 
     @BeforeEach
     void setUp() {
-        forespørselRest = new ForespørselRest(fpinntektsmeldingTjeneste, tilgangTjeneste);
+        forespørselRest = new ForespørselRest(fpinntektsmeldingTjeneste, forespørselFeed, hendelseStrøm, tilgangTjeneste);
     }
 
     @Test
     void skal_returnere_tom_liste() {
         var orgnummer = "999999999";
-        var response = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, null, null, null, null, null, null));
+        var response = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, null, null, null, null, null, null, null, null));
         assertThat(response.getStatus()).isEqualTo(200);
         var forespørsler = (List<ForespørselDto>) response.getEntity();
         assertThat(forespørsler).isEmpty();
@@ -54,7 +66,7 @@ class ForespørselRestTest {
         var uuid = UUID.randomUUID();
         when(fpinntektsmeldingTjeneste.hentForespørsel(uuid)).thenReturn(new Forespørsel(null, uuid, new Organisasjonsnummer(orgnummer), "11111111111", LocalDate.now(), LocalDate.now(),
             ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER, LocalDate.now().atStartOfDay()));
-        var response = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, uuid, StatusDto.FORKASTET, YtelseType.SVANGERSKAPSPENGER, null, null, null));
+        var response = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, uuid, StatusDto.FORKASTET, YtelseType.SVANGERSKAPSPENGER, null, null, null, null, null));
         assertThat(response.getStatus()).isEqualTo(200);
         var forespørsler = (List<ForespørselDto>) response.getEntity();
         assertThat(forespørsler).hasSize(1);
@@ -66,7 +78,7 @@ class ForespørselRestTest {
     @Test
     void skal_returnere_feil_om_datoer_er_feil() {
         var orgnummer = "999999999";
-        var response = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, null, StatusDto.FORKASTET, YtelseType.SVANGERSKAPSPENGER, LocalDate.now(), LocalDate.now().minusMonths(1), null));
+        var response = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, null, StatusDto.FORKASTET, YtelseType.SVANGERSKAPSPENGER, LocalDate.now(), LocalDate.now().minusMonths(1), null, null, null));
         assertThat(response.getStatus()).isEqualTo(400);
         var forespørsler = (ErrorResponse) response.getEntity();
         assertThat(forespørsler.feilmelding()).isEqualTo(EksponertFeilmelding.UGYLDIG_PERIODE.getTekst());
@@ -79,11 +91,85 @@ class ForespørselRestTest {
             ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER, LocalDate.now().atStartOfDay());
         var forespørsel1 = new Forespørsel(3L, UUID.randomUUID(), new Organisasjonsnummer(orgnummer), "11111111111", LocalDate.now(), LocalDate.now(),
             ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER, LocalDate.now().atStartOfDay());
-        when(fpinntektsmeldingTjeneste.hentForespørsler(orgnummer, null, null, null, null, null, 1L)).thenReturn(List.of(forespørsel1, forespørsel2));
-        var response = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, null, null, null, null, null, 1L));
+        when(fpinntektsmeldingTjeneste.hentForespørsler(orgnummer, null, null, null, null, null, 1L, Paginering.MAKS_SIDESTØRRELSE + 1)).thenReturn(List.of(forespørsel1, forespørsel2));
+        var response = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, null, null, null, null, null, 1L, null, null));
         assertThat(response.getStatus()).isEqualTo(200);
         var forespørsler = (List<ForespørselDto>) response.getEntity();
         assertThat(forespørsler).hasSize(2);
     }
 
+    @Test
+    void skal_dele_resultatet_i_sider_med_cursor() {
+        var orgnummer = "999999999";
+        var forespørsler = List.of(lagForespørsel(orgnummer, 2L), lagForespørsel(orgnummer, 3L), lagForespørsel(orgnummer, 4L));
+        when(fpinntektsmeldingTjeneste.hentForespørsler(orgnummer, null, null, null, null, null, null, 3)).thenReturn(forespørsler);
+
+        var førsteSide = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, null, null, null, null, null, null, 2, null));
+        assertThat((List<ForespørselDto>) førsteSide.getEntity()).extracting(ForespørselDto::loepenr).containsExactly(2L, 3L);
+        var cursor = førsteSide.getHeaderString(Paginering.NESTE_CURSOR);
+        assertThat(cursor).isNotBlank();
+
+        when(fpinntektsmeldingTjeneste.hentForespørsler(orgnummer, null, null, null, null, null, 3L, 4)).thenReturn(forespørsler.subList(1, 3));
+        var andreSide = forespørselRest.hentForespørsler(new ForespørselFilter(orgnummer, null, null, null, null, null, null, null, 2, cursor));
+        assertThat((List<ForespørselDto>) andreSide.getEntity()).extracting(ForespørselDto::loepenr).containsExactly(4L);
+        assertThat(andreSide.getHeaderString(Paginering.NESTE_CURSOR)).isNull();
+    }
+
+    @Test
+    void skal_avvise_ugyldig_cursor() {
+        var orgnummer = "999999999";
+        var filter = new ForespørselFilter(orgnummer, null, null, null, null, null, null, null, null, "dGlsZmVsZGln");
+
+        var ex = assertThrows(InntektsmeldingAPIException.class, () -> forespørselRest.hentForespørsler(filter));
+
+        assertThat(ex.getFeilmelding()).isEqualTo(EksponertFeilmelding.UGYLDIG_CURSOR);
+    }
+
+    @Test
+    void skal_returnere_nye_forespørsler_med_neste_cursor() {
+        var orgnummer = "999999999";
+        var cursor = Paginering.lagCursor(2L);
+        when(forespørselFeed.ventPåNye(eq(orgnummer), eq(2L), any())).thenReturn(CompletableFuture.completedFuture(List.of(lagForespørsel(orgnummer, 3L))));
+
+        var response = forespørselRest.hentNyeForespørsler(orgnummer, cursor, 10).toCompletableFuture().join();
+
+        var nye = (NyeForespørslerDto) response.getEntity();
+        assertThat(nye.forespoersler()).extracting(ForespørselDto::loepenr).containsExactly(3L);
+        assertThat(Paginering.lesCursor(nye.nesteCursor())).isEqualTo(3L);
+    }
+
+    @Test
+    void skal_beholde_cursor_når_ingen_nye_forespørsler_kom() {
+        var orgnummer = "999999999";
+        var cursor = Paginering.lagCursor(7L);
+        when(forespørselFeed.ventPåNye(eq(orgnummer), eq(7L), any())).thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        var response = forespørselRest.hentNyeForespørsler(orgnummer, cursor, null).toCompletableFuture().join();
+
+        var nye = (NyeForespørslerDto) response.getEntity();
+        assertThat(nye.forespoersler()).isEmpty();
+        assertThat(nye.nesteCursor()).isEqualTo(cursor);
+    }
+
+    @Test
+    void skal_hente_forespørsler_med_id_og_skjule_de_uten_tilgang() {
+        var medTilgang = lagForespørsel("999999999", 1L);
+        var utenTilgang = lagForespørsel("888888888", 2L);
+        var ukjent = UUID.randomUUID();
+        var ider = List.of(medTilgang.forespørselUuid(), utenTilgang.forespørselUuid(), ukjent);
+        when(fpinntektsmeldingTjeneste.hentForespørslerMedId(eq(ider), anyInt())).thenReturn(List.of(medTilgang, utenTilgang));
+        when(tilgangTjeneste.organisasjonerSystemetHarTilgangTil(Set.of(new Organisasjonsnummer("999999999"), new Organisasjonsnummer("888888888"))))
+            .thenReturn(Set.of(new Organisasjonsnummer("999999999")));
+
+        var response = forespørselRest.hentForespørslerMedId(new HentForespørslerRequest(ider));
+
+        var svar = (HentForespørslerResponsDto) response.getEntity();
+        assertThat(svar.forespoersler()).extracting(ForespørselDto::forespoerselId).containsExactly(medTilgang.forespørselUuid());
+        assertThat(svar.ikkeFunnet()).containsExactly(utenTilgang.forespørselUuid(), ukjent);
+    }
+
+    private static Forespørsel lagForespørsel(String orgnummer, Long loepenr) {
+        return new Forespørsel(loepenr, UUID.randomUUID(), new Organisasjonsnummer(orgnummer), "11111111111", LocalDate.now(), LocalDate.now(),
+            ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER, LocalDate.now().atStartOfDay());
+    }
 }
@@ -0,0 +1,50 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import jakarta.ws.rs.core.Response;
+
+import org.junit.jupiter.api.Test;
+
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
+
+class IdempotensLagerTest {
+
+    @Test
+    void skal_avvise_gjentatt_innsending_med_409_når_den_første_ikke_blir_ferdig_i_tide() throws Exception {
+        var lager = new IdempotensLager(Duration.ofMillis(50));
+        var innhold = Map.of("forespørsel", "1");
+        var startet = new CountDownLatch(1);
+        var slipp = new CountDownLatch(1);
+
+        var første = CompletableFuture.supplyAsync(() -> lager.utførEnGang("systembruker", "nøkkel", innhold, () -> {
+            startet.countDown();
+            try {
+                slipp.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Response.ok("svar").build();
+        }));
+        startet.await();
+
+        var ex = assertThrows(InntektsmeldingAPIException.class,
+            () -> lager.utførEnGang("systembruker", "nøkkel", innhold, () -> Response.ok("annet").build()));
+
+        assertThat(ex.getFeilmelding()).isEqualTo(EksponertFeilmelding.IDEMPOTENSNOEKKEL_PAAGAAR);
+        assertThat(ex.getStatus()).isEqualTo(Response.Status.CONFLICT);
+
+        slipp.countDown();
+        assertThat(første.get().getEntity()).isEqualTo("svar");
+        var gjentatt = lager.utførEnGang("systembruker", "nøkkel", innhold, () -> Response.ok("annet").build());
+        assertThat(gjentatt.getEntity()).isEqualTo("svar");
+        assertThat(gjentatt.getHeaderString(IdempotensLager.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+    }
+}
@@ -9,6 +9,7 @@ import no.nav.foreldrepenger.inntektsmelding.api.integrasjoner.Fpinntektsmelding
 import no.nav.foreldrepenger.inntektsmelding.api.server.auth.Tilgang;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.EksponertFeilmelding;
 import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.ErrorResponse;
+import no.nav.foreldrepenger.inntektsmelding.api.server.exceptions.InntektsmeldingAPIException;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.ForespørselStatus;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.InnsendingType;
 import no.nav.foreldrepenger.inntektsmelding.api.typer.InntektsmeldingStatus;
@@ -31,10 +32,15 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -49,7 +55,7 @@ class InntektsmeldingRestTest {
 
     @BeforeEach
     void setUp() {
-        inntektsmeldingRest = new InntektsmeldingRest(fpinntektsmeldingTjeneste, tilgang);
+        inntektsmeldingRest = new InntektsmeldingRest(fpinntektsmeldingTjeneste, tilgang, new IdempotensLager());
     }
 
     @Test
@@ -76,12 +82,13 @@ class InntektsmeldingRestTest {
             new InntektsmeldingRequest.Avsender("TestSystem", "1.0.0")
         );
 
-        when(fpinntektsmeldingTjeneste.hentForespørsel(forespørselUuid)).thenReturn(forespørsel);
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid)).thenReturn(forespørsel);
+        when(tilgang.sjekkAtSystemHarTilgangTilOrganisasjonAsync(new Organisasjonsnummer(orgnummer))).thenReturn(CompletableFuture.completedFuture(null));
         when(fpinntektsmeldingTjeneste.sendInntektsmelding(any(), any()))
             .thenReturn(new SendInntektsmeldingResponse(true, responseUuid, no.nav.foreldrepenger.inntektsmelding.felles.InntektsmeldingStatusDto.GODKJENT, null));
 
         // Act
-        var response = inntektsmeldingRest.sendInntektsmelding(inntektsmeldingRequest);
+        var response = inntektsmeldingRest.sendInntektsmelding(inntektsmeldingRequest, null);
 
         // Assert
         assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
@@ -105,10 +112,10 @@ class InntektsmeldingRestTest {
             new InntektsmeldingRequest.Avsender("TestSystem", "1.0.0")
         );
 
-        when(fpinntektsmeldingTjeneste.hentForespørsel(forespørselUuid)).thenReturn(null);
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid)).thenReturn(null);
 
         // Act
-        var response = inntektsmeldingRest.sendInntektsmelding(inntektsmeldingRequest);
+        var response = inntektsmeldingRest.sendInntektsmelding(inntektsmeldingRequest, null);
 
         // Assert
         assertThat(response.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
@@ -116,16 +123,207 @@ class InntektsmeldingRestTest {
         assertThat(errorResponse.feilmelding()).isEqualTo(EksponertFeilmelding.TOM_FORESPOERSEL.getTekst() + ": " + forespørselUuid);
     }
 
+    @Test
+    void skal_avvise_manglende_tilgang_foran_valideringsfeil() {
+        // Arrange
+        var orgnummer = "999999999";
+        var fødselsnummer = "12345678901";
+        var forespørselUuid = UUID.randomUUID();
+
+        var forespørsel = new Forespørsel(null, forespørselUuid, new Organisasjonsnummer(orgnummer), fødselsnummer,
+            LocalDate.now(), LocalDate.now(), ForespørselStatus.UTGÅTT, YtelseType.FORELDREPENGER,
+            LocalDateTime.now());
+
+        var inntektsmeldingRequest = new InntektsmeldingRequest(
+            forespørselUuid,
+            fødselsnummer,
+            LocalDate.now(),
+            YtelseType.FORELDREPENGER,
+            new InntektsmeldingRequest.InntektInfo(BigDecimal.valueOf(25000.00), List.of()),
+            new InntektsmeldingRequest.Refusjon(BigDecimal.valueOf(25000.00), List.of()),
+            List.of(),
+            new InntektsmeldingRequest.Kontaktinformasjon("Kontaktperson", "12345678"),
+            new InntektsmeldingRequest.Avsender("TestSystem", "1.0.0")
+        );
+
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid)).thenReturn(forespørsel);
+        when(tilgang.sjekkAtSystemHarTilgangTilOrganisasjonAsync(new Organisasjonsnummer(orgnummer))).thenReturn(CompletableFuture.failedFuture(
+            new InntektsmeldingAPIException(EksponertFeilmelding.IKKE_TILGANG_ALTINN, Response.Status.UNAUTHORIZED)));
+
+        // Act
+        var ex = assertThrows(InntektsmeldingAPIException.class, () -> inntektsmeldingRest.sendInntektsmelding(inntektsmeldingRequest, null));
+
+        // Assert - forespørselen er utgått, men systemet uten tilgang skal ikke få vite det
+        assertThat(ex.getFeilmelding()).isEqualTo(EksponertFeilmelding.IKKE_TILGANG_ALTINN);
+        verify(fpinntektsmeldingTjeneste, never()).sendInntektsmelding(any(), any());
+    }
+
+    @Test
+    void skal_sende_flere_inntektsmeldinger_med_ett_oppslag_per_forespørsel_og_ett_tilgangsoppslag() {
+        // Arrange
+        var orgnummer = new Organisasjonsnummer("999999999");
+        var fødselsnummer = "12345678901";
+        var forespørselUuid = UUID.randomUUID();
+        var ukjentForespørselUuid = UUID.randomUUID();
+        var responseUuid = UUID.randomUUID();
+
+        var forespørsel = new Forespørsel(null, forespørselUuid, orgnummer, fødselsnummer,
+            LocalDate.now(), LocalDate.now(), ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER,
+            LocalDateTime.now());
+
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid)).thenReturn(forespørsel);
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(ukjentForespørselUuid)).thenReturn(null);
+        when(tilgang.organisasjonerSystemetHarTilgangTil(Set.of(orgnummer))).thenReturn(Set.of(orgnummer));
+        when(fpinntektsmeldingTjeneste.sendInntektsmelding(any(), any()))
+            .thenReturn(new SendInntektsmeldingResponse(true, responseUuid, no.nav.foreldrepenger.inntektsmelding.felles.InntektsmeldingStatusDto.GODKJENT, null));
+
+        var request = new SendInntektsmeldingerRequest(List.of(
+            lagInntektsmeldingRequest(forespørselUuid, fødselsnummer),
+            lagInntektsmeldingRequest(ukjentForespørselUuid, fødselsnummer),
+            lagInntektsmeldingRequest(forespørselUuid, fødselsnummer)));
+
+        // Act
+        var response = inntektsmeldingRest.sendInntektsmeldinger(request);
+
+        // Assert
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        var resultater = ((SendInntektsmeldingerResponsDto) response.getEntity()).resultater();
+        assertThat(resultater).extracting(SendInntektsmeldingResultatDto::indeks).containsExactly(0, 1, 2);
+        assertThat(resultater).extracting(SendInntektsmeldingResultatDto::status).containsExactly(200, 404, 200);
+        assertThat(resultater.getFirst().kvittering()).isEqualTo(new SendInntektsmeldingResponsDto(responseUuid, InntektsmeldingStatusDto.GODKJENT));
+        assertThat(resultater.get(1).feil().feilkode()).isEqualTo(EksponertFeilmelding.TOM_FORESPOERSEL.name());
+        verify(fpinntektsmeldingTjeneste, times(1)).hentForespørselForInnsending(forespørselUuid);
+        verify(tilgang, times(1)).organisasjonerSystemetHarTilgangTil(any());
+        verify(fpinntektsmeldingTjeneste, times(2)).sendInntektsmelding(any(), any());
+    }
+
+    @Test
+    void skal_gi_feil_bare_for_inntektsmeldingene_der_oppslaget_av_forespørselen_feilet() {
+        // Arrange
+        var orgnummer = new Organisasjonsnummer("999999999");
+        var fødselsnummer = "12345678901";
+        var forespørselUuid = UUID.randomUUID();
+        var utilgjengeligForespørselUuid = UUID.randomUUID();
+        var responseUuid = UUID.randomUUID();
+
+        var forespørsel = new Forespørsel(null, forespørselUuid, orgnummer, fødselsnummer,
+            LocalDate.now(), LocalDate.now(), ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER,
+            LocalDateTime.now());
+
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid)).thenReturn(forespørsel);
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(utilgjengeligForespørselUuid))
+            .thenThrow(new InntektsmeldingAPIException(EksponertFeilmelding.MIDLERTIDIG_UTILGJENGELIG, Response.Status.SERVICE_UNAVAILABLE));
+        when(tilgang.organisasjonerSystemetHarTilgangTil(Set.of(orgnummer))).thenReturn(Set.of(orgnummer));
+        when(fpinntektsmeldingTjeneste.sendInntektsmelding(any(), any()))
+            .thenReturn(new SendInntektsmeldingResponse(true, responseUuid, no.nav.foreldrepenger.inntektsmelding.felles.InntektsmeldingStatusDto.GODKJENT, null));
+
+        var request = new SendInntektsmeldingerRequest(List.of(
+            lagInntektsmeldingRequest(utilgjengeligForespørselUuid, fødselsnummer),
+            lagInntektsmeldingRequest(forespørselUuid, fødselsnummer)));
+
+        // Act
+        var response = inntektsmeldingRest.sendInntektsmeldinger(request);
+
+        // Assert
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        var resultater = ((SendInntektsmeldingerResponsDto) response.getEntity()).resultater();
+        assertThat(resultater).extracting(SendInntektsmeldingResultatDto::status).containsExactly(503, 200);
+        assertThat(resultater.getFirst().feil().feilkode()).isEqualTo(EksponertFeilmelding.MIDLERTIDIG_UTILGJENGELIG.name());
+        verify(fpinntektsmeldingTjeneste, times(1)).sendInntektsmelding(any(), any());
+    }
+
+    @Test
+    void skal_gi_feil_per_inntektsmelding_når_tilgangsoppslaget_feiler() {
+        // Arrange
+        var orgnummer = new Organisasjonsnummer("999999999");
+        var fødselsnummer = "12345678901";
+        var forespørselUuid = UUID.randomUUID();
+        var ukjentForespørselUuid = UUID.randomUUID();
+
+        var forespørsel = new Forespørsel(null, forespørselUuid, orgnummer, fødselsnummer,
+            LocalDate.now(), LocalDate.now(), ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER,
+            LocalDateTime.now());
+
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid)).thenReturn(forespørsel);
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(ukjentForespørselUuid)).thenReturn(null);
+        when(tilgang.organisasjonerSystemetHarTilgangTil(Set.of(orgnummer)))
+            .thenThrow(new InntektsmeldingAPIException(EksponertFeilmelding.FEIL_OPPSLAG_ALTINN, Response.Status.INTERNAL_SERVER_ERROR));
+
+        var request = new SendInntektsmeldingerRequest(List.of(
+            lagInntektsmeldingRequest(forespørselUuid, fødselsnummer),
+            lagInntektsmeldingRequest(ukjentForespørselUuid, fødselsnummer)));
+
+        // Act
+        var response = inntektsmeldingRest.sendInntektsmeldinger(request);
+
+        // Assert
+        assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        var resultater = ((SendInntektsmeldingerResponsDto) response.getEntity()).resultater();
+        assertThat(resultater).extracting(SendInntektsmeldingResultatDto::status).containsExactly(500, 404);
+        assertThat(resultater.getFirst().feil().feilkode()).isEqualTo(EksponertFeilmelding.FEIL_OPPSLAG_ALTINN.name());
+        assertThat(resultater.get(1).feil().feilkode()).isEqualTo(EksponertFeilmelding.TOM_FORESPOERSEL.name());
+        verify(fpinntektsmeldingTjeneste, never()).sendInntektsmelding(any(), any());
+    }
+
+    @Test
+    void skal_returnere_lagret_svar_ved_gjentatt_innsending_med_samme_idempotensnøkkel() {
+        // Arrange
+        var orgnummer = "999999999";
+        var fødselsnummer = "12345678901";
+        var forespørselUuid = UUID.randomUUID();
+        var responseUuid = UUID.randomUUID();
+
+        var forespørsel = new Forespørsel(null, forespørselUuid, new Organisasjonsnummer(orgnummer), fødselsnummer,
+            LocalDate.now(), LocalDate.now(), ForespørselStatus.UNDER_BEHANDLING, YtelseType.FORELDREPENGER,
+            LocalDateTime.now());
+        var inntektsmeldingRequest = lagInntektsmeldingRequest(forespørselUuid, fødselsnummer);
+        var nøkkel = UUID.randomUUID().toString();
+
+        when(tilgang.systembrukerFraToken()).thenReturn("systembruker");
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid)).thenReturn(forespørsel);
+        when(tilgang.sjekkAtSystemHarTilgangTilOrganisasjonAsync(new Organisasjonsnummer(orgnummer))).thenReturn(CompletableFuture.completedFuture(null));
+        when(fpinntektsmeldingTjeneste.sendInntektsmelding(any(), any()))
+            .thenReturn(new SendInntektsmeldingResponse(true, responseUuid, no.nav.foreldrepenger.inntektsmelding.felles.InntektsmeldingStatusDto.GODKJENT, null));
+
+        // Act
+        var første = inntektsmeldingRest.sendInntektsmelding(inntektsmeldingRequest, nøkkel);
+        var gjentatt = inntektsmeldingRest.sendInntektsmelding(inntektsmeldingRequest, nøkkel);
+
+        // Assert
+        assertThat(gjentatt.getStatus()).isEqualTo(første.getStatus());
+        assertThat(gjentatt.getEntity()).isEqualTo(new SendInntektsmeldingResponsDto(responseUuid, InntektsmeldingStatusDto.GODKJENT));
+        assertThat(gjentatt.getHeaderString(IdempotensLager.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+        verify(fpinntektsmeldingTjeneste, times(1)).sendInntektsmelding(any(), any());
+    }
+
+    @Test
+    void skal_avvise_samme_idempotensnøkkel_med_annet_innhold() {
+        // Arrange
+        var nøkkel = UUID.randomUUID().toString();
+        var forespørselUuid = UUID.randomUUID();
+        when(tilgang.systembrukerFraToken()).thenReturn("systembruker");
+        when(fpinntektsmeldingTjeneste.hentForespørselForInnsending(forespørselUuid)).thenReturn(null);
+        inntektsmeldingRest.sendInntektsmelding(lagInntektsmeldingRequest(forespørselUuid, "12345678901"), nøkkel);
+
+        // Act
+        var ex = assertThrows(InntektsmeldingAPIException.class,
+            () -> inntektsmeldingRest.sendInntektsmelding(lagInntektsmeldingRequest(forespørselUuid, "10987654321"), nøkkel));
+
+        // Assert
+        assertThat(ex.getFeilmelding()).isEqualTo(EksponertFeilmelding.IDEMPOTENSNOEKKEL_GJENBRUKT);
+        verify(fpinntektsmeldingTjeneste, times(1)).hentForespørselForInnsending(forespørselUuid);
+    }
+
     @Test
     void skal_hente_inntektsmeldinger_med_filter_uten_innsendingId() {
         var orgnr = "999999999";
         var fnr = "12345678901";
         var forespørselId = UUID.randomUUID();
-        var filter = new InntektsmeldingFilter(orgnr, fnr, forespørselId, null, YtelseType.FORELDREPENGER, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31), null, null);
+        var filter = new InntektsmeldingFilter(orgnr, fnr, forespørselId, null, YtelseType.FORELDREPENGER, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31), null, null, null, null);
 
         var inntektsmelding = lagInntektsmelding(orgnr);
         when(fpinntektsmeldingTjeneste.hentInntektsmeldinger(orgnr, fnr, forespørselId, YtelseType.FORELDREPENGER, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31), null,
-           null))
+           null, Paginering.MAKS_SIDESTØRRELSE + 1))
             .thenReturn(List.of(inntektsmelding));
 
         var response = inntektsmeldingRest.hentInntektsmeldinger(filter);
@@ -141,7 +339,7 @@ class InntektsmeldingRestTest {
     void skal_returnere_bad_request_når_fom_er_etter_tom_med_innsendingId() {
         var orgnr = "999999999";
         var innsendingId = UUID.randomUUID();
-        var filter = new InntektsmeldingFilter(orgnr, null, null, innsendingId, null, LocalDate.of(2025, 12, 31), LocalDate.of(2025, 1, 1), null, null);
+        var filter = new InntektsmeldingFilter(orgnr, null, null, innsendingId, null, LocalDate.of(2025, 12, 31), LocalDate.of(2025, 1, 1), null, null, null, null);
 
         var inntektsmelding = lagInntektsmelding(orgnr);
         when(fpinntektsmeldingTjeneste.hentInntektsmelding(innsendingId)).thenReturn(inntektsmelding);
@@ -153,6 +351,20 @@ class InntektsmeldingRestTest {
         assertThat(errorResponse.feilmelding()).isEqualTo(EksponertFeilmelding.UGYLDIG_PERIODE.getTekst());
     }
 
+    private static InntektsmeldingRequest lagInntektsmeldingRequest(UUID forespørselUuid, String fødselsnummer) {
+        return new InntektsmeldingRequest(
+            forespørselUuid,
+            fødselsnummer,
+            LocalDate.now(),
+            YtelseType.FORELDREPENGER,
+            new InntektsmeldingRequest.InntektInfo(BigDecimal.valueOf(25000.00), List.of()),
+            new InntektsmeldingRequest.Refusjon(BigDecimal.valueOf(25000.00), List.of()),
+            List.of(),
+            new InntektsmeldingRequest.Kontaktinformasjon("Kontaktperson", "12345678"),
+            new InntektsmeldingRequest.Avsender("TestSystem", "1.0.0")
+        );
+    }
+
     private Inntektsmelding lagInntektsmelding(String orgnr) {
         return new Inntektsmelding(
             new Random().nextLong(),
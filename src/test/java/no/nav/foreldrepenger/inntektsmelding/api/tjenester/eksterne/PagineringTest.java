@@ -0,0 +1,37 @@
+package no.nav.foreldrepenger.inntektsmelding.api.tjenester.eksterne;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+class PagineringTest {
+
+    private static final List<Long> LØPENUMRE = LongStream.rangeClosed(1, Paginering.MAKS_SIDESTØRRELSE + 1L).boxed().toList();
+
+    @Test
+    void skal_begrense_til_maks_sidestørrelse_også_uten_limit_og_cursor() {
+        var side = Paginering.lagSide(LØPENUMRE, null, null, Long::longValue);
+
+        assertThat(side.elementer()).hasSize(Paginering.MAKS_SIDESTØRRELSE);
+        assertThat(Paginering.lesCursor(side.nesteCursor())).isEqualTo(Paginering.MAKS_SIDESTØRRELSE);
+    }
+
+    @Test
+    void skal_ikke_gi_cursor_når_alt_får_plass_på_siden() {
+        var side = Paginering.lagSide(LØPENUMRE.subList(0, 3), null, null, Long::longValue);
+
+        assertThat(side.elementer()).hasSize(3);
+        assertThat(side.nesteCursor()).isNull();
+    }
+
+    @Test
+    void skal_begrense_til_maks_sidestørrelse_når_cursor_er_oppgitt() {
+        var side = Paginering.lagSide(LØPENUMRE, null, Paginering.lagCursor(0L), Long::longValue);
+
+        assertThat(side.elementer()).hasSize(Paginering.MAKS_SIDESTØRRELSE);
+        assertThat(Paginering.lesCursor(side.nesteCursor())).isEqualTo(Paginering.MAKS_SIDESTØRRELSE);
+    }
+}